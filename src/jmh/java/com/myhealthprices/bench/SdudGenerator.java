@@ -0,0 +1,176 @@
+package com.myhealthprices.bench;
+
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugSummary;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic SDUD data for the benchmarks. Output is a pure function of the row count
+ * (fixed seed), so numbers from different runs and branches compare like for like.
+ * Shape follows the real files: roughly 50 state/utilization rows per NDC, a mix of
+ * known and unknown labelers, and about 3% suppressed rows with empty amounts.
+ */
+public final class SdudGenerator {
+
+    public static final String HEADER = "Utilization Type,State,NDC,Labeler Code,Product Code,Package Size,Year,"
+            + "Quarter,Suppression Used,Product Name,Units Reimbursed,Number of Prescriptions,"
+            + "Total Amount Reimbursed,Medicaid Amount Reimbursed,Non Medicaid Amount Reimbursed";
+
+    private static final Path DATA_DIR = Paths.get("target", "jmh-data");
+    private static final long SEED = 20240101L;
+    private static final int ROWS_PER_NDC = 50;
+
+    private static final String[] STATES = {
+            "AK", "AL", "AR", "AZ", "CA", "CO", "CT", "DC", "DE", "FL", "GA", "HI", "IA", "ID", "IL", "IN", "KS",
+            "KY", "LA", "MA", "MD", "ME", "MI", "MN", "MO", "MS", "MT", "NC", "ND", "NE", "NH", "NJ", "NM", "NV",
+            "NY", "OH", "OK", "OR", "PA", "RI", "SC", "SD", "TN", "TX", "UT", "VA", "VT", "WA", "WI", "WV", "WY" };
+    private static final String[] UTILIZATION_TYPES = { "FFSU", "MCOU" };
+    // Known to getManufacturerName, plus labelers that fall through to the default
+    private static final String[] LABELERS = {
+            "00002", "00006", "00007", "00069", "00074", "00093", "00173", "00310", "00378", "00591",
+            "00781", "50090", "51079", "59762", "63323", "68180", "70518", "71335", "99901", "99902" };
+    private static final String[] NAMES = {
+            "MOUNJARO", "OZEMPIC", "LIPITOR", "ATORVASTATIN", "METFORMIN HCL", "LISINOPRIL", "AMLODIPINE BESYLATE",
+            "HUMALOG KWIKPEN", "ELIQUIS", "JARDIANCE", "XARELTO", "TRULICITY", "SYNTHROID", "GABAPENTIN",
+            "SERTRALINE HCL", "OMEPRAZOLE DR", "ALBUTEROL SULFATE HFA", "INSULIN GLARGINE", "LOSARTAN POTASSIUM",
+            "HYDROCHLOROTHIAZIDE", "MONTELUKAST SODIUM", "ESCITALOPRAM OXALATE", "PREDNISONE", "FLUTICASONE PROP" };
+    private static final String[] STRENGTHS = { "", " 5 MG", " 10 MG", " 20 MG", " 40 MG", " 100 MG", " 500 MG" };
+
+    private SdudGenerator() {
+    }
+
+    // Generated once per row count and reused by later runs
+    public static Path file(int rows) {
+        Path path = DATA_DIR.resolve("sdud-" + rows + ".csv");
+        if (Files.exists(path))
+            return path;
+        try {
+            Files.createDirectories(DATA_DIR);
+            Path tmp = Files.createTempFile(DATA_DIR, "sdud-" + rows, ".tmp");
+            write(tmp, rows);
+            return Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void write(Path path, int rows) throws IOException {
+        SplittableRandom random = new SplittableRandom(SEED);
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.write("\r\n");
+            for (int i = 0; i < rows; i++) {
+                int product = i / ROWS_PER_NDC;
+                String labeler = labeler(product);
+                String productCode = productCode(product);
+                String packageSize = packageSize(product);
+                String state = STATES[random.nextInt(STATES.length)];
+                int quarter = 1 + random.nextInt(4);
+                boolean suppressed = random.nextInt(100) < 3;
+
+                StringBuilder row = new StringBuilder(160)
+                        .append(UTILIZATION_TYPES[i & 1]).append(',')
+                        .append(state).append(',')
+                        .append(labeler).append(productCode).append(packageSize).append(',')
+                        .append(labeler).append(',')
+                        .append(productCode).append(',')
+                        .append(packageSize).append(',')
+                        .append("2024,").append(quarter).append(',')
+                        .append(suppressed).append(',')
+                        .append(name(product)).append(',');
+                if (suppressed) {
+                    row.append(",,,,");
+                } else {
+                    double units = 1 + random.nextDouble() * 5_000;
+                    double total = units * unitPrice(product) * (0.8 + random.nextDouble() * 0.4);
+                    double medicaid = total * 0.9;
+                    row.append(format(units)).append(',')
+                            .append(1 + random.nextInt(200)).append(',')
+                            .append(format(total)).append(',')
+                            .append(format(medicaid)).append(',')
+                            .append(format(total - medicaid));
+                }
+                out.write(row.append("\r\n").toString());
+            }
+        }
+    }
+
+    // One definition per distinct NDC the file of the same size would contain
+    public static List<DrugDefinition> definitions(int count) {
+        List<DrugDefinition> definitions = new ArrayList<>(count);
+        for (int product = 0; product < count; product++) {
+            String labeler = labeler(product);
+            DrugDefinition d = new DrugDefinition();
+            d.setNdc(labeler + productCode(product) + packageSize(product));
+            d.setId(d.getNdc());
+            d.setName(name(product));
+            d.setLabeler(labeler);
+            d.setManufacturer("Labeler " + labeler);
+            definitions.add(d);
+        }
+        return definitions;
+    }
+
+    public static List<DrugSummary> summaries(List<DrugDefinition> definitions) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<DrugSummary> summaries = new ArrayList<>(definitions.size());
+        for (int i = 0; i < definitions.size(); i++) {
+            double average = unitPrice(i) * (0.8 + random.nextDouble() * 0.4);
+            DrugSummary s = new DrugSummary();
+            s.setNdc(definitions.get(i).getNdc());
+            s.setId(s.getNdc());
+            s.setAveragePrice(average);
+            s.setMinPrice(average * 0.7);
+            s.setMaxPrice(average * 1.4);
+            s.setTotalStates(1 + random.nextInt(STATES.length));
+            summaries.add(s);
+        }
+        return summaries;
+    }
+
+    private static String labeler(int product) {
+        return LABELERS[product % LABELERS.length];
+    }
+
+    // Labeler, product and package together are unique for up to 20M products
+    private static String productCode(int product) {
+        return String.format("%04d", product / LABELERS.length / 100 % 10_000);
+    }
+
+    private static String packageSize(int product) {
+        return String.format("%02d", product / LABELERS.length % 100);
+    }
+
+    private static String name(int product) {
+        return NAMES[product % NAMES.length] + STRENGTHS[product / NAMES.length % STRENGTHS.length];
+    }
+
+    // Log-spread so leaderboards and price filters see a realistic long tail
+    private static double unitPrice(int product) {
+        return Math.pow(10, (product * 7919 % 1000) / 250.0 - 1);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Path path = args.length > 1 ? Paths.get(args[1]) : file(rows);
+        if (args.length > 1)
+            write(path, rows);
+        System.out.println("Wrote " + rows + " rows to " + path);
+    }
+}
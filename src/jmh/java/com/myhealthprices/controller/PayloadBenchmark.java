@@ -0,0 +1,104 @@
+package com.myhealthprices.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myhealthprices.bench.SdudGenerator;
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugOverview;
+import com.myhealthprices.model.DrugPrice;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.Leaderboard;
+import com.myhealthprices.model.PriceHistory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encode cost and wire size of the drug API payloads as JSON, gzipped JSON, Smile and
+ * CBOR: a 50-state price list, an overview, a leaderboard page and a five-year history.
+ * Sizes are printed once per trial; gzip stands in for the on-the-fly response compression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+
+    private static final String[] STATES = {
+            "AK", "AL", "AR", "AZ", "CA", "CO", "CT", "DC", "DE", "FL", "GA", "HI", "IA", "ID", "IL", "IN", "KS",
+            "KY", "LA", "MA", "MD", "ME", "MI", "MN", "MO", "MS", "MT", "NC", "ND", "NE", "NH", "NJ", "NM", "NV",
+            "NY", "OH", "OK", "OR", "PA", "RI", "SC", "SD", "TN", "TX", "UT", "VA", "VT", "WA", "WI", "WV" };
+
+    @Param({ "prices", "overview", "leaderboard", "history" })
+    String payload;
+
+    @Param({ "json", "json-gzip", "smile", "cbor" })
+    String format;
+
+    private Object value;
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<DrugDefinition> definitions = SdudGenerator.definitions(50);
+        List<DrugSummary> summaries = SdudGenerator.summaries(definitions);
+        SplittableRandom random = new SplittableRandom(42);
+        value = switch (payload) {
+            case "prices" -> {
+                List<DrugPrice> prices = new ArrayList<>();
+                for (String state : STATES) {
+                    DrugPrice p = new DrugPrice();
+                    p.setNdc(definitions.get(0).getNdc());
+                    p.setState(state);
+                    p.setPrice(900 + random.nextDouble() * 200);
+                    p.setYear(2024);
+                    p.setQuarter(2);
+                    prices.add(p);
+                }
+                yield prices;
+            }
+            case "overview" -> new DrugOverview(definitions.get(0), summaries.get(0));
+            case "leaderboard" -> {
+                List<Leaderboard.Entry> entries = new ArrayList<>();
+                for (int i = 0; i < definitions.size(); i++)
+                    entries.add(Leaderboard.Entry.of(summaries.get(i), definitions.get(i)));
+                yield entries;
+            }
+            case "history" -> {
+                PriceHistory history = new PriceHistory();
+                history.setNdc(definitions.get(0).getNdc());
+                for (String state : STATES)
+                    for (int year = 2020; year < 2025; year++)
+                        for (int quarter = 1; quarter <= 4; quarter++)
+                            history.record(state, year, quarter, 900 + random.nextDouble() * 200);
+                yield history;
+            }
+            default -> throw new IllegalArgumentException(payload);
+        };
+        mapper = switch (format) {
+            case "smile" -> Jackson2ObjectMapperBuilder.smile().build();
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor().build();
+            default -> Jackson2ObjectMapperBuilder.json().build();
+        };
+        System.out.printf("%n%s as %s: %d bytes%n", payload, format, encode().length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        if (!format.equals("json-gzip"))
+            return mapper.writeValueAsBytes(value);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            mapper.writeValue(gzip, value);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,72 @@
+package com.myhealthprices.search;
+
+import com.myhealthprices.bench.SdudGenerator;
+import com.myhealthprices.model.DrugDefinition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query-side cost of the in-memory indexes behind /search and /{ndc}/summary, plus the
+ * build cost paid on every data version switch. Queries rotate through exact names,
+ * prefixes, typos, manufacturers and misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+    private static final String[] QUERIES = {
+            "ozempic", "atorv", "humalg kwikpen", "metformin hcl 500", "labeler 00002", "li", "xyzzy" };
+
+    @Param({ "100000", "1000000", "10000000" })
+    int rows;
+
+    private List<DrugDefinition> definitions;
+    private SearchSegment segment;
+    private NdcIndex ndcIndex;
+    private String[] ndcs;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        definitions = SdudGenerator.definitions(rows / 50);
+        segment = SearchSegment.build(definitions);
+        ndcIndex = NdcIndex.build(definitions);
+        ndcs = new String[1024];
+        for (int i = 0; i < ndcs.length; i++) {
+            String ndc = definitions.get(i * 7919 % definitions.size()).getNdc();
+            // Every other lookup is an unknown NDC
+            ndcs[i] = i % 2 == 0 ? ndc : "9" + ndc.substring(1);
+        }
+    }
+
+    @Benchmark
+    public List<SearchSegment.Hit> searchName() {
+        return segment.search(SearchSegment.normalize(QUERIES[next++ % QUERIES.length]), 50);
+    }
+
+    @Benchmark
+    public Optional<DrugDefinition> ndcExact() {
+        return ndcIndex.exact(ndcs[next++ & (ndcs.length - 1)]);
+    }
+
+    @Benchmark
+    public List<DrugDefinition> ndcPrefix() {
+        return ndcIndex.prefix(ndcs[next++ & (ndcs.length - 1)].substring(0, 7), 50);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public SearchSegment buildSegment() {
+        return SearchSegment.build(definitions);
+    }
+}
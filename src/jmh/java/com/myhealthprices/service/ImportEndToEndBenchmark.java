@@ -0,0 +1,64 @@
+package com.myhealthprices.service;
+
+import com.myhealthprices.Application;
+import com.myhealthprices.bench.SdudGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full importData() against Flapdoodle embedded Mongo (the local-embedded profile):
+ * parse, stage, optimize and publish a new data version. Each measured run starts
+ * from empty collections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ImportEndToEndBenchmark {
+
+    private static final Duration TIMEOUT = Duration.ofHours(1);
+
+    @Param({ "100000", "1000000", "10000000" })
+    int rows;
+
+    @Param({ "MONGO", "COLUMNAR" })
+    String engine;
+
+    private ConfigurableApplicationContext context;
+    private DataImportService importService;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .profiles("local-embedded")
+                .properties(
+                        "myhealthprices.import.file=" + SdudGenerator.file(rows).toAbsolutePath(),
+                        "myhealthprices.import.engine=" + engine,
+                        "logging.level.org.springframework.data.mongodb=WARN")
+                .run();
+        importService = context.getBean(DataImportService.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void clear() {
+        importService.clearAll().block(TIMEOUT);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public void importData() {
+        importService.importData().block(TIMEOUT);
+    }
+}
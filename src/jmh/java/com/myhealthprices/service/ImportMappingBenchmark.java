@@ -0,0 +1,67 @@
+package com.myhealthprices.service;
+
+import com.myhealthprices.bench.SdudGenerator;
+import com.myhealthprices.importer.SdudChunk;
+import com.myhealthprices.importer.SdudColumns;
+import com.myhealthprices.importer.SdudFileReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded cost of the import's per-row work over a whole generated file:
+ * splitting lines into fields, mapping fields to MedicaidDrugUtilization, and encoding
+ * to BSON for the bulk writer. Parallelism and Mongo are out of the picture here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImportMappingBenchmark {
+
+    @Param({ "100000", "1000000", "10000000" })
+    int rows;
+
+    private SdudFileReader reader;
+    private SdudColumns columns;
+    private List<SdudChunk> chunks;
+    private DataImportService service;
+
+    @Setup
+    public void setUp() throws IOException {
+        reader = SdudFileReader.open(SdudGenerator.file(rows));
+        columns = reader.columns();
+        chunks = reader.chunks(8 * 1024 * 1024);
+        // Row mapping touches none of the collaborators
+        service = new DataImportService(null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+    }
+
+    // Baseline: field splitting only
+    @Benchmark
+    public void scanRows(Blackhole bh) throws IOException {
+        for (SdudChunk chunk : chunks)
+            chunk.forEachRow(row -> bh.consume(row.fieldCount()));
+    }
+
+    @Benchmark
+    public void mapRowToUtilization(Blackhole bh) throws IOException {
+        for (SdudChunk chunk : chunks)
+            chunk.forEachRow(row -> bh.consume(service.mapRowToUtilization(row, columns)));
+    }
+
+    @Benchmark
+    public void mapRowToDocument(Blackhole bh) throws IOException {
+        for (SdudChunk chunk : chunks)
+            chunk.forEachRow(row -> bh.consume(service.mapRowToDocument(row, columns)));
+    }
+}
@@ -0,0 +1,44 @@
+package com.myhealthprices.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Labeler to manufacturer resolution, run once per definition during optimize. The
+ * sample mixes padded and unpadded codes that hit the registry with codes that fall
+ * through to the default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManufacturerBenchmark {
+
+    private static final String[] LABELERS = {
+            "00002", "00777", "00069", "69", "00310", "00781", "1167", "00093", "51079", "59762",
+            "00378", "68180", "70518", "71335", "99901", "12345" };
+
+    private String[] sample;
+    private int next;
+    private LabelerRegistry labelers;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        sample = new String[4096];
+        for (int i = 0; i < sample.length; i++)
+            // new String so lookups cannot short-circuit on interned identity
+            sample[i] = new String(LABELERS[random.nextInt(LABELERS.length)]);
+        labelers = new LabelerRegistry("");
+    }
+
+    @Benchmark
+    public String manufacturer() {
+        String labeler = sample[next++ & (sample.length - 1)];
+        return labelers.manufacturer(labeler);
+    }
+}
@@ -0,0 +1,68 @@
+package com.myhealthprices.service;
+
+import com.myhealthprices.bench.SdudGenerator;
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.Leaderboard;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Joining summaries to their definitions the way the /expensive fallback and the
+ * leaderboard build do. The lookup is an in-memory map, so this measures the join and
+ * entry construction without Mongo; NDC counts match a generated file of {@code rows}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SummaryEnrichmentBenchmark {
+
+    @Param({ "100000", "1000000", "10000000" })
+    int rows;
+
+    private List<DrugSummary> summaries;
+    private Map<String, DrugDefinition> definitions;
+
+    @Setup
+    public void setUp() {
+        List<DrugDefinition> defs = SdudGenerator.definitions(rows / 50);
+        summaries = SdudGenerator.summaries(defs);
+        definitions = defs.stream().collect(Collectors.toMap(DrugDefinition::getNdc, Function.identity()));
+    }
+
+    @Benchmark
+    public List<Leaderboard.Entry> batchJoin() {
+        return BatchJoin.join(Flux.fromIterable(summaries), DrugSummary::getNdc, this::lookup, Leaderboard.Entry::of)
+                .collectList()
+                .block();
+    }
+
+    @Benchmark
+    public TopN<DrugSummary> topExpensive() {
+        TopN<DrugSummary> top = new TopN<>(10, LeaderboardService.BY_AVERAGE_PRICE);
+        summaries.forEach(top::offer);
+        return top;
+    }
+
+    private Mono<Map<String, DrugDefinition>> lookup(Set<String> ndcs) {
+        Map<String, DrugDefinition> found = new HashMap<>(ndcs.size() * 2);
+        for (String ndc : ndcs) {
+            DrugDefinition def = definitions.get(ndc);
+            if (def != null)
+                found.put(ndc, def);
+        }
+        return Mono.just(found);
+    }
+}
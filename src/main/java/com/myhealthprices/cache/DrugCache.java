@@ -0,0 +1,206 @@
+package com.myhealthprices.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.myhealthprices.config.DrugCacheProperties;
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugPrice;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.PriceHistory;
+import com.myhealthprices.repository.DrugDefinitionRepository;
+import com.myhealthprices.repository.DrugPriceRepository;
+import com.myhealthprices.repository.DrugSummaryRepository;
+import com.myhealthprices.repository.PriceHistoryRepository;
+import com.myhealthprices.service.DataVersionChangedEvent;
+import com.myhealthprices.snapshot.DataSnapshot;
+import com.myhealthprices.snapshot.DataSnapshots;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache for the per-NDC lookups behind the drug endpoints, bounded by an
+ * approximate byte weight. Data only changes when an import publishes, so entries never
+ * expire on their own; a {@link DataVersionChangedEvent} drops them all. Misses are
+ * cached too (as empty), and concurrent misses on one key share a single Mongo query
+ * through a {@link SingleFlight}, which also coalesces requests when caching is off.
+ * Cached entities are shared between requests and must not be mutated. While a snapshot
+ * of the active data version is mapped, lookups are answered from it and bypass the cache.
+ */
+@Component
+@Slf4j
+public class DrugCache implements MeterBinder {
+
+    private final DrugDefinitionRepository definitionRepo;
+    private final DrugPriceRepository priceRepo;
+    private final DrugSummaryRepository summaryRepo;
+    private final PriceHistoryRepository historyRepo;
+    private final DataSnapshots snapshots;
+    private final boolean enabled;
+    private final AsyncCache<Key, Object> cache;
+    private final SingleFlight<Key, Object> flights = new SingleFlight<>();
+
+    // Bumped on invalidation; a load that started earlier lands under a key no one reads
+    private volatile long generation;
+
+    public DrugCache(DrugDefinitionRepository definitionRepo, DrugPriceRepository priceRepo,
+            DrugSummaryRepository summaryRepo, PriceHistoryRepository historyRepo, DataSnapshots snapshots,
+            DrugCacheProperties properties) {
+        this.definitionRepo = definitionRepo;
+        this.priceRepo = priceRepo;
+        this.summaryRepo = summaryRepo;
+        this.historyRepo = historyRepo;
+        this.snapshots = snapshots;
+        this.enabled = properties.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxSize().toBytes())
+                .weigher(DrugCache::weigh)
+                .recordStats()
+                .buildAsync();
+    }
+
+    public Mono<DrugDefinition> definition(String ndc) {
+        Optional<DataSnapshot> snapshot = snapshots.current();
+        if (snapshot.isPresent())
+            return Mono.justOrEmpty(snapshot.get().definition(ndc));
+        return this.<Optional<DrugDefinition>>get(Kind.DEFINITION, ndc,
+                () -> definitionRepo.findByNdc(ndc).map(Optional::of).defaultIfEmpty(Optional.empty()))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    // Batched form for joins: cached NDCs are served from memory, the rest cost one $in query
+    @SuppressWarnings("unchecked")
+    public Mono<Map<String, DrugDefinition>> definitions(Set<String> ndcs) {
+        if (ndcs.isEmpty())
+            return Mono.just(Map.of());
+        Optional<DataSnapshot> snapshot = snapshots.current();
+        if (snapshot.isPresent()) {
+            Map<String, DrugDefinition> defs = new HashMap<>();
+            for (String ndc : ndcs)
+                snapshot.get().definition(ndc).ifPresent(def -> defs.put(ndc, def));
+            return Mono.just(defs);
+        }
+        if (!enabled)
+            return definitionRepo.findByNdcIn(ndcs).collectMap(DrugDefinition::getNdc);
+        return Mono.defer(() -> {
+            long gen = generation;
+            List<Key> keys = ndcs.stream().map(ndc -> new Key(Kind.DEFINITION, ndc, gen)).toList();
+            return Mono.fromFuture(cache.getAll(keys, (missing, executor) -> definitionRepo
+                    .findByNdcIn(missing.stream().map(Key::ndc).toList())
+                    .collectMap(DrugDefinition::getNdc)
+                    .map(found -> {
+                        Map<Key, Object> loaded = new HashMap<>();
+                        for (Key key : missing)
+                            loaded.put(key, Optional.ofNullable(found.get(key.ndc())));
+                        return loaded;
+                    })
+                    .toFuture()), true)
+                    .map(entries -> {
+                        Map<String, DrugDefinition> defs = new HashMap<>();
+                        entries.forEach((key, value) -> ((Optional<DrugDefinition>) value)
+                                .ifPresent(def -> defs.put(key.ndc(), def)));
+                        return defs;
+                    });
+        });
+    }
+
+    public Mono<DrugSummary> summary(String ndc) {
+        Optional<DataSnapshot> snapshot = snapshots.current();
+        if (snapshot.isPresent())
+            return Mono.justOrEmpty(snapshot.get().summary(ndc));
+        return this.<Optional<DrugSummary>>get(Kind.SUMMARY, ndc,
+                () -> summaryRepo.findByNdc(ndc).map(Optional::of).defaultIfEmpty(Optional.empty()))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    public Mono<List<DrugPrice>> prices(String ndc) {
+        Optional<DataSnapshot> snapshot = snapshots.current();
+        if (snapshot.isPresent())
+            return Mono.just(snapshot.get().prices(ndc));
+        return get(Kind.PRICES, ndc, () -> priceRepo.findByNdc(ndc).collectList());
+    }
+
+    // Not part of the snapshot, so always read through the cache
+    public Mono<PriceHistory> history(String ndc) {
+        return this.<Optional<PriceHistory>>get(Kind.HISTORY, ndc,
+                () -> historyRepo.findById(ndc).map(Optional::of).defaultIfEmpty(Optional.empty()))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    public long estimatedSize() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    public SingleFlight<?, ?> flights() {
+        return flights;
+    }
+
+    // cache.gets/puts/evictions/size tagged cache=drugs, singleflight.requests tagged name=drugs
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "drugs");
+        flights.bindTo(registry, "drugs");
+    }
+
+    @EventListener
+    public void onDataVersionChanged(DataVersionChangedEvent event) {
+        generation++;
+        cache.synchronous().invalidateAll();
+        log.info("Drug cache invalidated for data version {}", event.version());
+    }
+
+    // Concurrent misses on one key share a single query whether or not the cache is enabled
+    @SuppressWarnings("unchecked")
+    private <T> Mono<T> get(Kind kind, String ndc, Supplier<Mono<T>> loader) {
+        return Mono.defer(() -> {
+            Key key = new Key(kind, ndc, generation);
+            if (!enabled)
+                return flights.execute(key, () -> loader.get().map(value -> (Object) value));
+            CompletableFuture<Object> cached = cache.getIfPresent(key);
+            if (cached != null)
+                return Mono.fromFuture(cached, true);
+            // Stored before the flight completes, so no request falls between the two
+            return flights.execute(key, () -> loader.get().map(value -> (Object) value)
+                    .doOnNext(value -> cache.put(key, CompletableFuture.completedFuture(value))));
+        }).map(value -> (T) value);
+    }
+
+    // Rough retained-heap estimates; only the relative sizes matter for eviction
+    private static int weigh(Key key, Object value) {
+        int base = 64 + 2 * key.ndc().length();
+        if (value instanceof List<?> list)
+            return base + 48 + 160 * list.size();
+        if (value instanceof Optional<?> opt && opt.isEmpty())
+            return base + 16;
+        if (value instanceof Optional<?> opt && opt.get() instanceof PriceHistory history)
+            return base + 96 + history.getSeries().stream().mapToInt(s -> 64 + 40 * s.getPeriods().size()).sum();
+        return base + (key.kind() == Kind.DEFINITION ? 320 : 160);
+    }
+
+    private enum Kind {
+        DEFINITION,
+        SUMMARY,
+        PRICES,
+        HISTORY
+    }
+
+    private record Key(Kind kind, String ndc, long generation) {
+    }
+}
@@ -0,0 +1,67 @@
+package com.myhealthprices.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical loads: while a load for a key is in flight, further
+ * requests for that key wait on its result instead of starting their own. Nothing is
+ * kept once the load completes, so a later request always triggers a fresh load.
+ * The shared load runs to completion even if the subscriber that started it cancels.
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> {
+            CompletableFuture<V> created = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+            if (existing != null) {
+                coalesced.increment();
+                return Mono.fromFuture(existing, true);
+            }
+            leaders.increment();
+            created.whenComplete((value, error) -> inFlight.remove(key, created));
+            // An empty load completes with null, which fromFuture turns back into empty
+            Mono.defer(loader).subscribe(created::complete, created::completeExceptionally,
+                    () -> created.complete(null));
+            return Mono.fromFuture(created, true);
+        });
+    }
+
+    // Loads actually started
+    public long leaders() {
+        return leaders.sum();
+    }
+
+    // Requests that joined a load already in flight
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    // singleflight.requests{name, result=leader|coalesced}
+    public void bindTo(MeterRegistry registry, String name) {
+        FunctionCounter.builder("singleflight.requests", leaders, LongAdder::sum)
+                .tags("name", name, "result", "leader")
+                .description("Requests that started a load")
+                .register(registry);
+        FunctionCounter.builder("singleflight.requests", coalesced, LongAdder::sum)
+                .tags("name", name, "result", "coalesced")
+                .description("Requests that shared a load already in flight")
+                .register(registry);
+    }
+}
@@ -0,0 +1,28 @@
+package com.myhealthprices.config;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+/**
+ * Template for import, builds and data version bookkeeping, on a MongoClient of its own
+ * so bulk writes and {@code $out} aggregations queue on a separate, smaller connection
+ * pool instead of in front of user queries. Always reads the primary, so a build sees
+ * what it just wrote. Closes its client with the context.
+ */
+public class BatchMongoTemplate extends ReactiveMongoTemplate implements DisposableBean {
+
+    private final MongoClient client;
+
+    public BatchMongoTemplate(MongoClient client, String database, MongoConverter converter) {
+        super(new SimpleReactiveMongoDatabaseFactory(client, database), converter);
+        this.client = client;
+    }
+
+    @Override
+    public void destroy() {
+        client.close();
+    }
+}
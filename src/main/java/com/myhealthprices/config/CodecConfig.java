@@ -0,0 +1,89 @@
+package com.myhealthprices.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Binary encodings for the API, chosen by {@code Accept: application/cbor} or
+ * {@code application/x-jackson-smile}; clients asking for neither still get JSON. Both
+ * mappers come from Boot's Jackson builder, so field names, null handling and dates
+ * match the JSON responses exactly.
+ */
+@Configuration(proxyBeanMethods = false)
+public class CodecConfig {
+
+    public static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+
+    @Bean
+    public CodecCustomizer binaryCodecs(Jackson2ObjectMapperBuilder builder) {
+        ObjectMapper cbor = builder.factory(new CBORFactory()).build();
+        ObjectMapper smile = builder.factory(new SmileFactory()).build();
+        return configurer -> {
+            configurer.customCodecs().register(new CborEncoder(cbor));
+            configurer.customCodecs().register(new Jackson2CborDecoder(cbor, MediaType.APPLICATION_CBOR));
+            configurer.defaultCodecs().jackson2SmileEncoder(new SmileEncoder(smile));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smile, SMILE));
+        };
+    }
+
+    // Jackson2CborEncoder only encodes single values, and the Smile encoder frames a Flux
+    // with JSON brackets, so a Flux body is collected and written as one array instead
+    static final class CborEncoder extends Jackson2CborEncoder {
+
+        CborEncoder(ObjectMapper mapper) {
+            // Without explicit types the Jackson codecs fall back to the JSON ones
+            super(mapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> input, DataBufferFactory factory, ResolvableType elementType,
+                MimeType mimeType, Map<String, Object> hints) {
+            return asArray(input, elementType, (value, type) -> encodeValue(value, factory, type, mimeType, hints));
+        }
+    }
+
+    static final class SmileEncoder extends Jackson2SmileEncoder {
+
+        SmileEncoder(ObjectMapper mapper) {
+            super(mapper, SMILE);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> input, DataBufferFactory factory, ResolvableType elementType,
+                MimeType mimeType, Map<String, Object> hints) {
+            return asArray(input, elementType, (value, type) -> encodeValue(value, factory, type, mimeType, hints));
+        }
+    }
+
+    private static Flux<DataBuffer> asArray(Publisher<?> input, ResolvableType elementType,
+            BiFunction<Object, ResolvableType, DataBuffer> encodeValue) {
+        if (input instanceof Mono<?> mono)
+            return mono.map(value -> encodeValue.apply(value, elementType)).flux();
+        ResolvableType listType = ResolvableType.forClassWithGenerics(List.class, elementType);
+        return Flux.from(input)
+                .collectList()
+                .map(list -> encodeValue.apply(list, listType))
+                .flux();
+    }
+}
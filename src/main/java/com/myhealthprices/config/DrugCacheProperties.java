@@ -0,0 +1,16 @@
+package com.myhealthprices.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@Data
+@ConfigurationProperties(prefix = "myhealthprices.cache")
+public class DrugCacheProperties {
+
+    // Serve per-NDC definitions, summaries and price lists from memory
+    private boolean enabled = true;
+
+    // Approximate heap budget shared by all cached entries
+    private DataSize maxSize = DataSize.ofMegabytes(64);
+}
@@ -0,0 +1,15 @@
+package com.myhealthprices.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "myhealthprices.export")
+public class ExportProperties {
+
+    // Documents per Mongo cursor batch; demand from the response pulls the next batch
+    private int fetchSize = 2000;
+
+    // Rows encoded into each response buffer
+    private int rowsPerBuffer = 500;
+}
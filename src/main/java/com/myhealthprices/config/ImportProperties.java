@@ -0,0 +1,60 @@
+package com.myhealthprices.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "myhealthprices.import")
+public class ImportProperties {
+
+    // SDUD CSV read by importData()
+    private String file = "medicaid-sdud-2024.csv";
+
+    // Several SDUD inputs imported as one (e.g. one per year), plain or gzip/zstd compressed; replaces file when set
+    private List<String> files = new ArrayList<>();
+
+    // MONGO stages raw rows and runs the $group/$out aggregations,
+    // COLUMNAR computes the serving collections in memory and never writes raw rows
+    private Engine engine = Engine.MONGO;
+
+    // Target size of the line-aligned slices SDUD input is mapped (or decompressed) and parsed in
+    private int chunkBytes = 8 * 1024 * 1024;
+
+    // Documents per insert when writing computed collections
+    private int writeBatchSize = 1000;
+
+    // Write concern for bulk loads (any com.mongodb.WriteConcern constant name, e.g. W1, MAJORITY, UNACKNOWLEDGED)
+    private String writeConcern = "W1";
+
+    // Per-document retries for documents of a bulk insert that failed
+    private int writeRetries = 3;
+
+    // Threads mapping chunks to rows, independent of the Mongo writers
+    private int parseWorkers = Runtime.getRuntime().availableProcessors();
+
+    // Raw-row batches written concurrently
+    private int writeWorkers = 2;
+
+    // Raw-row batch size starts here and adapts to write latency within [min, max]
+    private int batchSize = 500;
+    private int minBatchSize = 100;
+    private int maxBatchSize = 10_000;
+    private Duration targetBatchLatency = Duration.ofMillis(250);
+
+    // A running job whose heartbeat is older than this is treated as interrupted and resumed
+    private Duration jobStaleAfter = Duration.ofMinutes(2);
+    private boolean resumeInterruptedJobs = true;
+
+    public List<String> inputFiles() {
+        return files.isEmpty() ? List.of(file) : files;
+    }
+
+    public enum Engine {
+        MONGO,
+        COLUMNAR
+    }
+}
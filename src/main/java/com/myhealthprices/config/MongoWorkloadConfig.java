@@ -0,0 +1,66 @@
+package com.myhealthprices.config;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.autoconfigure.mongo.MongoConnectionDetails;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Splits Mongo access by workload. Boot's client serves user queries: the repositories
+ * and everything injecting {@link ReactiveMongoTemplate} use it, with the configured
+ * read preference. Batch work uses {@link BatchMongoTemplate} on a second client that
+ * shares Boot's settings (URI, credentials, metrics listeners) but not its pool.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MongoWorkloadConfig {
+
+    // Replaces Boot's template, which backs off once the batch template exists
+    @Bean
+    @Primary
+    public ReactiveMongoTemplate reactiveMongoTemplate(ReactiveMongoDatabaseFactory factory, MongoConverter converter,
+            WorkloadProperties workload) {
+        ReactiveMongoTemplate template = new ReactiveMongoTemplate(factory, converter);
+        template.setReadPreference(ReadPreference.valueOf(workload.getQueryReadPreference()));
+        return template;
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer queryConnectionPool(WorkloadProperties workload) {
+        return settings -> settings.applyToConnectionPoolSettings(pool -> pool.maxSize(workload.getQueryMaxPoolSize()));
+    }
+
+    @Bean
+    public BatchMongoTemplate batchMongoTemplate(ObjectProvider<MongoClientSettingsBuilderCustomizer> customizers,
+            MongoProperties properties, MongoConnectionDetails connectionDetails, MongoConverter converter,
+            WorkloadProperties workload) {
+        MongoClientSettings.Builder builder = MongoClientSettings.builder();
+        customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+        MongoClientSettings shared = builder.build();
+        String name = shared.getApplicationName() != null ? shared.getApplicationName() : "myhealthprices";
+        MongoClientSettings settings = MongoClientSettings.builder(shared)
+                .applicationName(name + "-batch")
+                .readPreference(ReadPreference.primary())
+                .applyToConnectionPoolSettings(pool -> pool.minSize(0).maxSize(workload.getBatchMaxPoolSize()))
+                .build();
+        String database = properties.getDatabase() != null ? properties.getDatabase()
+                : connectionDetails.getConnectionString().getDatabase();
+        return new BatchMongoTemplate(MongoClients.create(settings), database, converter);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler batchScheduler(WorkloadProperties workload) {
+        return Schedulers.newBoundedElastic(Math.max(1, workload.getBatchThreads()),
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "batch");
+    }
+}
@@ -0,0 +1,21 @@
+package com.myhealthprices.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "myhealthprices.snapshot")
+public class SnapshotProperties {
+
+    // Serve per-NDC reads from a memory-mapped snapshot of the active data version
+    private boolean enabled = true;
+
+    // Where snapshot files are written and looked for; a shared volume lets new instances skip the build
+    private String dir = "snapshots";
+
+    // An instance that finds no snapshot for the active version builds one from Mongo in the background
+    private boolean buildMissing = true;
+
+    // Snapshot files kept on disk, newest first
+    private int keep = 3;
+}
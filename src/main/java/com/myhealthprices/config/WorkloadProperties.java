@@ -0,0 +1,31 @@
+package com.myhealthprices.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "myhealthprices.workload")
+public class WorkloadProperties {
+
+    // Read preference of the query path (repositories, exports), e.g. secondaryPreferred on a replica set;
+    // import, builds and data version switches always read the primary through their own client
+    private String queryReadPreference = "primary";
+
+    // Connections per host for user queries and for batch work; the pools are separate
+    private int queryMaxPoolSize = 100;
+    private int batchMaxPoolSize = 10;
+
+    // Threads for CPU-heavy batch work (columnar build, snapshot writes), kept off Reactor's shared schedulers
+    private int batchThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    // Import writes slow down while the query p99 of these routes is over the threshold
+    private boolean throttleEnabled = true;
+    private Duration throttleP99 = Duration.ofMillis(250);
+    private Duration throttleMaxDelay = Duration.ofSeconds(2);
+    private Duration throttleInterval = Duration.ofSeconds(5);
+    private List<String> throttleRoutes = new ArrayList<>(List.of("/api/v2/drugs", "/api/v2/manufacturers"));
+}
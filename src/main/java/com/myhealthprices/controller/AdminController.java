@@ -1,11 +1,23 @@
 package com.myhealthprices.controller;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.myhealthprices.cache.DrugCache;
+import com.myhealthprices.importer.ImportMetrics;
+import com.myhealthprices.search.NdcFilter;
 import com.myhealthprices.service.DataImportService;
+import com.myhealthprices.service.DataVersions;
+import com.myhealthprices.service.ImportJobService;
+import com.myhealthprices.service.LabelerRegistry;
+import com.myhealthprices.snapshot.DataSnapshots;
 import com.myhealthprices.model.*;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Flux;
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.util.Map;
 
 @RestController
@@ -14,6 +26,13 @@ import java.util.Map;
 public class AdminController {
 
     private final DataImportService importService;
+    private final ImportMetrics importMetrics;
+    private final DataVersions dataVersions;
+    private final DrugCache drugCache;
+    private final NdcFilter ndcFilter;
+    private final ImportJobService importJobs;
+    private final DataSnapshots snapshots;
+    private final LabelerRegistry labelers;
 
     @PostMapping("/optimize")
     public Mono<String> optimize() {
@@ -21,10 +40,93 @@ public class AdminController {
                 .then(Mono.just("Optimization triggered and completed successfully."));
     }
 
+    // Starts a background job; poll GET /import/jobs/{id} for progress
     @PostMapping("/import")
-    public Mono<String> fullImport() {
-        return importService.importData()
-                .then(Mono.just("Full streaming import and optimization completed successfully."));
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<ImportJobStatus> fullImport() {
+        return jobStatus(importJobs.submit(ImportJob.Kind.FULL, null, null));
+    }
+
+    @PostMapping("/import/quarter")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<ImportJobStatus> importQuarter(@RequestParam int year, @RequestParam int quarter) {
+        if (quarter < 1 || quarter > 4)
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "quarter must be 1-4"));
+        return jobStatus(importJobs.submit(ImportJob.Kind.QUARTER, year, quarter));
+    }
+
+    @GetMapping("/import/jobs")
+    public Flux<ImportJobStatus> getImportJobs() {
+        Instant now = Instant.now();
+        return importJobs.recent().map(job -> ImportJobStatus.of(job, now));
+    }
+
+    @GetMapping("/import/jobs/{id}")
+    public Mono<ImportJobStatus> getImportJob(@PathVariable String id) {
+        return jobStatus(importJobs.get(id));
+    }
+
+    @PostMapping("/import/jobs/{id}/cancel")
+    public Mono<ImportJobStatus> cancelImportJob(@PathVariable String id) {
+        return jobStatus(importJobs.cancel(id));
+    }
+
+    @PostMapping("/import/jobs/{id}/resume")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<ImportJobStatus> resumeImportJob(@PathVariable String id) {
+        return jobStatus(importJobs.resume(id));
+    }
+
+    @GetMapping("/import/metrics")
+    public Mono<ImportMetrics.Snapshot> getImportMetrics() {
+        return Mono.fromSupplier(importMetrics::snapshot);
+    }
+
+    @GetMapping("/versions")
+    public Mono<Map<String, Long>> getVersions() {
+        return Mono.fromSupplier(() -> Map.of(
+                "active", dataVersions.active(),
+                "previous", dataVersions.previous()));
+    }
+
+    @PostMapping("/versions/rollback")
+    public Mono<String> rollback() {
+        return dataVersions.rollback()
+                .then(Mono.fromSupplier(() -> "Rolled back to data version " + dataVersions.active() + "."));
+    }
+
+    // Re-reads the labeler file; manufacturer names change with the next build or quarter import
+    @PostMapping("/labelers/reload")
+    public Mono<Map<String, Integer>> reloadLabelers() {
+        return Mono.fromCallable(() -> Map.of("labelers", labelers.reload()))
+                .onErrorMap(UncheckedIOException.class,
+                        e -> new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, e.getCause().getMessage()));
+    }
+
+    @GetMapping("/cache/stats")
+    public Mono<Map<String, Object>> getCacheStats() {
+        return Mono.fromSupplier(() -> {
+            CacheStats stats = drugCache.stats();
+            return Map.of(
+                    "entries", drugCache.estimatedSize(),
+                    "hits", stats.hitCount(),
+                    "misses", stats.missCount(),
+                    "hitRate", stats.hitRate(),
+                    "evictions", stats.evictionCount(),
+                    "evictedWeight", stats.evictionWeight(),
+                    "queries", drugCache.flights().leaders(),
+                    "coalesced", drugCache.flights().coalesced());
+        });
+    }
+
+    @GetMapping("/ndc-filter/stats")
+    public Mono<Map<String, Object>> getNdcFilterStats() {
+        return Mono.fromSupplier(ndcFilter::stats);
+    }
+
+    @GetMapping("/snapshot/stats")
+    public Mono<Map<String, Object>> getSnapshotStats() {
+        return Mono.fromSupplier(snapshots::stats);
     }
 
     @PostMapping("/clear")
@@ -62,4 +164,11 @@ public class AdminController {
     public Flux<com.myhealthprices.model.MedicaidDrugUtilization> getRawByNdc(@PathVariable String ndc) {
         return importService.getRawByNdc(ndc);
     }
+
+    private static Mono<ImportJobStatus> jobStatus(Mono<ImportJob> job) {
+        return job.map(j -> ImportJobStatus.of(j, Instant.now()))
+                .onErrorMap(IllegalStateException.class,
+                        e -> new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()))
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No such import job")));
+    }
 }
@@ -1,18 +1,34 @@
 package com.myhealthprices.controller;
 
+import com.myhealthprices.cache.DrugCache;
 import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugOverview;
 import com.myhealthprices.model.DrugPrice;
 import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.Leaderboard;
+import com.myhealthprices.model.PriceHistory;
 import com.myhealthprices.repository.DrugDefinitionRepository;
-import com.myhealthprices.repository.DrugPriceRepository;
 import com.myhealthprices.repository.DrugSummaryRepository;
+import com.myhealthprices.search.DrugSearchIndex;
+import com.myhealthprices.search.NdcFilter;
+import com.myhealthprices.search.NdcIndex;
+import com.myhealthprices.service.BatchJoin;
+import com.myhealthprices.service.LeaderboardService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.Arrays;
-import java.util.Map;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @RestController
@@ -21,94 +37,158 @@ import java.util.stream.Collectors;
 public class DrugController {
 
     private final DrugDefinitionRepository definitionRepo;
-    private final DrugPriceRepository priceRepo;
     private final DrugSummaryRepository summaryRepo;
+    private final DrugCache drugCache;
+    private final LeaderboardService leaderboards;
+    private final DrugSearchIndex searchIndex;
+    private final NdcFilter ndcFilter;
 
     // GET /api/v2/drugs/search?q=...
     @GetMapping("/search")
     public Flux<DrugDefinition> search(@RequestParam("q") String query) {
-        if (query.matches("\\d+")) {
+        if (query.matches("\\d+") || query.trim().matches("\\d+(-\\d+){2}")) {
             // Is NDC
-            return definitionRepo.findByNdcContaining(query).take(10);
+            String digits = query.trim();
+            Optional<NdcIndex> ndcs = searchIndex.ndcs();
+            if (ndcs.isPresent()) {
+                // Exact (incl. 10-digit forms) first, then labeler/product prefix matches
+                Set<DrugDefinition> found = new LinkedHashSet<>();
+                ndcs.get().exact(digits).ifPresent(found::add);
+                found.addAll(ndcs.get().prefix(digits, 10));
+                if (!found.isEmpty())
+                    return Flux.fromIterable(found).take(10);
+            }
+            // Mid-NDC fragments are not prefixes; those still need the substring scan
+            return definitionRepo.findByNdcContaining(digits.replace("-", "")).take(10);
         } else {
-            // Is Name - case-insensitive regex search
             String cleanQuery = query.trim();
-            Flux<DrugDefinition> results = definitionRepo.findByNameRegex("(?i).*" + cleanQuery + ".*");
+            // Ranked, typo-tolerant and served from memory once the index is built
+            Optional<List<DrugDefinition>> indexed = searchIndex.search(cleanQuery, 20);
+            if (indexed.isPresent())
+                return Flux.fromIterable(indexed.get());
+
+            // Is Name - case-insensitive regex search
+            Flux<DrugDefinition> results = definitionRepo.findByNameRegex("(?i).*" + escapeRegex(cleanQuery) + ".*");
 
             // If no results and query is long, it might be truncated in the DB
             return results.switchIfEmpty(Flux.defer(() -> {
                 if (cleanQuery.length() > 10) {
                     String truncated = cleanQuery.substring(0, 10);
-                    return definitionRepo.findByNameRegex("(?i).*" + truncated + ".*");
+                    return definitionRepo.findByNameRegex("(?i).*" + escapeRegex(truncated) + ".*");
                 }
                 return Flux.empty();
             })).take(20);
         }
     }
 
+    // User input is matched literally, never as a pattern
+    private static String escapeRegex(String text) {
+        return text.replaceAll("[\\\\^$.|?*+()\\[\\]{}]", "\\\\$0");
+    }
+
+    // GET /api/v2/drugs/expensive?state=CA | ?manufacturer=Pfizer
     @GetMapping("/expensive")
-    public Flux<Map<String, Object>> getExpensive() {
-        return summaryRepo.findTop10ByOrderByAveragePriceDesc()
-                .concatMap(this::enrichSummary);
+    public Mono<ResponseEntity<List<?>>> getExpensive(@RequestParam(required = false) String state,
+            @RequestParam(required = false) String manufacturer,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return leaderboard(LeaderboardService.EXPENSIVE, state, manufacturer, ifNoneMatch,
+                summaryRepo::findTop10ByOrderByAveragePriceDesc);
     }
 
     @GetMapping("/cheap")
-    public Flux<Map<String, Object>> getCheap() {
-        return summaryRepo.findTop10ByOrderByAveragePriceAsc()
-                .concatMap(this::enrichSummary);
+    public Mono<ResponseEntity<List<?>>> getCheap(@RequestParam(required = false) String state,
+            @RequestParam(required = false) String manufacturer,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return leaderboard(LeaderboardService.CHEAP, state, manufacturer, ifNoneMatch,
+                summaryRepo::findTop10ByOrderByAveragePriceAsc);
     }
 
-    private Mono<java.util.Map<String, Object>> enrichSummary(com.myhealthprices.model.DrugSummary summary) {
-        return definitionRepo.findByNdc(summary.getNdc())
-                .map(def -> {
-                    java.util.Map<String, Object> map = new java.util.HashMap<>();
-                    map.put("ndc", summary.getNdc());
-                    map.put("name", def.getName());
-                    map.put("manufacturer", def.getManufacturer() != null ? def.getManufacturer() : "Unknown");
-                    map.put("averagePrice", summary.getAveragePrice());
-                    map.put("minPrice", summary.getMinPrice());
-                    map.put("maxPrice", summary.getMaxPrice());
-                    map.put("totalStates", summary.getTotalStates());
-                    return map;
-                })
-                .defaultIfEmpty(java.util.Collections.emptyMap()) // Temporarily use empty to avoid NPE
-                .flatMap(map -> {
-                    if (map.isEmpty()) {
-                        java.util.Map<String, Object> fallback = new java.util.HashMap<>();
-                        fallback.put("ndc", summary.getNdc());
-                        fallback.put("name", "Medication " + summary.getNdc());
-                        fallback.put("manufacturer", "Unknown");
-                        fallback.put("averagePrice",
-                                summary.getAveragePrice() != null ? summary.getAveragePrice() : 0.0);
-                        fallback.put("minPrice", summary.getMinPrice() != null ? summary.getMinPrice() : 0.0);
-                        fallback.put("maxPrice", summary.getMaxPrice() != null ? summary.getMaxPrice() : 0.0);
-                        fallback.put("totalStates", summary.getTotalStates() != null ? summary.getTotalStates() : 0);
-                        return Mono.just(fallback);
-                    }
-                    return Mono.just(map);
-                });
+    // Served from the materialized boards when the active data version has them,
+    // otherwise from the summaries (overall ranking only)
+    private Mono<ResponseEntity<List<?>>> leaderboard(String kind, String state, String manufacturer,
+            String ifNoneMatch, Supplier<Flux<DrugSummary>> fallback) {
+        LeaderboardService.Snapshot snapshot = leaderboards.current();
+        if (!snapshot.loaded()) {
+            if (state != null || manufacturer != null)
+                return Mono.just(ResponseEntity.ok(List.of()));
+            return BatchJoin.join(fallback.get(), DrugSummary::getNdc, drugCache::definitions,
+                            Leaderboard.Entry::of)
+                    .collectList()
+                    .map(ResponseEntity::<List<?>>ok);
+        }
+        if (ifNoneMatch != null && Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .anyMatch(tag -> tag.equals(snapshot.etag()) || tag.equals("*"))) {
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.etag()).build());
+        }
+        Leaderboard board = snapshot.find(kind, state, manufacturer);
+        return Mono.just(ResponseEntity.ok().eTag(snapshot.etag())
+                .body(board != null ? board.getEntries() : List.of()));
     }
 
     // GET /api/v2/drugs/{ndc}/summary
     @GetMapping("/{ndc}/summary")
-    public Mono<Map<String, Object>> getSummary(@PathVariable String ndc) {
+    public Mono<DrugOverview> getSummary(@PathVariable String ndc) {
+        if (!ndcFilter.mightExist(ndc))
+            return Mono.error(unknownNdc(ndc));
+        Optional<NdcIndex> ndcs = searchIndex.ndcs();
+        if (ndcs.isPresent()) {
+            // Exact lookup only: a partial NDC must not resolve to some other product
+            return Mono.justOrEmpty(ndcs.get().exact(ndc))
+                    .switchIfEmpty(Mono.error(() -> unknownNdc(ndc)))
+                    .flatMap(def -> drugCache.summary(def.getNdc())
+                            .defaultIfEmpty(new DrugSummary())
+                            .map(summary -> new DrugOverview(def, summary)));
+        }
         return Mono.zip(
-                definitionRepo.findByNdcContaining(ndc).next(), // Using next() as findByNdcContaining returns Flux
-                summaryRepo.findByNdc(ndc).defaultIfEmpty(new DrugSummary())).map(
-                        tuple -> Map.of(
-                                "definition", tuple.getT1(),
-                                "summary", tuple.getT2()));
+                // Exact NDCs come from the cache; partial ones still fall back to a contains match
+                drugCache.definition(ndc).switchIfEmpty(Mono.defer(() -> definitionRepo.findByNdcContaining(ndc).next())),
+                drugCache.summary(ndc).defaultIfEmpty(new DrugSummary()),
+                DrugOverview::new);
     }
 
     // GET /api/v2/drugs/{ndc}/prices?states=CA,TX
     @GetMapping("/{ndc}/prices")
     public Flux<DrugPrice> getPrices(@PathVariable String ndc, @RequestParam(required = false) String states) {
+        if (!ndcFilter.mightExist(ndc))
+            return Flux.error(unknownNdc(ndc));
+        Flux<DrugPrice> prices = drugCache.prices(ndc).flatMapIterable(list -> list);
         if (states != null && !states.isBlank()) {
-            return priceRepo.findByNdcAndStateIn(ndc,
-                    Arrays.stream(states.split(","))
-                            .map(String::trim)
-                            .collect(Collectors.toList()));
+            Set<String> wanted = Arrays.stream(states.split(","))
+                    .map(String::trim)
+                    .collect(Collectors.toSet());
+            return prices.filter(price -> wanted.contains(price.getState()));
         }
-        return priceRepo.findByNdc(ndc);
+        return prices;
+    }
+
+    // GET /api/v2/drugs/{ndc}/history?states=CA,TX
+    // Quarterly prices per state, oldest first; periods are year * 10 + quarter
+    @GetMapping("/{ndc}/history")
+    public Mono<PriceHistory> getHistory(@PathVariable String ndc, @RequestParam(required = false) String states) {
+        if (!ndcFilter.mightExist(ndc))
+            return Mono.error(unknownNdc(ndc));
+        Mono<PriceHistory> history = drugCache.history(ndc).switchIfEmpty(Mono.error(() -> unknownNdc(ndc)));
+        if (states != null && !states.isBlank()) {
+            Set<String> wanted = Arrays.stream(states.split(","))
+                    .map(String::trim)
+                    .collect(Collectors.toSet());
+            // Cached documents are shared, so the filtered view is a copy
+            return history.map(full -> {
+                PriceHistory filtered = new PriceHistory();
+                filtered.setId(full.getId());
+                filtered.setNdc(full.getNdc());
+                filtered.setLastUpdated(full.getLastUpdated());
+                filtered.setSeries(full.getSeries().stream()
+                        .filter(series -> wanted.contains(series.getState()))
+                        .collect(Collectors.toList()));
+                return filtered;
+            });
+        }
+        return history;
+    }
+
+    private static ResponseStatusException unknownNdc(String ndc) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown NDC " + ndc);
     }
 }
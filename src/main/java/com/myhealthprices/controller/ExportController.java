@@ -0,0 +1,81 @@
+package com.myhealthprices.controller;
+
+import com.myhealthprices.export.DataExport;
+import com.myhealthprices.export.ExportDataset;
+import com.myhealthprices.export.ExportFormat;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/api/v2/export")
+@RequiredArgsConstructor
+public class ExportController {
+
+    static final String DATA_VERSION = "X-Data-Version";
+    static final String NEXT_CURSOR = "X-Next-Cursor";
+
+    private final DataExport dataExport;
+
+    // GET /api/v2/export/prices?format=csv&state=CA,TX&ndcPrefix=00002&limit=100000&cursor=...
+    // Gzipped on the fly for clients sending Accept-Encoding: gzip (server.compression)
+    @GetMapping("/{dataset}")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> export(@PathVariable String dataset,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) String state,
+            @RequestParam(required = false) String ndcPrefix,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        Set<String> states = state == null || state.isBlank() ? Set.of()
+                : Arrays.stream(state.split(","))
+                        .map(String::trim)
+                        .filter(s -> !s.isEmpty())
+                        .collect(Collectors.toSet());
+        return Mono.defer(() -> dataExport.export(ExportDataset.of(dataset), ExportFormat.of(format), states,
+                        ndcPrefix, cursor, limit))
+                .map(export -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .contentType(export.format().mediaType())
+                            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                                    .filename(export.dataset().collection() + "-v" + export.version() + "."
+                                            + export.format().extension())
+                                    .build().toString())
+                            .header(DATA_VERSION, Long.toString(export.version()));
+                    if (export.nextCursor() != null) {
+                        String next = UriComponentsBuilder.fromPath("/api/v2/export/{dataset}")
+                                .queryParam("format", format)
+                                .queryParamIfPresent("state", Optional.ofNullable(state))
+                                .queryParamIfPresent("ndcPrefix", Optional.ofNullable(ndcPrefix))
+                                .queryParam("limit", limit)
+                                .queryParam("cursor", export.nextCursor())
+                                .buildAndExpand(dataset)
+                                .encode()
+                                .toUriString();
+                        response.header(NEXT_CURSOR, export.nextCursor())
+                                .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+                    }
+                    return response.body(export.body());
+                })
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()))
+                .onErrorMap(IllegalStateException.class,
+                        e -> new ResponseStatusException(HttpStatus.GONE, e.getMessage()));
+    }
+}
@@ -0,0 +1,56 @@
+package com.myhealthprices.controller;
+
+import com.myhealthprices.model.Leaderboard;
+import com.myhealthprices.model.ManufacturerSummary;
+import com.myhealthprices.service.LeaderboardService;
+import com.myhealthprices.service.ManufacturerService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v2/manufacturers")
+@RequiredArgsConstructor
+public class ManufacturerController {
+
+    private static final int MAX_LIMIT = 500;
+
+    private final ManufacturerService manufacturers;
+
+    // GET /api/v2/manufacturers
+    @GetMapping
+    public Flux<ManufacturerSummary> getManufacturers() {
+        return manufacturers.summaries();
+    }
+
+    // GET /api/v2/manufacturers/Pfizer
+    @GetMapping("/{name}")
+    public Mono<ManufacturerSummary> getManufacturer(@PathVariable String name) {
+        return manufacturers.summary(name)
+                .switchIfEmpty(Mono.error(() -> unknownManufacturer(name)));
+    }
+
+    // GET /api/v2/manufacturers/Pfizer/drugs?sort=cheap&offset=0&limit=50
+    @GetMapping("/{name}/drugs")
+    public Mono<List<Leaderboard.Entry>> getDrugs(@PathVariable String name,
+            @RequestParam(defaultValue = LeaderboardService.CHEAP) String sort,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (!sort.equals(LeaderboardService.CHEAP) && !sort.equals(LeaderboardService.EXPENSIVE))
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "sort must be cheap or expensive"));
+        if (offset < 0 || limit < 1 || limit > MAX_LIMIT)
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "offset must be >= 0 and limit 1-" + MAX_LIMIT));
+        return manufacturers.drugs(name, sort.equals(LeaderboardService.EXPENSIVE), offset, limit)
+                .switchIfEmpty(Mono.error(() -> unknownManufacturer(name)));
+    }
+
+    private static ResponseStatusException unknownManufacturer(String name) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown manufacturer " + name);
+    }
+}
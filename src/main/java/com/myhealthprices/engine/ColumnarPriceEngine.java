@@ -0,0 +1,210 @@
+package com.myhealthprices.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * In-process replacement for the optimizeData() aggregations. SDUD rows are appended
+ * into primitive columns (NDC and state dictionary-encoded) and {@link #compute()}
+ * derives the same latest-quarter prices and per-NDC summaries in one parallel pass.
+ *
+ * Not thread-safe for appends; compute() may run once all rows are in.
+ */
+public class ColumnarPriceEngine {
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private final StringDictionary ndcs = new StringDictionary();
+    private final StringDictionary states = new StringDictionary();
+
+    // Attributes of the first row seen for each NDC code (same as $group/$first)
+    private final List<String> names = new ArrayList<>();
+    private final List<String> labelers = new ArrayList<>();
+    private final List<String> packageSizes = new ArrayList<>();
+
+    private int rows;
+    private int[] ndcColumn = new int[INITIAL_CAPACITY];
+    private short[] stateColumn = new short[INITIAL_CAPACITY];
+    private short[] yearColumn = new short[INITIAL_CAPACITY];
+    private byte[] quarterColumn = new byte[INITIAL_CAPACITY];
+    private double[] unitsColumn = new double[INITIAL_CAPACITY];
+    private double[] amountColumn = new double[INITIAL_CAPACITY];
+
+    public void append(String ndc, String state, int year, int quarter,
+            String productName, String labeler, String packageSize,
+            double unitsReimbursed, double totalAmountReimbursed) {
+        int ndcCode = ndcs.encode(ndc);
+        if (ndcCode == names.size()) {
+            names.add(productName);
+            labelers.add(labeler);
+            packageSizes.add(packageSize);
+        }
+        ensureCapacity(rows + 1);
+        ndcColumn[rows] = ndcCode;
+        stateColumn[rows] = (short) states.encode(state);
+        yearColumn[rows] = (short) year;
+        quarterColumn[rows] = (byte) quarter;
+        unitsColumn[rows] = unitsReimbursed;
+        amountColumn[rows] = totalAmountReimbursed;
+        rows++;
+    }
+
+    // Appends every row of a partial engine (e.g. one parsed chunk), remapping its dictionary codes
+    public void appendAll(ColumnarPriceEngine part) {
+        int[] ndcCodes = new int[part.ndcs.size()];
+        for (int n = 0; n < ndcCodes.length; n++) {
+            ndcCodes[n] = ndcs.encode(part.ndcs.decode(n));
+            if (ndcCodes[n] == names.size()) {
+                names.add(part.names.get(n));
+                labelers.add(part.labelers.get(n));
+                packageSizes.add(part.packageSizes.get(n));
+            }
+        }
+        short[] stateCodes = new short[part.states.size()];
+        for (int s = 0; s < stateCodes.length; s++) {
+            stateCodes[s] = (short) states.encode(part.states.decode(s));
+        }
+
+        ensureCapacity(rows + part.rows);
+        for (int i = 0; i < part.rows; i++) {
+            ndcColumn[rows + i] = ndcCodes[part.ndcColumn[i]];
+            stateColumn[rows + i] = stateCodes[part.stateColumn[i]];
+        }
+        System.arraycopy(part.yearColumn, 0, yearColumn, rows, part.rows);
+        System.arraycopy(part.quarterColumn, 0, quarterColumn, rows, part.rows);
+        System.arraycopy(part.unitsColumn, 0, unitsColumn, rows, part.rows);
+        System.arraycopy(part.amountColumn, 0, amountColumn, rows, part.rows);
+        rows += part.rows;
+    }
+
+    public int rowCount() {
+        return rows;
+    }
+
+    public int ndcCount() {
+        return ndcs.size();
+    }
+
+    public PriceTables compute() {
+        int ndcCount = ndcs.size();
+
+        // Group row indices by NDC (counting sort) so each NDC is an independent task
+        int[] offsets = new int[ndcCount + 1];
+        for (int i = 0; i < rows; i++)
+            offsets[ndcColumn[i] + 1]++;
+        for (int n = 0; n < ndcCount; n++)
+            offsets[n + 1] += offsets[n];
+        int[] order = new int[rows];
+        int[] cursor = Arrays.copyOf(offsets, ndcCount);
+        for (int i = 0; i < rows; i++)
+            order[cursor[ndcColumn[i]]++] = i;
+
+        PriceTables.NdcPrices[] prices = new PriceTables.NdcPrices[ndcCount];
+        PriceTables.NdcHistory[] history = new PriceTables.NdcHistory[ndcCount];
+        IntStream.range(0, ndcCount).parallel().forEach(n -> {
+            prices[n] = latestPrices(order, offsets[n], offsets[n + 1]);
+            history[n] = history(order, offsets[n], offsets[n + 1]);
+        });
+
+        return new PriceTables(ndcs, states, names, labelers, packageSizes, prices, history);
+    }
+
+    // Latest (year, quarter) price per state; ties keep the first row, like sort + $first
+    private PriceTables.NdcPrices latestPrices(int[] order, int from, int to) {
+        int stateCount = states.size();
+        int[] bestPeriod = new int[stateCount];
+        Arrays.fill(bestPeriod, -1);
+        double[] bestPrice = new double[stateCount];
+
+        int found = 0;
+        for (int k = from; k < to; k++) {
+            int row = order[k];
+            if (!(unitsColumn[row] > 0.0))
+                continue;
+            int state = stateColumn[row];
+            int period = PriceTables.period(yearColumn[row], quarterColumn[row]);
+            if (period > bestPeriod[state]) {
+                if (bestPeriod[state] < 0)
+                    found++;
+                bestPeriod[state] = period;
+                bestPrice[state] = amountColumn[row] / unitsColumn[row];
+            }
+        }
+        if (found == 0)
+            return null;
+
+        int[] stateCodes = new int[found];
+        double[] statePrices = new double[found];
+        int[] periods = new int[found];
+        int i = 0;
+        for (int s = 0; s < stateCount; s++) {
+            if (bestPeriod[s] < 0)
+                continue;
+            stateCodes[i] = s;
+            statePrices[i] = bestPrice[s];
+            periods[i] = bestPeriod[s];
+            i++;
+        }
+        return new PriceTables.NdcPrices(stateCodes, statePrices, periods);
+    }
+
+    // Every (state, quarter) price, from the summed amounts and units of all rows in the quarter
+    private PriceTables.NdcHistory history(int[] order, int from, int to) {
+        // state | period | row packed into one long, so a plain sort groups and orders the rows
+        long[] keys = new long[to - from];
+        int n = 0;
+        for (int k = from; k < to; k++) {
+            int row = order[k];
+            if (!(unitsColumn[row] > 0.0))
+                continue;
+            int period = PriceTables.period(yearColumn[row], quarterColumn[row]);
+            keys[n++] = ((long) stateColumn[row] << 48) | ((long) period << 32) | row;
+        }
+        if (n == 0)
+            return null;
+        Arrays.sort(keys, 0, n);
+
+        int[] stateCodes = new int[n];
+        int[] seriesStarts = new int[n + 1];
+        int[] periods = new int[n];
+        double[] prices = new double[n];
+        int series = 0;
+        int points = 0;
+        int i = 0;
+        while (i < n) {
+            long group = keys[i] >>> 32;
+            int state = (int) (group >>> 16);
+            int period = (int) (group & 0xFFFF);
+            double amount = 0;
+            double units = 0;
+            for (; i < n && keys[i] >>> 32 == group; i++) {
+                int row = (int) keys[i];
+                amount += amountColumn[row];
+                units += unitsColumn[row];
+            }
+            if (series == 0 || stateCodes[series - 1] != state) {
+                stateCodes[series] = state;
+                seriesStarts[series++] = points;
+            }
+            periods[points] = period;
+            prices[points++] = amount / units;
+        }
+        seriesStarts[series] = points;
+        return new PriceTables.NdcHistory(Arrays.copyOf(stateCodes, series), Arrays.copyOf(seriesStarts, series + 1),
+                Arrays.copyOf(periods, points), Arrays.copyOf(prices, points));
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ndcColumn.length)
+            return;
+        int capacity = Math.max(required, ndcColumn.length * 2);
+        ndcColumn = Arrays.copyOf(ndcColumn, capacity);
+        stateColumn = Arrays.copyOf(stateColumn, capacity);
+        yearColumn = Arrays.copyOf(yearColumn, capacity);
+        quarterColumn = Arrays.copyOf(quarterColumn, capacity);
+        unitsColumn = Arrays.copyOf(unitsColumn, capacity);
+        amountColumn = Arrays.copyOf(amountColumn, capacity);
+    }
+}
@@ -0,0 +1,144 @@
+package com.myhealthprices.engine;
+
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugPrice;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.PriceHistory;
+import com.myhealthprices.sketch.TDigest;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Output of {@link ColumnarPriceEngine#compute()}. Documents are materialized lazily
+ * so callers can stream them into Mongo in batches.
+ */
+public class PriceTables {
+
+    private final StringDictionary ndcs;
+    private final StringDictionary states;
+    private final List<String> names;
+    private final List<String> labelers;
+    private final List<String> packageSizes;
+    private final NdcPrices[] prices;
+    private final NdcHistory[] history;
+
+    PriceTables(StringDictionary ndcs, StringDictionary states, List<String> names, List<String> labelers,
+            List<String> packageSizes, NdcPrices[] prices, NdcHistory[] history) {
+        this.ndcs = ndcs;
+        this.states = states;
+        this.names = names;
+        this.labelers = labelers;
+        this.packageSizes = packageSizes;
+        this.prices = prices;
+        this.history = history;
+    }
+
+    static int period(int year, int quarter) {
+        return (year << 3) | quarter;
+    }
+
+    public int ndcCount() {
+        return ndcs.size();
+    }
+
+    public Stream<DrugDefinition> definitions(Function<String, String> manufacturerResolver) {
+        return IntStream.range(0, ndcs.size()).mapToObj(n -> {
+            DrugDefinition d = new DrugDefinition();
+            d.setId(ndcs.decode(n));
+            d.setNdc(ndcs.decode(n));
+            d.setName(names.get(n));
+            d.setLabeler(labelers.get(n));
+            d.setPackageSize(packageSizes.get(n));
+            if (d.getLabeler() != null) {
+                d.setManufacturer(manufacturerResolver.apply(d.getLabeler()));
+            }
+            return d;
+        });
+    }
+
+    public Stream<DrugPrice> prices() {
+        return IntStream.range(0, ndcs.size())
+                .filter(n -> prices[n] != null)
+                .boxed()
+                .flatMap(n -> {
+                    NdcPrices p = prices[n];
+                    return IntStream.range(0, p.states.length).mapToObj(i -> {
+                        DrugPrice price = new DrugPrice();
+                        price.setNdc(ndcs.decode(n));
+                        price.setState(states.decode(p.states[i]));
+                        price.setPrice(p.prices[i]);
+                        price.setYear(p.periods[i] >> 3);
+                        price.setQuarter(p.periods[i] & 7);
+                        return price;
+                    });
+                });
+    }
+
+    public Stream<PriceHistory> history() {
+        return IntStream.range(0, ndcs.size())
+                .filter(n -> history[n] != null)
+                .mapToObj(n -> {
+                    NdcHistory h = history[n];
+                    PriceHistory doc = new PriceHistory();
+                    doc.setId(ndcs.decode(n));
+                    doc.setNdc(ndcs.decode(n));
+                    for (int s = 0; s < h.states.length; s++) {
+                        PriceHistory.Series series = new PriceHistory.Series();
+                        series.setState(states.decode(h.states[s]));
+                        for (int i = h.seriesStarts[s]; i < h.seriesStarts[s + 1]; i++) {
+                            series.getPeriods().add(PriceHistory.period(h.periods[i] >> 3, h.periods[i] & 7));
+                            series.getPrices().add(h.prices[i]);
+                        }
+                        doc.getSeries().add(series);
+                    }
+                    // Dictionary codes follow first appearance; the stored series are by state name
+                    doc.getSeries().sort(Comparator.comparing(PriceHistory.Series::getState));
+                    return doc;
+                });
+    }
+
+    public Stream<DrugSummary> summaries() {
+        return IntStream.range(0, ndcs.size())
+                .mapToObj(n -> summarize(n, prices[n], history[n]))
+                .filter(Objects::nonNull);
+    }
+
+    private DrugSummary summarize(int ndcCode, NdcPrices p, NdcHistory h) {
+        if (p == null)
+            return null;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double price : p.prices) {
+            sum += price;
+            min = Math.min(min, price);
+            max = Math.max(max, price);
+        }
+        DrugSummary s = new DrugSummary();
+        s.setId(ndcs.decode(ndcCode));
+        s.setNdc(ndcs.decode(ndcCode));
+        s.setAveragePrice(sum / p.prices.length);
+        s.setMinPrice(min);
+        s.setMaxPrice(max);
+        s.setTotalStates(p.prices.length);
+        if (h != null) {
+            TDigest sketch = new TDigest();
+            for (double price : h.prices)
+                sketch.add(price);
+            s.withSketch(sketch);
+        }
+        return s;
+    }
+
+    record NdcPrices(int[] states, double[] prices, int[] periods) {
+    }
+
+    // Series s covers points seriesStarts[s] until seriesStarts[s + 1], oldest period first
+    record NdcHistory(int[] states, int[] seriesStarts, int[] periods, double[] prices) {
+    }
+}
@@ -0,0 +1,183 @@
+package com.myhealthprices.export;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myhealthprices.config.ExportProperties;
+import com.myhealthprices.service.DataVersions;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams a serving collection as NDJSON or CSV in key order, (ndc, state) for prices and
+ * ndc otherwise. Rows come straight off a Mongo cursor as documents and are encoded a
+ * buffer at a time, so memory stays flat however large the export is and a slow client
+ * only holds back its own cursor. With a {@code limit} the export is a page, and the next
+ * page's cursor pins the data version and revision the first page was read at. A quarterly
+ * import merges into the active version in place and bumps the revision, so the cursor
+ * stops resuming then, as it does once its version is dropped.
+ */
+@Component
+@RequiredArgsConstructor
+public class DataExport {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final DataVersions dataVersions;
+    private final ObjectMapper objectMapper;
+    private final ExportProperties properties;
+
+    public record Export(ExportDataset dataset, ExportFormat format, long version, String nextCursor,
+            Flux<DataBuffer> body) {
+    }
+
+    /**
+     * @param states    only these states (prices only); empty for all
+     * @param ndcPrefix only NDCs starting with these digits, or null
+     * @param cursor    token from a previous page, or null to start at the first row
+     * @param limit     rows in this page, or null for everything that is left
+     */
+    public Mono<Export> export(ExportDataset dataset, ExportFormat format, Set<String> states, String ndcPrefix,
+            String cursor, Integer limit) {
+        return Mono.defer(() -> {
+            if (!states.isEmpty() && !dataset.perState())
+                throw new IllegalArgumentException("state filter only applies to prices");
+            if (ndcPrefix != null && !ndcPrefix.matches("\\d{1,11}"))
+                throw new IllegalArgumentException("ndcPrefix must be 1 to 11 digits");
+            if (limit != null && limit < 1)
+                throw new IllegalArgumentException("limit must be positive");
+            ExportCursor after = cursor != null ? ExportCursor.decode(cursor, dataset) : null;
+            long version = after != null ? after.version() : dataVersions.active();
+            long revision = dataVersions.revision();
+            if (after != null && after.revision() != revision)
+                throw new IllegalStateException("Data version " + version
+                        + " changed since the export started, restart the export");
+            String collection = DataVersions.collection(dataset.collection(), version);
+            Criteria criteria = criteria(dataset, states, ndcPrefix, after);
+
+            return mongoTemplate.collectionExists(collection)
+                    .flatMap(exists -> {
+                        if (!exists)
+                            return Mono.error(new IllegalStateException(
+                                    "Data version " + version + " is no longer available, restart the export"));
+                        return nextCursor(dataset, collection, criteria, version, revision, limit);
+                    })
+                    .map(next -> new Export(dataset, format, version, next.isEmpty() ? null : next,
+                            body(dataset, format, collection, criteria, limit)));
+        });
+    }
+
+    private static Criteria criteria(ExportDataset dataset, Set<String> states, String ndcPrefix,
+            ExportCursor after) {
+        List<Criteria> all = new ArrayList<>();
+        if (ndcPrefix != null)
+            all.add(Criteria.where("ndc").regex("^" + ndcPrefix));
+        if (!states.isEmpty())
+            all.add(Criteria.where("state").in(states));
+        if (after != null) {
+            all.add(dataset.perState()
+                    ? new Criteria().orOperator(Criteria.where("ndc").gt(after.ndc()),
+                            Criteria.where("ndc").is(after.ndc()).and("state").gt(after.state()))
+                    : Criteria.where("ndc").gt(after.ndc()));
+        }
+        return all.isEmpty() ? null : new Criteria().andOperator(all);
+    }
+
+    private static Query query(ExportDataset dataset, Criteria criteria) {
+        Query query = criteria != null ? new Query(criteria) : new Query();
+        return query.with(dataset.perState() ? Sort.by("ndc", "state") : Sort.by("ndc"));
+    }
+
+    // Key of the page's last row, if a row follows it; found on the index before any row is sent
+    private Mono<String> nextCursor(ExportDataset dataset, String collection, Criteria criteria, long version,
+            long revision, Integer limit) {
+        if (limit == null)
+            return Mono.just("");
+        Query query = query(dataset, criteria).skip(limit - 1L).limit(2);
+        query.fields().include("ndc", "state").exclude("_id");
+        return mongoTemplate.find(query, Document.class, collection)
+                .collectList()
+                .map(keys -> keys.size() < 2 ? "" : new ExportCursor(dataset, version, revision,
+                        keys.get(0).getString("ndc"),
+                        dataset.perState() ? keys.get(0).getString("state") : null).encode());
+    }
+
+    private Flux<DataBuffer> body(ExportDataset dataset, ExportFormat format, String collection, Criteria criteria,
+            Integer limit) {
+        Query query = query(dataset, criteria).cursorBatchSize(properties.getFetchSize());
+        if (limit != null)
+            query.limit(limit);
+        query.fields().include(dataset.columns().toArray(String[]::new)).exclude("_id");
+
+        Flux<DataBuffer> rows = mongoTemplate.find(query, Document.class, collection)
+                .buffer(Math.max(1, properties.getRowsPerBuffer()))
+                .map(batch -> encode(dataset, format, batch));
+        return format == ExportFormat.CSV ? Flux.concat(Mono.fromSupplier(() -> csvHeader(dataset)), rows) : rows;
+    }
+
+    private DataBuffer encode(ExportDataset dataset, ExportFormat format, List<Document> batch) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(batch.size() * 128);
+        for (Document doc : batch) {
+            if (format == ExportFormat.CSV) {
+                StringBuilder line = new StringBuilder(128);
+                for (String column : dataset.columns()) {
+                    if (line.length() > 0)
+                        line.append(',');
+                    Object value = value(doc.get(column));
+                    if (value != null)
+                        csv(line, value.toString());
+                }
+                out.writeBytes(line.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+            } else {
+                Map<String, Object> row = new LinkedHashMap<>();
+                for (String column : dataset.columns()) {
+                    Object value = value(doc.get(column));
+                    if (value != null)
+                        row.put(column, value);
+                }
+                try {
+                    out.writeBytes(objectMapper.writeValueAsBytes(row));
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+                out.write('\n');
+            }
+        }
+        return DefaultDataBufferFactory.sharedInstance.wrap(out.toByteArray());
+    }
+
+    private static DataBuffer csvHeader(ExportDataset dataset) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(
+                (String.join(",", dataset.columns()) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Dates as ISO-8601 instants in both formats
+    private static Object value(Object value) {
+        return value instanceof Date date ? date.toInstant().toString() : value;
+    }
+
+    private static void csv(StringBuilder line, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            line.append(value);
+            return;
+        }
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+}
@@ -0,0 +1,33 @@
+package com.myhealthprices.export;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Resume point of an export: the dataset, the data version and pointer revision it was
+ * read at, and the key of the last row already delivered. Encoded as an opaque URL-safe token.
+ */
+public record ExportCursor(ExportDataset dataset, long version, long revision, String ndc, String state) {
+
+    public String encode() {
+        String plain = dataset.name() + "|" + version + "|" + revision + "|" + ndc + "|" + (state != null ? state : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ExportCursor decode(String token, ExportDataset dataset) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed export cursor");
+        }
+        if (parts.length != 5 || !parts[0].equals(dataset.name()) || parts[3].isEmpty())
+            throw new IllegalArgumentException("Export cursor does not belong to " + dataset.name().toLowerCase());
+        try {
+            return new ExportCursor(dataset, Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3],
+                    dataset.perState() ? parts[4] : null);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed export cursor");
+        }
+    }
+}
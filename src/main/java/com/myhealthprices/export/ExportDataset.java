@@ -0,0 +1,47 @@
+package com.myhealthprices.export;
+
+import java.util.List;
+import java.util.Locale;
+
+// Exportable serving collections, their key order and their columns in output order
+public enum ExportDataset {
+    PRICES("drug_prices", true,
+            List.of("ndc", "state", "price", "year", "quarter", "lastUpdated")),
+    SUMMARIES("drug_summaries", false,
+            List.of("ndc", "averagePrice", "minPrice", "maxPrice", "medianPrice", "p10Price", "p90Price",
+                    "totalStates", "lastUpdated")),
+    DEFINITIONS("drug_definitions", false,
+            List.of("ndc", "name", "manufacturer", "genericName", "labeler", "strength", "dosageForm",
+                    "packageSize", "lastUpdated"));
+
+    private final String collection;
+    private final boolean perState;
+    private final List<String> columns;
+
+    ExportDataset(String collection, boolean perState, List<String> columns) {
+        this.collection = collection;
+        this.perState = perState;
+        this.columns = columns;
+    }
+
+    public static ExportDataset of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown dataset " + name + ", expected prices, summaries or definitions");
+        }
+    }
+
+    public String collection() {
+        return collection;
+    }
+
+    // Rows are unique per (ndc, state) rather than per NDC
+    public boolean perState() {
+        return perState;
+    }
+
+    public List<String> columns() {
+        return columns;
+    }
+}
@@ -0,0 +1,37 @@
+package com.myhealthprices.importer;
+
+import java.time.Duration;
+
+/**
+ * Picks the write batch size from observed write latency: grows by a quarter while
+ * batches finish well under the target, halving as soon as one overshoots it.
+ */
+public class AdaptiveBatchSizer {
+
+    private final int minSize;
+    private final int maxSize;
+    private final long targetNanos;
+    private volatile int current;
+
+    public AdaptiveBatchSizer(int initialSize, int minSize, int maxSize, Duration targetLatency) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetNanos = targetLatency.toNanos();
+        this.current = Math.max(minSize, Math.min(maxSize, initialSize));
+    }
+
+    public int current() {
+        return current;
+    }
+
+    public synchronized void record(int batchSize, long latencyNanos) {
+        // Ignore stragglers written with an older size so one slow batch is not counted twice
+        if (batchSize < current / 2)
+            return;
+        if (latencyNanos > targetNanos) {
+            current = Math.max(minSize, current / 2);
+        } else if (latencyNanos < targetNanos / 2) {
+            current = Math.min(maxSize, current + Math.max(minSize / 2, current / 4));
+        }
+    }
+}
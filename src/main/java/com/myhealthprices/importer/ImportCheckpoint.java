@@ -0,0 +1,51 @@
+package com.myhealthprices.importer;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Resume state of a staged import. Chunk boundaries depend only on the file and the
+ * chunk size, and staged rows are keyed by their byte offset, so a recorded chunk can
+ * be skipped on the next attempt and re-sending a partly written one only produces
+ * duplicate keys. A chunk is recorded after every one of its rows has been written.
+ */
+public interface ImportCheckpoint {
+
+    ImportCheckpoint NONE = new ImportCheckpoint() {
+        @Override
+        public boolean resuming() {
+            return false;
+        }
+
+        @Override
+        public boolean chunkDone(int index) {
+            return false;
+        }
+
+        @Override
+        public Mono<Void> recordChunk(SdudChunk chunk, long rows) {
+            return Mono.empty();
+        }
+
+        @Override
+        public boolean stagingDone() {
+            return false;
+        }
+
+        @Override
+        public Mono<Void> recordStaged() {
+            return Mono.empty();
+        }
+    };
+
+    // Rows staged by an earlier attempt are kept rather than cleared
+    boolean resuming();
+
+    boolean chunkDone(int index);
+
+    Mono<Void> recordChunk(SdudChunk chunk, long rows);
+
+    // The whole file was staged by an earlier attempt; only the build remains
+    boolean stagingDone();
+
+    Mono<Void> recordStaged();
+}
@@ -0,0 +1,160 @@
+package com.myhealthprices.importer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters for the running (or last) import. Rates are recomputed at most once
+ * per second from the counter deltas, so polling the admin endpoint is cheap. The same
+ * events feed Micrometer: per-chunk parse and per-batch write timers, row counters, and
+ * one timer per optimize/merge stage ({@link #timeStage}).
+ */
+@Component
+public class ImportMetrics {
+
+    private static final long RATE_WINDOW_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private final LongAdder rowsParsed = new LongAdder();
+    private final LongAdder rowsRejected = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder batchesWritten = new LongAdder();
+
+    private final MeterRegistry registry;
+    private final Timer parseTimer;
+    private final Timer writeTimer;
+    private final Counter parsedCounter;
+    private final Counter rejectedCounter;
+    private final Counter writtenCounter;
+
+    private volatile boolean running;
+    private volatile Instant startedAt;
+    private volatile int batchSize;
+    private volatile long lastBatchMillis;
+
+    private long sampledAt = System.nanoTime();
+    private long sampledParsed;
+    private long sampledWritten;
+    private double parsedPerSecond;
+    private double writtenPerSecond;
+
+    public ImportMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        // Parsing a chunk includes mapping its rows: both happen in one pass over the bytes
+        this.parseTimer = Timer.builder("sdud.import.parse")
+                .description("Time to parse and map one file chunk")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.writeTimer = Timer.builder("sdud.import.write")
+                .description("Time to write one batch of rows")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.parsedCounter = rows(registry, "parsed");
+        this.rejectedCounter = rows(registry, "rejected");
+        this.writtenCounter = rows(registry, "written");
+        Gauge.builder("sdud.import.batch.size", this, m -> m.batchSize).register(registry);
+        Gauge.builder("sdud.import.running", this, m -> m.running ? 1 : 0).register(registry);
+    }
+
+    private static Counter rows(MeterRegistry registry, String outcome) {
+        return Counter.builder("sdud.import.rows").tag("outcome", outcome).register(registry);
+    }
+
+    public synchronized void start() {
+        rowsParsed.reset();
+        rowsRejected.reset();
+        rowsWritten.reset();
+        batchesWritten.reset();
+        sampledAt = System.nanoTime();
+        sampledParsed = 0;
+        sampledWritten = 0;
+        parsedPerSecond = 0;
+        writtenPerSecond = 0;
+        startedAt = Instant.now();
+        running = true;
+    }
+
+    public void finish() {
+        running = false;
+    }
+
+    public void recordParsed(long accepted, long rejected) {
+        rowsParsed.add(accepted);
+        rowsRejected.add(rejected);
+        parsedCounter.increment(accepted);
+        rejectedCounter.increment(rejected);
+    }
+
+    public void recordParseTime(long nanos) {
+        parseTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordWritten(int rows, long latencyNanos, int nextBatchSize) {
+        rowsWritten.add(rows);
+        batchesWritten.increment();
+        writtenCounter.increment(rows);
+        writeTimer.record(latencyNanos, TimeUnit.NANOSECONDS);
+        lastBatchMillis = latencyNanos / 1_000_000;
+        batchSize = nextBatchSize;
+    }
+
+    // Times one optimize or merge stage from subscription to termination, tagged with its outcome
+    public <T> Mono<T> timeStage(String stage, Mono<T> work) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(registry);
+            return work.doFinally(signal -> sample.stop(Timer.builder("sdud.optimize.stage")
+                    .description("Duration of one import/optimize stage")
+                    .tag("stage", stage)
+                    .tag("outcome", outcome(signal))
+                    .register(registry)));
+        });
+    }
+
+    private static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_COMPLETE -> "success";
+            case ON_ERROR -> "error";
+            default -> "cancelled";
+        };
+    }
+
+    public synchronized Snapshot snapshot() {
+        long parsed = rowsParsed.sum();
+        long written = rowsWritten.sum();
+        long now = System.nanoTime();
+        long elapsed = now - sampledAt;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            parsedPerSecond = (parsed - sampledParsed) * 1e9 / elapsed;
+            writtenPerSecond = (written - sampledWritten) * 1e9 / elapsed;
+            sampledAt = now;
+            sampledParsed = parsed;
+            sampledWritten = written;
+        }
+        return new Snapshot(running, startedAt, parsed, written, rowsRejected.sum(),
+                Math.max(0, parsed - written), batchesWritten.sum(), batchSize, lastBatchMillis,
+                Math.round(parsedPerSecond), Math.round(writtenPerSecond));
+    }
+
+    public record Snapshot(
+            boolean running,
+            Instant startedAt,
+            long rowsParsed,
+            long rowsWritten,
+            long rowsRejected,
+            long queueDepth,
+            long batchesWritten,
+            int batchSize,
+            long lastBatchMillis,
+            long rowsParsedPerSecond,
+            long rowsWrittenPerSecond) {
+    }
+}
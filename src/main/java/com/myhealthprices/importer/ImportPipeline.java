@@ -0,0 +1,184 @@
+package com.myhealthprices.importer;
+
+import com.myhealthprices.config.ImportProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Chunked SDUD import: parse workers map chunks in parallel (completion order, not
+ * file order), rows are re-batched at a size driven by write latency, and writer
+ * workers drain batches concurrently. flatMap concurrency and a re-batching prefetch of
+ * one chunk bound the rows in flight, so slow writes back-pressure the parsers, and
+ * chunks are pulled from the source on demand, so a compressed input is only
+ * decompressed as fast as it is written.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ImportPipeline {
+
+    private final ImportProperties importProperties;
+    private final ImportMetrics metrics;
+
+    public <T> Mono<Void> run(SdudSource source, BiFunction<SdudRow, SdudColumns, T> mapper,
+            Function<List<T>, Mono<Void>> writer) {
+        return run(source, (row, columns) -> true, mapper, writer);
+    }
+
+    // Rows failing the filter are skipped without counting as rejected (e.g. other quarters)
+    public <T> Mono<Void> run(SdudSource source, BiPredicate<SdudRow, SdudColumns> filter,
+            BiFunction<SdudRow, SdudColumns, T> mapper, Function<List<T>, Mono<Void>> writer) {
+        return run(source, filter, mapper, writer, ImportCheckpoint.NONE);
+    }
+
+    // Chunks the checkpoint already holds are skipped; each finished chunk is recorded before its last batch completes
+    public <T> Mono<Void> run(SdudSource source, BiPredicate<SdudRow, SdudColumns> filter,
+            BiFunction<SdudRow, SdudColumns, T> mapper, Function<List<T>, Mono<Void>> writer,
+            ImportCheckpoint checkpoint) {
+        int parseWorkers = Math.max(1, importProperties.getParseWorkers());
+        int writeWorkers = Math.max(1, importProperties.getWriteWorkers());
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(importProperties.getBatchSize(),
+                importProperties.getMinBatchSize(), importProperties.getMaxBatchSize(),
+                importProperties.getTargetBatchLatency());
+
+        return Mono.using(
+                () -> Schedulers.newParallel("sdud-parse", parseWorkers),
+                parseScheduler -> Mono.fromRunnable(() -> {
+                            metrics.start();
+                            log.info("Importing {} input bytes with {} parse / {} write workers",
+                                    source.inputSize(), parseWorkers, writeWorkers);
+                        })
+                        .thenMany(Flux.defer(() -> {
+                            AtomicInteger nextIndex = new AtomicInteger();
+                            return source.read(importProperties.getChunkBytes(), nextIndex::getAndIncrement,
+                                    checkpoint::chunkDone);
+                        }))
+                        .transform(chunks -> batches(parse(chunks, filter, mapper, parseScheduler, parseWorkers), sizer))
+                        .flatMap(batch -> write(batch, writer, sizer, checkpoint), writeWorkers)
+                        .then(),
+                Scheduler::dispose)
+                // doFinally would run after the subscriber has already seen completion
+                .doOnTerminate(metrics::finish)
+                .doOnCancel(metrics::finish);
+    }
+
+    private <T> Flux<Parsed<T>> parse(Flux<SdudChunk> chunks, BiPredicate<SdudRow, SdudColumns> filter,
+            BiFunction<SdudRow, SdudColumns, T> mapper, Scheduler scheduler, int workers) {
+        return chunks
+                .flatMap(chunk -> Mono.fromCallable(() -> {
+                    long start = System.nanoTime();
+                    SdudColumns columns = chunk.columns();
+                    List<T> rows = new ArrayList<>();
+                    int[] skipped = new int[1];
+                    int visited = chunk.forEachRow(row -> {
+                        if (!filter.test(row, columns)) {
+                            skipped[0]++;
+                            return;
+                        }
+                        T mapped = mapper.apply(row, columns);
+                        if (mapped != null)
+                            rows.add(mapped);
+                    });
+                    metrics.recordParsed(rows.size(), visited - skipped[0] - rows.size());
+                    metrics.recordParseTime(System.nanoTime() - start);
+                    return new Parsed<>(new ChunkProgress(chunk, rows.size()), rows);
+                }).subscribeOn(scheduler), workers, 1);
+    }
+
+    // Re-slices parsed chunks into batches of the sizer's current size, carrying remainders over.
+    // Takes one parsed chunk at a time: the default prefetch of 32 would let parsing run far ahead of writes
+    private <T> Flux<Batch<T>> batches(Flux<Parsed<T>> parsed, AdaptiveBatchSizer sizer) {
+        return Flux.defer(() -> {
+            Batch<T> pending = new Batch<>();
+            return parsed.concatMapIterable(chunk -> {
+                List<Batch<T>> ready = new ArrayList<>();
+                if (chunk.rows().isEmpty()) {
+                    // Nothing to write, but the chunk still has to reach the checkpoint
+                    Batch<T> empty = new Batch<>();
+                    empty.owners.add(chunk.progress());
+                    empty.counts.add(0);
+                    ready.add(empty);
+                }
+                for (T row : chunk.rows()) {
+                    pending.add(row, chunk.progress());
+                    if (pending.rows.size() >= sizer.current())
+                        ready.add(pending.drain());
+                }
+                return ready;
+            }, 1).concatWith(Mono.fromSupplier(pending::drain).filter(rest -> !rest.owners.isEmpty()));
+        });
+    }
+
+    private <T> Mono<Void> write(Batch<T> batch, Function<List<T>, Mono<Void>> writer, AdaptiveBatchSizer sizer,
+            ImportCheckpoint checkpoint) {
+        return Mono.defer(() -> {
+            if (batch.rows.isEmpty())
+                return Mono.<Void>empty();
+            long start = System.nanoTime();
+            return writer.apply(batch.rows).doOnSuccess(x -> {
+                long latency = System.nanoTime() - start;
+                sizer.record(batch.rows.size(), latency);
+                metrics.recordWritten(batch.rows.size(), latency, sizer.current());
+            });
+        }).then(Flux.defer(() -> {
+            List<ChunkProgress> finished = new ArrayList<>();
+            for (int i = 0; i < batch.owners.size(); i++) {
+                ChunkProgress owner = batch.owners.get(i);
+                if (owner.remaining().addAndGet(-batch.counts.get(i)) == 0)
+                    finished.add(owner);
+            }
+            return Flux.fromIterable(finished);
+        }).concatMap(done -> checkpoint.recordChunk(done.chunk(), done.rows())).then());
+    }
+
+    // Rows of a chunk still waiting to be written
+    private record ChunkProgress(SdudChunk chunk, int rows, AtomicInteger remaining) {
+        ChunkProgress(SdudChunk chunk, int rows) {
+            this(chunk, rows, new AtomicInteger(rows));
+        }
+    }
+
+    private record Parsed<T>(ChunkProgress progress, List<T> rows) {
+    }
+
+    // Rows to write plus how many of them came from each chunk, in run-length form
+    private static final class Batch<T> {
+        final List<T> rows = new ArrayList<>();
+        final List<ChunkProgress> owners = new ArrayList<>();
+        final List<Integer> counts = new ArrayList<>();
+
+        void add(T row, ChunkProgress owner) {
+            rows.add(row);
+            int last = owners.size() - 1;
+            if (last >= 0 && owners.get(last) == owner) {
+                counts.set(last, counts.get(last) + 1);
+            } else {
+                owners.add(owner);
+                counts.add(1);
+            }
+        }
+
+        Batch<T> drain() {
+            Batch<T> out = new Batch<>();
+            out.rows.addAll(rows);
+            out.owners.addAll(owners);
+            out.counts.addAll(counts);
+            rows.clear();
+            owners.clear();
+            counts.clear();
+            return out;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.myhealthprices.importer;
+
+import com.myhealthprices.config.WorkloadProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backs import writes off while user queries are slow. Every interval it reads the p99 of
+ * the query routes' {@code http.server.requests} timers: over the threshold the pause
+ * before each write batch doubles (up to the maximum), under half of it the pause halves
+ * until it is gone. Works from observed latency rather than a schedule, so a nightly
+ * refresh yields to whichever time zone is busy.
+ */
+@Component
+@Slf4j
+public class ImportThrottle {
+
+    private final MeterRegistry registry;
+    private final WorkloadProperties workload;
+    private final Scheduler scheduler;
+    private final long thresholdNanos;
+    private final long maxDelayNanos;
+
+    private volatile long delayNanos;
+    private Disposable poller;
+
+    public ImportThrottle(MeterRegistry registry, WorkloadProperties workload, Scheduler batchScheduler) {
+        this.registry = registry;
+        this.workload = workload;
+        this.scheduler = batchScheduler;
+        this.thresholdNanos = workload.getThrottleP99().toNanos();
+        this.maxDelayNanos = workload.getThrottleMaxDelay().toNanos();
+        Gauge.builder("import.throttle.delay", this, t -> t.delayNanos / 1e6)
+                .description("Pause before each import write batch, in milliseconds")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!workload.isThrottleEnabled())
+            return;
+        poller = Flux.interval(workload.getThrottleInterval(), scheduler)
+                .subscribe(tick -> adjust(), e -> log.warn("Import throttle stopped", e));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (poller != null)
+            poller.dispose();
+    }
+
+    // Waits out the current pause; free while queries are fast
+    public Mono<Void> pace() {
+        long delay = delayNanos;
+        return delay == 0 ? Mono.empty() : Mono.delay(Duration.ofNanos(delay), scheduler).then();
+    }
+
+    public Duration delay() {
+        return Duration.ofNanos(delayNanos);
+    }
+
+    void adjust() {
+        long p99 = queryP99Nanos();
+        long delay = delayNanos;
+        if (p99 > thresholdNanos) {
+            delay = delay == 0 ? maxDelayNanos / 16 : Math.min(maxDelayNanos, delay * 2);
+        } else if (p99 < thresholdNanos / 2 && delay > 0) {
+            delay = delay / 2 < maxDelayNanos / 16 ? 0 : delay / 2;
+        }
+        if (delay != delayNanos)
+            log.info("Query p99 {} ms, import write pause now {} ms", p99 / 1_000_000, delay / 1_000_000);
+        delayNanos = delay;
+    }
+
+    // Worst p99 across the query routes; 0 until any of them has traffic
+    long queryP99Nanos() {
+        double worst = 0;
+        for (Timer timer : registry.find("http.server.requests").timers()) {
+            String uri = timer.getId().getTag("uri");
+            if (uri == null || workload.getThrottleRoutes().stream().noneMatch(uri::startsWith))
+                continue;
+            for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+                if (value.percentile() == 0.99)
+                    worst = Math.max(worst, value.value(TimeUnit.NANOSECONDS));
+            }
+        }
+        return (long) worst;
+    }
+}
@@ -0,0 +1,97 @@
+package com.myhealthprices.importer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * A line-aligned byte range of an SDUD input. Rows are visited through a single
+ * reused {@link SdudRow} cursor, so visitors must copy out anything they keep.
+ * Mapped chunks can be visited again; decompressed chunks hold their bytes on the
+ * heap and drop them after the first visit.
+ */
+public class SdudChunk {
+
+    private final int source;
+    private final int index;
+    private final long start;
+    private final long end;
+    private final long inputLength;
+    private final SdudColumns columns;
+    private final boolean releaseAfterRead;
+    private Bytes bytes;
+
+    @FunctionalInterface
+    interface Bytes {
+        ByteBuffer load() throws IOException;
+    }
+
+    SdudChunk(int source, int index, long start, long end, long inputLength, SdudColumns columns,
+            Bytes bytes, boolean releaseAfterRead) {
+        this.source = source;
+        this.index = index;
+        this.start = start;
+        this.end = end;
+        this.inputLength = inputLength;
+        this.columns = columns;
+        this.bytes = bytes;
+        this.releaseAfterRead = releaseAfterRead;
+    }
+
+    // Position of the input this chunk came from in the configured file list
+    public int source() {
+        return source;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    // Offsets into the (decompressed) input
+    public long start() {
+        return start;
+    }
+
+    public long end() {
+        return end;
+    }
+
+    public long length() {
+        return end - start;
+    }
+
+    // Bytes of the input on disk this chunk accounts for; differs from length() when compressed
+    public long inputLength() {
+        return inputLength;
+    }
+
+    public SdudColumns columns() {
+        return columns;
+    }
+
+    public int forEachRow(Consumer<SdudRow> visitor) throws IOException {
+        Bytes data = bytes;
+        if (data == null)
+            throw new IllegalStateException("Chunk " + index + " of input " + source + " was already read");
+        if (releaseAfterRead)
+            bytes = null;
+        ByteBuffer buffer = data.load();
+        SdudRow row = new SdudRow();
+        int limit = buffer.limit();
+        int rows = 0;
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int next = lineStart;
+            while (next < limit && buffer.get(next) != '\n')
+                next++;
+            int lineEnd = SdudFileReader.lineEnd(buffer, lineStart, next);
+            if (lineEnd > lineStart) {
+                row.reset(buffer, lineStart, lineEnd, source, start + lineStart);
+                visitor.accept(row);
+                rows++;
+            }
+            lineStart = next + 1;
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,44 @@
+package com.myhealthprices.importer;
+
+import java.util.List;
+
+/**
+ * Column positions of the SDUD fields the importer reads, resolved once from the header.
+ */
+public record SdudColumns(
+        int utilizationType,
+        int state,
+        int ndc,
+        int labelerCode,
+        int productCode,
+        int packageSize,
+        int year,
+        int quarter,
+        int suppressionUsed,
+        int productName,
+        int unitsReimbursed,
+        int totalAmountReimbursed) {
+
+    public static SdudColumns of(List<String> header) {
+        return new SdudColumns(
+                index(header, "Utilization Type"),
+                index(header, "State"),
+                index(header, "NDC"),
+                index(header, "Labeler Code"),
+                index(header, "Product Code"),
+                index(header, "Package Size"),
+                index(header, "Year"),
+                index(header, "Quarter"),
+                index(header, "Suppression Used"),
+                index(header, "Product Name"),
+                index(header, "Units Reimbursed"),
+                index(header, "Total Amount Reimbursed"));
+    }
+
+    private static int index(List<String> header, String name) {
+        int i = header.indexOf(name);
+        if (i < 0)
+            throw new IllegalArgumentException("SDUD header is missing column '" + name + "'");
+        return i;
+    }
+}
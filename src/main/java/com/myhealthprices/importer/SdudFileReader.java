@@ -0,0 +1,148 @@
+package com.myhealthprices.importer;
+
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+
+/**
+ * Memory-mapped reader for SDUD CSV files. The file is split into line-aligned
+ * {@link SdudChunk}s that can be parsed independently and in parallel; each chunk
+ * maps its own region so files larger than 2 GB are fine.
+ *
+ * Assumes no line breaks inside quoted fields, which holds for SDUD exports.
+ */
+public class SdudFileReader implements SdudSource {
+
+    private static final int SCAN_WINDOW = 64 * 1024;
+
+    private final FileChannel channel;
+    private final int source;
+    private final long size;
+    private final SdudColumns columns;
+    private final long dataStart;
+
+    private SdudFileReader(FileChannel channel, int source) throws IOException {
+        this.channel = channel;
+        this.source = source;
+        this.size = channel.size();
+        this.dataStart = nextLineStart(0);
+        this.columns = header(map(0, dataStart));
+    }
+
+    public static SdudFileReader open(Path path) throws IOException {
+        return open(path, 0);
+    }
+
+    public static SdudFileReader open(Path path, int source) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new SdudFileReader(channel, source);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public SdudColumns columns() {
+        return columns;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long inputSize() {
+        return size;
+    }
+
+    public List<SdudChunk> chunks(int targetBytes) throws IOException {
+        int[] next = new int[1];
+        return chunks(targetBytes, () -> next[0]++);
+    }
+
+    // Chunks are mapped when visited, so a done chunk costs nothing
+    @Override
+    public Flux<SdudChunk> read(int targetBytes, IntSupplier nextIndex, IntPredicate done) {
+        return Flux.defer(() -> {
+            try {
+                return Flux.fromIterable(chunks(targetBytes, nextIndex)).filter(chunk -> !done.test(chunk.index()));
+            } catch (IOException e) {
+                return Flux.error(e);
+            }
+        });
+    }
+
+    private List<SdudChunk> chunks(int targetBytes, IntSupplier nextIndex) throws IOException {
+        List<SdudChunk> chunks = new ArrayList<>();
+        long start = dataStart;
+        while (start < size) {
+            long end = start + targetBytes >= size ? size : nextLineStart(start + targetBytes - 1);
+            long from = start;
+            chunks.add(new SdudChunk(source, nextIndex.getAsInt(), start, end, end - start, columns,
+                    () -> map(from, end), false));
+            start = end;
+        }
+        return chunks;
+    }
+
+    MappedByteBuffer map(long start, long end) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    // Offset just past the first '\n' at or after the given position
+    private long nextLineStart(long from) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        long pos = from;
+        while (pos < size) {
+            window.clear();
+            int n = channel.read(window, pos);
+            if (n <= 0)
+                break;
+            for (int i = 0; i < n; i++) {
+                if (window.get(i) == '\n')
+                    return pos + i + 1;
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    // Column layout from a buffer holding the header line, which may start with a UTF-8 BOM
+    static SdudColumns header(ByteBuffer buffer) {
+        int from = hasBom(buffer) ? 3 : 0;
+        SdudRow headerRow = new SdudRow();
+        headerRow.reset(buffer, from, lineEnd(buffer, from, buffer.limit()), 0, 0);
+        List<String> names = new ArrayList<>(headerRow.fieldCount());
+        for (int i = 0; i < headerRow.fieldCount(); i++) {
+            names.add(headerRow.text(i).trim());
+        }
+        return SdudColumns.of(names);
+    }
+
+    static int lineEnd(ByteBuffer buffer, int from, int to) {
+        int end = to;
+        while (end > from && (buffer.get(end - 1) == '\n' || buffer.get(end - 1) == '\r'))
+            end--;
+        return end;
+    }
+
+    private static boolean hasBom(ByteBuffer buffer) {
+        return buffer.limit() >= 3
+                && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,75 @@
+package com.myhealthprices.importer;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+
+/**
+ * The configured SDUD files read as one source, in list order. Plain CSVs are
+ * memory-mapped and compressed ones are decompressed as a stream on {@code scheduler};
+ * chunk numbering runs across all files and every row carries the position of the file
+ * it came from.
+ */
+public class SdudInput implements SdudSource {
+
+    private final List<SdudSource> sources;
+
+    private SdudInput(List<SdudSource> sources) {
+        this.sources = sources;
+    }
+
+    public static SdudInput open(List<Path> paths, Scheduler scheduler) throws IOException {
+        List<SdudSource> sources = new ArrayList<>(paths.size());
+        try {
+            for (Path path : paths) {
+                int source = sources.size();
+                sources.add(SdudStreamReader.isCompressed(path)
+                        ? SdudStreamReader.open(path, source, scheduler)
+                        : SdudFileReader.open(path, source));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (SdudSource opened : sources) {
+                try {
+                    opened.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        return new SdudInput(sources);
+    }
+
+    @Override
+    public Flux<SdudChunk> read(int targetBytes, IntSupplier nextIndex, IntPredicate done) {
+        return Flux.fromIterable(sources).concatMap(source -> source.read(targetBytes, nextIndex, done));
+    }
+
+    @Override
+    public long inputSize() {
+        return sources.stream().mapToLong(SdudSource::inputSize).sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (SdudSource source : sources) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+}
@@ -0,0 +1,204 @@
+package com.myhealthprices.importer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Cursor over one CSV line of a mapped buffer. Field boundaries are recorded as
+ * offsets; numeric accessors parse straight from the bytes and only text() allocates.
+ */
+public class SdudRow {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private ByteBuffer buffer;
+    private int source;
+    private long offset;
+    private int fieldCount;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] escaped = new boolean[16];
+    private byte[] scratch = new byte[256];
+
+    void reset(ByteBuffer buffer, int from, int to, int source, long offset) {
+        this.buffer = buffer;
+        this.source = source;
+        this.offset = offset;
+        this.fieldCount = 0;
+        int i = from;
+        while (true) {
+            ensureFieldCapacity(fieldCount + 1);
+            if (i < to && buffer.get(i) == '"') {
+                // Quoted field: "" is an escaped quote
+                int start = ++i;
+                boolean hasEscape = false;
+                while (i < to) {
+                    if (buffer.get(i) == '"') {
+                        if (i + 1 < to && buffer.get(i + 1) == '"') {
+                            hasEscape = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                starts[fieldCount] = start;
+                ends[fieldCount] = i;
+                escaped[fieldCount] = hasEscape;
+                while (i < to && buffer.get(i) != ',')
+                    i++;
+            } else {
+                int start = i;
+                while (i < to && buffer.get(i) != ',')
+                    i++;
+                starts[fieldCount] = start;
+                ends[fieldCount] = i;
+                escaped[fieldCount] = false;
+            }
+            fieldCount++;
+            if (i >= to)
+                break;
+            i++; // skip ','
+        }
+    }
+
+    // Position of the input file in the configured list; offsets are only unique within one
+    public int source() {
+        return source;
+    }
+
+    // Absolute (decompressed) file offset of the first byte of this line
+    public long offset() {
+        return offset;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public boolean isEmpty(int column) {
+        checkColumn(column);
+        return starts[column] == ends[column];
+    }
+
+    public String text(int column) {
+        checkColumn(column);
+        int length = copyField(column);
+        for (int i = 0; i < length; i++) {
+            if (scratch[i] < 0)
+                return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    // Same contract as the importer's parseDouble: empty is 0.0, garbage throws
+    public double number(int column) {
+        checkColumn(column);
+        int from = starts[column];
+        int to = ends[column];
+        if (from == to)
+            return 0.0;
+
+        int i = from;
+        boolean negative = false;
+        byte b = buffer.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int scale = 0;
+        boolean fraction = false;
+        boolean anyDigit = false;
+        for (; i < to; i++) {
+            b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (mantissa > MAX_EXACT_MANTISSA)
+                    return Double.parseDouble(text(column));
+                mantissa = mantissa * 10 + (b - '0');
+                anyDigit = true;
+                if (fraction)
+                    scale++;
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                // Exponents, whitespace and anything unusual take the JDK path
+                return Double.parseDouble(text(column));
+            }
+        }
+        if (!anyDigit || mantissa > MAX_EXACT_MANTISSA || scale >= POWERS_OF_TEN.length)
+            return Double.parseDouble(text(column));
+        // Exact mantissa and power of ten: one division is correctly rounded
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    // Same contract as Integer.parseInt
+    public int integer(int column) {
+        checkColumn(column);
+        int from = starts[column];
+        int to = ends[column];
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        if (i == to || to - i > 9)
+            return Integer.parseInt(text(column));
+        int value = 0;
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9')
+                return Integer.parseInt(text(column));
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    // Same contract as Boolean.parseBoolean
+    public boolean bool(int column) {
+        checkColumn(column);
+        int from = starts[column];
+        if (ends[column] - from != 4)
+            return false;
+        return (buffer.get(from) | 0x20) == 't'
+                && (buffer.get(from + 1) | 0x20) == 'r'
+                && (buffer.get(from + 2) | 0x20) == 'u'
+                && (buffer.get(from + 3) | 0x20) == 'e';
+    }
+
+    private int copyField(int column) {
+        int from = starts[column];
+        int to = ends[column];
+        if (scratch.length < to - from)
+            scratch = new byte[Math.max(to - from, scratch.length * 2)];
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            scratch[length++] = b;
+            if (b == '"' && escaped[column])
+                i++;
+        }
+        return length;
+    }
+
+    private void checkColumn(int column) {
+        if (column < 0 || column >= fieldCount)
+            throw new IllegalArgumentException("Row has " + fieldCount + " fields, column " + column + " requested");
+    }
+
+    private void ensureFieldCapacity(int required) {
+        if (required <= starts.length)
+            return;
+        int capacity = starts.length * 2;
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        escaped = Arrays.copyOf(escaped, capacity);
+    }
+}
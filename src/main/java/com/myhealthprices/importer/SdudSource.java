@@ -0,0 +1,26 @@
+package com.myhealthprices.importer;
+
+import reactor.core.publisher.Flux;
+
+import java.io.Closeable;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+
+/**
+ * Readable SDUD input, split into line-aligned {@link SdudChunk}s. Chunk boundaries
+ * depend only on the input bytes and the target size, so an import checkpoint taken
+ * against one read of a source holds for the next.
+ */
+public interface SdudSource extends Closeable {
+
+    default Flux<SdudChunk> read(int targetBytes, IntSupplier nextIndex) {
+        return read(targetBytes, nextIndex, index -> false);
+    }
+
+    // Chunk indexes are drawn from nextIndex so several sources can share one numbering;
+    // chunks whose index is done are numbered but not emitted, and their bytes are never loaded
+    Flux<SdudChunk> read(int targetBytes, IntSupplier nextIndex, IntPredicate done);
+
+    // Bytes on disk (compressed if the input is), the unit chunks report progress in
+    long inputSize();
+}
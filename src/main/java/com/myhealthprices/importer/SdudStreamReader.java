@@ -0,0 +1,227 @@
+package com.myhealthprices.importer;
+
+import com.github.luben.zstd.ZstdInputStream;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reader for gzip- or zstd-compressed SDUD files, detected by their magic bytes.
+ * The file is decompressed as a stream on its own thread and cut into line-aligned
+ * heap chunks as the parse workers ask for them, so decompression overlaps parsing
+ * and only the chunks in flight are ever held in memory.
+ *
+ * A stream cannot seek, so resuming a checkpointed import still decompresses the input
+ * up to its last chunk; chunks already done are cut in one reused buffer and dropped
+ * without being handed to the parsers.
+ */
+public class SdudStreamReader implements SdudSource {
+
+    private static final int READ_BUFFER = 256 * 1024;
+    private static final int MAX_HEADER = 64 * 1024;
+
+    private final int source;
+    private final long size;
+    private final CountingInputStream compressed;
+    private final InputStream in;
+    private final SdudColumns columns;
+    private final Scheduler scheduler;
+
+    // Decompressed bytes read past the last cut, and where the next chunk starts
+    private byte[] carry = new byte[0];
+    private long offset;
+    private long consumedAtLastCut;
+    // Buffer of the last skipped chunk, so skipping done chunks allocates nothing
+    private byte[] spare;
+
+    private SdudStreamReader(Path path, int source, Scheduler scheduler) throws IOException {
+        this.source = source;
+        this.scheduler = scheduler;
+        this.size = Files.size(path);
+        this.compressed = new CountingInputStream(Files.newInputStream(path));
+        try {
+            this.in = decompress(new BufferedInputStream(compressed, READ_BUFFER));
+            byte[] header = readHeader(in);
+            this.offset = header.length;
+            this.columns = SdudFileReader.header(ByteBuffer.wrap(header));
+        } catch (IOException | RuntimeException e) {
+            compressed.close();
+            throw e;
+        }
+    }
+
+    public static SdudStreamReader open(Path path, int source, Scheduler scheduler) throws IOException {
+        return new SdudStreamReader(path, source, scheduler);
+    }
+
+    public static boolean isCompressed(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return Compression.of(in.readNBytes(4)) != Compression.NONE;
+        }
+    }
+
+    public SdudColumns columns() {
+        return columns;
+    }
+
+    @Override
+    public long inputSize() {
+        return size;
+    }
+
+    // Single-use: the stream is consumed as chunks are emitted
+    @Override
+    public Flux<SdudChunk> read(int targetBytes, IntSupplier nextIndex, IntPredicate done) {
+        return Flux.<SdudChunk>generate(sink -> {
+            try {
+                SdudChunk chunk = next(targetBytes, nextIndex, done);
+                if (chunk == null)
+                    sink.complete();
+                else
+                    sink.next(chunk);
+            } catch (IOException e) {
+                sink.error(e);
+            }
+        }).subscribeOn(scheduler);
+    }
+
+    // Fills a chunk buffer and cuts it after its last '\n'; the tail is carried into the next chunk.
+    // Boundaries depend on the limit, never on the size of a reused buffer
+    private SdudChunk next(int targetBytes, IntSupplier nextIndex, IntPredicate done) throws IOException {
+        while (true) {
+            int limit = Math.max(targetBytes, carry.length + 1);
+            byte[] buffer = spare != null && spare.length >= limit ? spare : new byte[limit];
+            spare = null;
+            System.arraycopy(carry, 0, buffer, 0, carry.length);
+            int length = carry.length + in.readNBytes(buffer, carry.length, limit - carry.length);
+            if (length == 0)
+                return null;
+            int cut = lastLineEnd(buffer, length);
+            // A line longer than the chunk: keep reading until it ends
+            while (cut == 0 && length == limit) {
+                limit *= 2;
+                if (buffer.length < limit)
+                    buffer = Arrays.copyOf(buffer, limit);
+                length += in.readNBytes(buffer, length, limit - length);
+                cut = lastLineEnd(buffer, length);
+            }
+            boolean endOfInput = length < limit;
+            if (endOfInput)
+                cut = length;
+            carry = Arrays.copyOfRange(buffer, cut, length);
+
+            long consumed = compressed.count();
+            long inputLength = consumed - consumedAtLastCut;
+            consumedAtLastCut = consumed;
+            long start = offset;
+            offset += cut;
+            int index = nextIndex.getAsInt();
+            if (done.test(index)) {
+                spare = buffer;
+                continue;
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, cut);
+            return new SdudChunk(source, index, start, start + cut, inputLength, columns, () -> bytes, true);
+        }
+    }
+
+    private static int lastLineEnd(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n')
+                return i + 1;
+        }
+        return 0;
+    }
+
+    private static byte[] readHeader(InputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) {
+            header.write(b);
+            if (b == '\n')
+                break;
+            if (header.size() > MAX_HEADER)
+                throw new IOException("No header line in the first " + MAX_HEADER + " bytes");
+        }
+        return header.toByteArray();
+    }
+
+    private static InputStream decompress(BufferedInputStream in) throws IOException {
+        in.mark(4);
+        byte[] magic = in.readNBytes(4);
+        in.reset();
+        return switch (Compression.of(magic)) {
+            case GZIP -> new BufferedInputStream(new GZIPInputStream(in, READ_BUFFER), READ_BUFFER);
+            case ZSTD -> new BufferedInputStream(new ZstdInputStream(in), READ_BUFFER);
+            case NONE -> in;
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private enum Compression {
+        NONE,
+        GZIP,
+        ZSTD;
+
+        static Compression of(byte[] magic) {
+            if (magic.length >= 2 && magic[0] == (byte) 0x1F && magic[1] == (byte) 0x8B)
+                return GZIP;
+            if (magic.length >= 4 && magic[0] == (byte) 0x28 && magic[1] == (byte) 0xB5
+                    && magic[2] == (byte) 0x2F && magic[3] == (byte) 0xFD)
+                return ZSTD;
+            return NONE;
+        }
+    }
+
+    // Compressed bytes consumed so far, for progress against the size on disk
+    private static final class CountingInputStream extends FilterInputStream {
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long count() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0)
+                count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
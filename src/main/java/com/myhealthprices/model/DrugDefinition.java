@@ -9,7 +9,7 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.Instant;
 
 @Data
-@Document(collection = "drug_definitions")
+@Document(collection = "#{@dataVersions.collection('drug_definitions')}")
 public class DrugDefinition {
     @Id
     private String id;
@@ -0,0 +1,5 @@
+package com.myhealthprices.model;
+
+// Response of GET /api/v2/drugs/{ndc}/summary
+public record DrugOverview(DrugDefinition definition, DrugSummary summary) {
+}
@@ -8,7 +8,7 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.Instant;
 
 @Data
-@Document(collection = "drug_prices")
+@Document(collection = "#{@dataVersions.collection('drug_prices')}")
 @CompoundIndex(def = "{'ndc': 1, 'state': 1}", unique = true)
 public class DrugPrice {
     @Id
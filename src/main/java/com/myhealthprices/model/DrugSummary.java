@@ -1,5 +1,7 @@
 package com.myhealthprices.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.myhealthprices.sketch.TDigest;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
@@ -8,7 +10,7 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.Instant;
 
 @Data
-@Document(collection = "drug_summaries")
+@Document(collection = "#{@dataVersions.collection('drug_summaries')}")
 public class DrugSummary {
     @Id
     private String id;
@@ -22,5 +24,23 @@ public class DrugSummary {
     private Double maxPrice;
     private Integer totalStates;
 
+    // Percentiles over every state's quarterly prices, read from priceSketch
+    private Double medianPrice;
+    private Double p10Price;
+    private Double p90Price;
+    // Serialized TDigest of those prices, so wider groupings can merge them; not served
+    @JsonIgnore
+    private byte[] priceSketch;
+
     private Instant lastUpdated = Instant.now();
+
+    public DrugSummary withSketch(TDigest sketch) {
+        if (sketch.count() == 0)
+            return this;
+        medianPrice = sketch.quantile(0.5);
+        p10Price = sketch.quantile(0.1);
+        p90Price = sketch.quantile(0.9);
+        priceSketch = sketch.toBytes();
+        return this;
+    }
 }
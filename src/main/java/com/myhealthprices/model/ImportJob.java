@@ -0,0 +1,71 @@
+package com.myhealthprices.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// A full or single-quarter import run in the background, with the checkpoint it resumes from
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Document(collection = "import_jobs")
+public class ImportJob {
+    // Shared by every job; a partial unique index on it allows one RUNNING job at a time
+    public static final String LOCK = "import";
+
+    @Id
+    private String id;
+
+    private Kind kind;
+    private Integer year;
+    private Integer quarter;
+    private Status status;
+    private Phase phase;
+    private String error;
+
+    @JsonIgnore
+    private String lock = LOCK;
+    // Instance running the job and its last sign of life; a stale heartbeat means it died
+    private String owner;
+    private Instant heartbeatAt;
+    private int attempts;
+
+    // The checkpoint only applies to the same file split the same way
+    private String file;
+    private long fileSize;
+    private Instant fileModified;
+    private int chunkBytes;
+    @JsonIgnore
+    private List<Integer> completedChunks = new ArrayList<>();
+    private long bytesStaged;
+    private long rowsStaged;
+    // Progress at the start of the current attempt, for its throughput
+    private long bytesAtStart;
+    private long rowsAtStart;
+
+    private Instant createdAt = Instant.now();
+    private Instant startedAt;
+    private Instant finishedAt;
+
+    public enum Kind {
+        FULL,
+        QUARTER
+    }
+
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+
+    public enum Phase {
+        STAGING,
+        BUILDING
+    }
+}
@@ -0,0 +1,31 @@
+package com.myhealthprices.model;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// An import job plus progress derived from its checkpoint. Rates cover the current attempt;
+// the ETA covers staging only, since the build after it reports no progress.
+public record ImportJobStatus(
+        @JsonUnwrapped ImportJob job,
+        double percentStaged,
+        long rowsPerSecond,
+        Long etaSeconds) {
+
+    public static ImportJobStatus of(ImportJob job, Instant now) {
+        double percent = job.getFileSize() > 0 ? Math.min(100.0, 100.0 * job.getBytesStaged() / job.getFileSize()) : 0;
+        if (job.getPhase() == ImportJob.Phase.BUILDING)
+            percent = 100.0;
+        long rowsPerSecond = 0;
+        Long eta = null;
+        if (job.getStatus() == ImportJob.Status.RUNNING && job.getStartedAt() != null) {
+            double seconds = Math.max(1, Duration.between(job.getStartedAt(), now).toMillis()) / 1000.0;
+            rowsPerSecond = Math.round((job.getRowsStaged() - job.getRowsAtStart()) / seconds);
+            double bytesPerSecond = (job.getBytesStaged() - job.getBytesAtStart()) / seconds;
+            if (job.getPhase() == ImportJob.Phase.STAGING && bytesPerSecond > 0)
+                eta = Math.round((job.getFileSize() - job.getBytesStaged()) / bytesPerSecond);
+        }
+        return new ImportJobStatus(job, percent, rowsPerSecond, eta);
+    }
+}
@@ -0,0 +1,65 @@
+package com.myhealthprices.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Document(collection = "#{@dataVersions.collection('leaderboards')}")
+public class Leaderboard {
+    // e.g. "expensive", "cheap:state:CA", "expensive:manufacturer:Pfizer"
+    @Id
+    private String id;
+
+    private String kind;
+    private String scope;
+    private String key;
+    private List<Entry> entries;
+
+    private Instant lastUpdated = Instant.now();
+
+    public static String id(String kind, String scope, String key) {
+        return scope == null ? kind : kind + ":" + scope + ":" + key;
+    }
+
+    // Same fields as the enriched summaries served before; state boards rank by the state's price
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Entry {
+        private String ndc;
+        private String name;
+        private String manufacturer;
+        private String state;
+        private Double price;
+        private Double averagePrice;
+        private Double minPrice;
+        private Double maxPrice;
+        private Integer totalStates;
+
+        // Falls back to a generic name and zero prices when the NDC has no definition
+        public static Entry of(DrugSummary summary, DrugDefinition def) {
+            Entry e = new Entry();
+            e.setNdc(summary.getNdc());
+            e.setAveragePrice(summary.getAveragePrice());
+            e.setMinPrice(summary.getMinPrice());
+            e.setMaxPrice(summary.getMaxPrice());
+            e.setTotalStates(summary.getTotalStates());
+            if (def != null) {
+                e.setName(def.getName());
+                e.setManufacturer(def.getManufacturer() != null ? def.getManufacturer() : "Unknown");
+            } else {
+                e.setName("Medication " + summary.getNdc());
+                e.setManufacturer("Unknown");
+                e.setAveragePrice(summary.getAveragePrice() != null ? summary.getAveragePrice() : 0.0);
+                e.setMinPrice(summary.getMinPrice() != null ? summary.getMinPrice() : 0.0);
+                e.setMaxPrice(summary.getMaxPrice() != null ? summary.getMaxPrice() : 0.0);
+                e.setTotalStates(summary.getTotalStates() != null ? summary.getTotalStates() : 0);
+            }
+            return e;
+        }
+    }
+}
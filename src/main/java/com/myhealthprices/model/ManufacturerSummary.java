@@ -0,0 +1,40 @@
+package com.myhealthprices.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+
+// One document per manufacturer, keyed by its name; drugs are ranked cheapest first by average price
+@Data
+@Document(collection = "#{@dataVersions.collection('manufacturer_summaries')}")
+public class ManufacturerSummary {
+    @Id
+    @JsonIgnore
+    private String id;
+
+    private String manufacturer;
+    private List<String> labelers;
+    private Integer totalDrugs;
+    private Integer pricedDrugs;
+
+    // Average of the drugs' average prices; min and max across their state prices
+    private Double averagePrice;
+    private Double minPrice;
+    private Double maxPrice;
+
+    // Over every quarterly state price of every drug, from the drugs' merged sketches
+    private Double medianPrice;
+    private Double p10Price;
+    private Double p90Price;
+
+    // Left out of reads that only want the aggregates
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Leaderboard.Entry> drugs;
+
+    private Instant lastUpdated = Instant.now();
+}
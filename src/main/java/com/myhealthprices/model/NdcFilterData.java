@@ -0,0 +1,23 @@
+package com.myhealthprices.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+// Serialized Bloom filter over the NDCs of one data version
+@Data
+@Document(collection = "#{@dataVersions.collection('ndc_filters')}")
+public class NdcFilterData {
+    public static final String ID = "ndc";
+
+    @Id
+    private String id = ID;
+
+    private long count;
+    private int hashes;
+    private byte[] bits;
+
+    private Instant lastUpdated = Instant.now();
+}
@@ -0,0 +1,76 @@
+package com.myhealthprices.model;
+
+import com.myhealthprices.sketch.TDigest;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Quarterly price series of one NDC, one document per NDC keyed by the NDC itself, so a
+ * multi-year trend for every state is a single {@code _id} read. Each state's series is
+ * packed as parallel arrays, oldest quarter first.
+ */
+@Data
+@Document(collection = "#{@dataVersions.collection('price_history')}")
+public class PriceHistory {
+    @Id
+    private String id;
+
+    private String ndc;
+    private List<Series> series = new ArrayList<>();
+
+    private Instant lastUpdated = Instant.now();
+
+    public static int period(int year, int quarter) {
+        return year * 10 + quarter;
+    }
+
+    /**
+     * Adds or replaces the price for one quarter, keeping states and periods in order.
+     */
+    public PriceHistory record(String state, int year, int quarter, double price) {
+        int s = 0;
+        while (s < series.size() && series.get(s).getState().compareTo(state) < 0)
+            s++;
+        if (s == series.size() || !series.get(s).getState().equals(state)) {
+            Series created = new Series();
+            created.setState(state);
+            series.add(s, created);
+        }
+        series.get(s).record(period(year, quarter), price);
+        return this;
+    }
+
+    // Distribution of every quarterly price in every state
+    public TDigest sketch() {
+        TDigest sketch = new TDigest();
+        for (Series s : series)
+            for (Double price : s.getPrices())
+                sketch.add(price);
+        return sketch;
+    }
+
+    // Periods are year * 10 + quarter, e.g. 20241 for 2024 Q1
+    @Data
+    public static class Series {
+        private String state;
+        private List<Integer> periods = new ArrayList<>();
+        private List<Double> prices = new ArrayList<>();
+
+        void record(int period, double price) {
+            int i = periods.size();
+            while (i > 0 && periods.get(i - 1) > period)
+                i--;
+            if (i > 0 && periods.get(i - 1) == period) {
+                prices.set(i - 1, price);
+            } else {
+                periods.add(i, period);
+                prices.add(i, price);
+            }
+        }
+    }
+}
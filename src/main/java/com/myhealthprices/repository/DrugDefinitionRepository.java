@@ -5,11 +5,15 @@ import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 public interface DrugDefinitionRepository extends ReactiveMongoRepository<DrugDefinition, String> {
     Flux<DrugDefinition> findByNdcContaining(String ndc);
 
     Mono<DrugDefinition> findByNdc(String ndc);
 
+    Flux<DrugDefinition> findByNdcIn(Collection<String> ndcs);
+
     Flux<DrugDefinition> findByNameRegex(String regex);
 
     Flux<DrugDefinition> findByName(String name);
@@ -0,0 +1,7 @@
+package com.myhealthprices.repository;
+
+import com.myhealthprices.model.PriceHistory;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface PriceHistoryRepository extends ReactiveMongoRepository<PriceHistory, String> {
+}
@@ -0,0 +1,87 @@
+package com.myhealthprices.search;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter over 64-bit keys (packed NDCs) using double hashing of a SplitMix64 mix.
+ * Not thread-safe while being filled; read-only use after that is safe.
+ */
+public final class BloomFilter {
+
+    private final long[] bits;
+    private final int hashes;
+    private final long bitCount;
+    private long inserted;
+
+    private BloomFilter(long[] bits, int hashes, long inserted) {
+        this.bits = bits;
+        this.hashes = hashes;
+        this.bitCount = (long) bits.length * Long.SIZE;
+        this.inserted = inserted;
+    }
+
+    public static BloomFilter create(long expectedKeys, double fpp) {
+        long n = Math.max(1, expectedKeys);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        return new BloomFilter(new long[(int) Math.max(1, (m + 63) / 64)], k, 0);
+    }
+
+    public void put(long key) {
+        long h = mix(key);
+        long h1 = h >>> 32;
+        long h2 = (h & 0xffffffffL) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        inserted++;
+    }
+
+    public boolean mightContain(long key) {
+        long h = mix(key);
+        long h1 = h >>> 32;
+        long h2 = (h & 0xffffffffL) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    // Expected false-positive rate at the current fill: (1 - e^(-kn/m))^k
+    public double expectedFpp() {
+        return Math.pow(1 - Math.exp(-(double) hashes * inserted / bitCount), hashes);
+    }
+
+    public long bitCount() {
+        return bitCount;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    public long inserted() {
+        return inserted;
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(bits.length * Long.BYTES);
+        buf.asLongBuffer().put(bits);
+        return buf.array();
+    }
+
+    public static BloomFilter fromBytes(byte[] bytes, int hashes, long inserted) {
+        long[] bits = new long[bytes.length / Long.BYTES];
+        ByteBuffer.wrap(bytes).asLongBuffer().get(bits);
+        return new BloomFilter(bits, hashes, inserted);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
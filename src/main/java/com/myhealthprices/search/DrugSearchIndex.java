@@ -0,0 +1,167 @@
+package com.myhealthprices.search;
+
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.service.DataVersionChangedEvent;
+import com.myhealthprices.service.DataVersions;
+import com.myhealthprices.snapshot.DataSnapshot;
+import com.myhealthprices.snapshot.DataSnapshots;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * In-memory name/manufacturer search and NDC lookup over the active data version's
+ * definitions. A new data version rebuilds the base segment; in-place updates
+ * (incremental imports) only load definitions changed since the last build into a small
+ * delta segment, which shadows the base by NDC until it grows large enough to fold into
+ * a rebuild. The NDC index is rebuilt over base and delta on every refresh.
+ */
+@Component
+@Slf4j
+public class DrugSearchIndex implements MeterBinder {
+
+    private static final double MAX_DELTA_SHARE = 0.1;
+
+    private final BatchMongoTemplate mongoTemplate;
+    private final DataVersions dataVersions;
+    private final DataSnapshots snapshots;
+    // Refreshes are serialized so a slow rebuild cannot overwrite a newer one
+    private final Sinks.Many<Boolean> refreshes = Sinks.many().unicast().onBackpressureBuffer();
+
+    private volatile State state = State.EMPTY;
+
+    public DrugSearchIndex(BatchMongoTemplate mongoTemplate, DataVersions dataVersions, DataSnapshots snapshots) {
+        this.mongoTemplate = mongoTemplate;
+        this.dataVersions = dataVersions;
+        this.snapshots = snapshots;
+        refreshes.asFlux()
+                .concatMap(x -> refresh().onErrorResume(e -> {
+                    log.warn("Failed to refresh search index", e);
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    // Empty until the first build completes, so callers can fall back to querying Mongo
+    public Optional<List<DrugDefinition>> search(String query, int limit) {
+        State current = state;
+        if (current.base() == null)
+            return Optional.empty();
+        String normalized = SearchSegment.normalize(query);
+        List<SearchSegment.Hit> hits = new ArrayList<>(current.delta().search(normalized, limit));
+        Set<String> shadowed = current.deltaDocs().keySet();
+        for (SearchSegment.Hit hit : current.base().search(normalized, limit + Math.min(limit, shadowed.size()))) {
+            if (!shadowed.contains(hit.definition().getNdc()))
+                hits.add(hit);
+        }
+        hits.sort(SearchSegment.Hit.RANKING);
+        return Optional.of(hits.stream().limit(limit).map(SearchSegment.Hit::definition).toList());
+    }
+
+    // Empty until the first build completes
+    public Optional<NdcIndex> ndcs() {
+        return Optional.ofNullable(state.ndcs());
+    }
+
+    public int size() {
+        State current = state;
+        return current.base() == null ? 0 : current.base().size() + current.delta().size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("search.index.size", this, DrugSearchIndex::size)
+                .description("Definitions in the in-memory search index")
+                .register(registry);
+        Gauge.builder("search.index.delta.size", this, index -> index.state.deltaDocs().size())
+                .description("Definitions in the delta segment awaiting a base rebuild")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        requestRefresh();
+    }
+
+    @EventListener
+    public void onDataVersionChanged(DataVersionChangedEvent event) {
+        requestRefresh();
+    }
+
+    private void requestRefresh() {
+        refreshes.emitNext(Boolean.TRUE, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+    }
+
+    private Mono<Void> refresh() {
+        long version = dataVersions.active();
+        State current = state;
+        if (current.base() == null || current.version() != version)
+            return rebuild(version);
+        return mongoTemplate.find(Query.query(Criteria.where("lastUpdated").gt(current.watermark())),
+                        DrugDefinition.class, DataVersions.collection("drug_definitions", version))
+                .collectList()
+                .flatMap(changed -> {
+                    if (changed.isEmpty())
+                        return Mono.empty();
+                    Map<String, DrugDefinition> delta = new LinkedHashMap<>(current.deltaDocs());
+                    changed.forEach(def -> delta.put(def.getNdc(), def));
+                    if (delta.size() > current.base().size() * MAX_DELTA_SHARE)
+                        return rebuild(version);
+                    // Delta first: on duplicate NDCs the index keeps the first definition
+                    List<DrugDefinition> merged = new ArrayList<>(delta.values());
+                    merged.addAll(current.baseDocs());
+                    state = new State(version, current.base(), SearchSegment.build(List.copyOf(delta.values())),
+                            delta, current.baseDocs(), NdcIndex.build(merged), watermark(changed, current.watermark()));
+                    log.info("Search index delta now holds {} definitions", delta.size());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> rebuild(long version) {
+        long start = System.nanoTime();
+        // A mapped snapshot of the version saves reading every definition from Mongo
+        Optional<DataSnapshot> snapshot = snapshots.current().filter(s -> s.version() == version);
+        return (snapshot.isPresent()
+                        ? Mono.fromCallable(() -> snapshot.get().definitions())
+                        : mongoTemplate.findAll(DrugDefinition.class, DataVersions.collection("drug_definitions", version))
+                                .collectList())
+                .doOnNext(defs -> {
+                    state = new State(version, SearchSegment.build(defs), SearchSegment.build(List.of()), Map.of(),
+                            defs, NdcIndex.build(defs), watermark(defs, Instant.EPOCH));
+                    log.info("Built search index over {} definitions for data version {} in {} ms",
+                            defs.size(), version, (System.nanoTime() - start) / 1_000_000);
+                })
+                .then();
+    }
+
+    private static Instant watermark(List<DrugDefinition> defs, Instant floor) {
+        return defs.stream()
+                .map(DrugDefinition::getLastUpdated)
+                .filter(Objects::nonNull)
+                .reduce(floor, (a, b) -> a.isAfter(b) ? a : b);
+    }
+
+    private record State(long version, SearchSegment base, SearchSegment delta,
+            Map<String, DrugDefinition> deltaDocs, List<DrugDefinition> baseDocs, NdcIndex ndcs, Instant watermark) {
+        static final State EMPTY = new State(-1, null, null, Map.of(), List.of(), null, Instant.EPOCH);
+    }
+}
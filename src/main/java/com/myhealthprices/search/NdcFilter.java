@@ -0,0 +1,142 @@
+package com.myhealthprices.search;
+
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.model.NdcFilterData;
+import com.myhealthprices.service.DataVersionChangedEvent;
+import com.myhealthprices.service.DataVersions;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-data-version Bloom filter over every known NDC, stored with the version so each
+ * instance loads a few hundred KB instead of scanning definitions. The drug endpoints
+ * consult it before touching the cache or Mongo; an NDC it rules out is a 404.
+ */
+@Component
+@Slf4j
+public class NdcFilter implements MeterBinder {
+
+    private final BatchMongoTemplate mongoTemplate;
+    private final DataVersions dataVersions;
+    private final double fpp;
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    private volatile BloomFilter filter;
+
+    public NdcFilter(BatchMongoTemplate mongoTemplate, DataVersions dataVersions,
+            @Value("${myhealthprices.ndc-filter.fpp:0.01}") double fpp) {
+        this.mongoTemplate = mongoTemplate;
+        this.dataVersions = dataVersions;
+        this.fpp = fpp;
+    }
+
+    /**
+     * False only when none of the NDC's 11-digit forms can exist in the active version.
+     * Input that is not a full NDC, or a filter that is not loaded yet, always passes.
+     */
+    public boolean mightExist(String ndc) {
+        BloomFilter current = filter;
+        if (current == null)
+            return true;
+        List<String> forms = NdcIndex.normalize(ndc);
+        if (forms.isEmpty())
+            return true;
+        checks.increment();
+        for (String form : forms) {
+            if (current.mightContain(NdcIndex.pack(form)))
+                return true;
+        }
+        rejections.increment();
+        return false;
+    }
+
+    public Mono<Void> build(long version) {
+        Query query = new Query();
+        query.fields().include("ndc");
+        String definitions = DataVersions.collection("drug_definitions", version);
+        return mongoTemplate.estimatedCount(definitions)
+                .flatMap(expected -> mongoTemplate.find(query, Document.class, definitions)
+                        .reduce(BloomFilter.create(expected, fpp), (bloom, def) -> {
+                            long packed = NdcIndex.pack(def.getString("ndc"));
+                            if (packed >= 0)
+                                bloom.put(packed);
+                            return bloom;
+                        }))
+                .flatMap(bloom -> {
+                    NdcFilterData data = new NdcFilterData();
+                    data.setCount(bloom.inserted());
+                    data.setHashes(bloom.hashes());
+                    data.setBits(bloom.toBytes());
+                    log.info("Built NDC filter over {} NDCs for data version {} ({} KB, expected fpp {})",
+                            bloom.inserted(), version, bloom.bitCount() / 8 / 1024, bloom.expectedFpp());
+                    return mongoTemplate.save(data, DataVersions.collection("ndc_filters", version));
+                })
+                .then();
+    }
+
+    public Map<String, Object> stats() {
+        BloomFilter current = filter;
+        return Map.of(
+                "loaded", current != null,
+                "ndcs", current != null ? current.inserted() : 0L,
+                "bits", current != null ? current.bitCount() : 0L,
+                "hashes", current != null ? current.hashes() : 0,
+                "expectedFpp", current != null ? current.expectedFpp() : 0.0,
+                "checks", checks.sum(),
+                "rejections", rejections.sum());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("ndc.filter.checks", checks, LongAdder::sum)
+                .description("NDC lookups tested against the Bloom filter")
+                .register(registry);
+        FunctionCounter.builder("ndc.filter.rejections", rejections, LongAdder::sum)
+                .description("NDC lookups answered 404 by the Bloom filter")
+                .register(registry);
+        Gauge.builder("ndc.filter.ndcs", this, f -> f.filter != null ? f.filter.inserted() : 0)
+                .register(registry);
+        Gauge.builder("ndc.filter.expected.fpp", this, f -> f.filter != null ? f.filter.expectedFpp() : 0)
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        reload();
+    }
+
+    @EventListener
+    public void onDataVersionChanged(DataVersionChangedEvent event) {
+        reload();
+    }
+
+    private void reload() {
+        long version = dataVersions.active();
+        mongoTemplate.findById(NdcFilterData.ID, NdcFilterData.class, DataVersions.collection("ndc_filters", version))
+                .map(data -> Optional.of(BloomFilter.fromBytes(data.getBits(), data.getHashes(), data.getCount())))
+                // No filter for this version (e.g. built before filters existed): let everything through
+                .defaultIfEmpty(Optional.empty())
+                .subscribe(bloom -> {
+                    if (version != dataVersions.active())
+                        return;
+                    filter = bloom.orElse(null);
+                    log.info("NDC filter {} for data version {}", bloom.isPresent() ? "loaded" : "absent", version);
+                }, e -> log.warn("Failed to load NDC filter for data version {}", version, e));
+    }
+}
@@ -0,0 +1,142 @@
+package com.myhealthprices.search;
+
+import com.myhealthprices.model.DrugDefinition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * NDCs packed as 11-digit numbers in a sorted long array. Exact lookups and digit-prefix
+ * queries (labeler = first 5 digits, labeler+product = first 9) are binary searches over
+ * the packed range. 10-digit NDCs are normalized to the 11-digit 5-4-2 form: hyphenated
+ * input is padded per segment, bare 10-digit input is tried in all three layouts.
+ */
+public final class NdcIndex {
+
+    private static final int DIGITS = 11;
+    private static final long[] POW10 = new long[DIGITS + 1];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i <= DIGITS; i++)
+            POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private final long[] keys;
+    private final DrugDefinition[] defs;
+
+    private NdcIndex(long[] keys, DrugDefinition[] defs) {
+        this.keys = keys;
+        this.defs = defs;
+    }
+
+    // Definitions whose NDC is not 11 digits are left out; on duplicates the first wins
+    public static NdcIndex build(Collection<DrugDefinition> definitions) {
+        List<DrugDefinition> valid = new ArrayList<>(definitions.size());
+        for (DrugDefinition def : definitions) {
+            if (pack(def.getNdc()) >= 0)
+                valid.add(def);
+        }
+        long[] packed = new long[valid.size()];
+        Integer[] order = new Integer[valid.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = pack(valid.get(i).getNdc());
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> packed[a] != packed[b] ? Long.compare(packed[a], packed[b]) : Integer.compare(a, b));
+        long[] keys = new long[packed.length];
+        DrugDefinition[] defs = new DrugDefinition[packed.length];
+        int n = 0;
+        for (int i : order) {
+            if (n > 0 && keys[n - 1] == packed[i])
+                continue;
+            keys[n] = packed[i];
+            defs[n++] = valid.get(i);
+        }
+        return new NdcIndex(Arrays.copyOf(keys, n), Arrays.copyOf(defs, n));
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public Optional<DrugDefinition> exact(String ndc) {
+        for (String candidate : normalize(ndc)) {
+            int i = Arrays.binarySearch(keys, pack(candidate));
+            if (i >= 0)
+                return Optional.of(defs[i]);
+        }
+        return Optional.empty();
+    }
+
+    // Digits only; up to 11 of them are read as a prefix of the 11-digit form
+    public List<DrugDefinition> prefix(String digits, int limit) {
+        if (digits.isEmpty() || digits.length() > DIGITS || !isDigits(digits))
+            return List.of();
+        int free = DIGITS - digits.length();
+        long lo = Long.parseLong(digits) * POW10[free];
+        long hi = lo + POW10[free];
+        List<DrugDefinition> out = new ArrayList<>(Math.min(limit, 16));
+        for (int i = lowerBound(lo); i < keys.length && keys[i] < hi && out.size() < limit; i++)
+            out.add(defs[i]);
+        return out;
+    }
+
+    /**
+     * Candidate 11-digit forms of an NDC as entered: itself if 11 digits, segment-padded if
+     * hyphenated (4-4-2, 5-3-2 or 5-4-1), or every 10-to-11 layout for 10 bare digits.
+     */
+    public static List<String> normalize(String ndc) {
+        if (ndc == null)
+            return List.of();
+        String trimmed = ndc.trim();
+        String[] parts = trimmed.split("-");
+        if (parts.length == 3) {
+            String padded = leftPad(parts[0], 5) + leftPad(parts[1], 4) + leftPad(parts[2], 2);
+            return padded.length() == DIGITS && isDigits(padded) ? List.of(padded) : List.of();
+        }
+        if (!isDigits(trimmed))
+            return List.of();
+        if (trimmed.length() == DIGITS)
+            return List.of(trimmed);
+        if (trimmed.length() == DIGITS - 1) {
+            Set<String> forms = new LinkedHashSet<>();
+            forms.add("0" + trimmed);                                          // 4-4-2
+            forms.add(trimmed.substring(0, 5) + "0" + trimmed.substring(5));   // 5-3-2
+            forms.add(trimmed.substring(0, 9) + "0" + trimmed.substring(9));   // 5-4-1
+            return List.copyOf(forms);
+        }
+        return List.of();
+    }
+
+    static long pack(String ndc) {
+        if (ndc == null || ndc.length() != DIGITS || !isDigits(ndc))
+            return -1;
+        return Long.parseLong(ndc);
+    }
+
+    private int lowerBound(long key) {
+        int i = Arrays.binarySearch(keys, key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private static String leftPad(String s, int width) {
+        return s.length() >= width ? s : "0".repeat(width - s.length()) + s;
+    }
+
+    private static boolean isDigits(String s) {
+        if (s.isEmpty())
+            return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,259 @@
+package com.myhealthprices.search;
+
+import com.myhealthprices.model.DrugDefinition;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable search structure over a set of definitions: trigram postings for names and
+ * manufacturers (substring and typo-tolerant matching) plus a sorted token table for
+ * prefix matching on short queries. Text is normalized to lower-case ASCII letters and
+ * digits separated by single spaces.
+ */
+final class SearchSegment {
+
+    // Share of the query's trigrams a document must contain to be a candidate
+    private static final double MIN_OVERLAP = 0.5;
+    private static final double MANUFACTURER_WEIGHT = 0.8;
+    private static final int[] NONE = new int[0];
+
+    private final DrugDefinition[] docs;
+    private final String[] names;
+    private final Map<Integer, int[]> namePostings;
+    private final Map<Integer, int[]> manufacturerPostings;
+    private final String[] tokens;
+    private final int[][] tokenDocs;
+
+    private SearchSegment(DrugDefinition[] docs, String[] names, Map<Integer, int[]> namePostings,
+            Map<Integer, int[]> manufacturerPostings, String[] tokens, int[][] tokenDocs) {
+        this.docs = docs;
+        this.names = names;
+        this.namePostings = namePostings;
+        this.manufacturerPostings = manufacturerPostings;
+        this.tokens = tokens;
+        this.tokenDocs = tokenDocs;
+    }
+
+    static SearchSegment build(List<DrugDefinition> definitions) {
+        DrugDefinition[] docs = definitions.toArray(DrugDefinition[]::new);
+        String[] names = new String[docs.length];
+        Map<Integer, IntList> namePostings = new HashMap<>();
+        Map<Integer, IntList> manufacturerPostings = new HashMap<>();
+        Map<String, IntList> tokenPostings = new HashMap<>();
+        for (int id = 0; id < docs.length; id++) {
+            names[id] = normalize(docs[id].getName());
+            String manufacturer = normalize(docs[id].getManufacturer());
+            for (int gram : trigrams(names[id]))
+                namePostings.computeIfAbsent(gram, g -> new IntList()).add(id);
+            for (int gram : trigrams(manufacturer))
+                manufacturerPostings.computeIfAbsent(gram, g -> new IntList()).add(id);
+            for (String token : tokens(names[id] + " " + manufacturer)) {
+                IntList ids = tokenPostings.computeIfAbsent(token, t -> new IntList());
+                if (ids.size == 0 || ids.last() != id)
+                    ids.add(id);
+            }
+        }
+        String[] tokens = tokenPostings.keySet().toArray(String[]::new);
+        Arrays.sort(tokens);
+        int[][] tokenDocs = new int[tokens.length][];
+        for (int i = 0; i < tokens.length; i++)
+            tokenDocs[i] = tokenPostings.get(tokens[i]).toArray();
+        return new SearchSegment(docs, names, freeze(namePostings), freeze(manufacturerPostings), tokens, tokenDocs);
+    }
+
+    int size() {
+        return docs.length;
+    }
+
+    // Scores only the documents the postings touch, so a keystroke costs its postings, not the catalogue
+    List<Hit> search(String normalizedQuery, int limit) {
+        if (normalizedQuery.isEmpty() || docs.length == 0)
+            return List.of();
+        Set<Integer> queryGrams = trigrams(normalizedQuery);
+        boolean fuzzy = normalizedQuery.length() >= 3 && !queryGrams.isEmpty();
+        // Autocomplete: every token that starts with the last query word
+        String[] words = normalizedQuery.split(" ");
+        String last = words[words.length - 1];
+        int from = lowerBound(last);
+        int to = from;
+        while (to < tokens.length && tokens[to].startsWith(last))
+            to++;
+
+        long touched = 0;
+        if (fuzzy)
+            touched += postings(namePostings, queryGrams) + postings(manufacturerPostings, queryGrams);
+        for (int t = from; t < to; t++)
+            touched += tokenDocs[t].length;
+        if (touched == 0)
+            return List.of();
+        Candidates candidates = new Candidates((int) Math.min(touched, docs.length));
+        if (fuzzy) {
+            for (int gram : queryGrams) {
+                for (int id : namePostings.getOrDefault(gram, NONE))
+                    candidates.nameHits[candidates.slot(id)]++;
+                for (int id : manufacturerPostings.getOrDefault(gram, NONE))
+                    candidates.manufacturerHits[candidates.slot(id)]++;
+            }
+        }
+        for (int t = from; t < to; t++) {
+            for (int id : tokenDocs[t])
+                candidates.prefix[candidates.slot(id)] += 0.25;
+        }
+
+        int needed = (int) Math.ceil(queryGrams.size() * MIN_OVERLAP);
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < candidates.size; i++) {
+            double score = candidates.prefix[i];
+            double gramHits = Math.max(candidates.nameHits[i], MANUFACTURER_WEIGHT * candidates.manufacturerHits[i]);
+            if (fuzzy && gramHits >= needed)
+                score += gramHits / queryGrams.size();
+            if (score <= 0)
+                continue;
+            int id = candidates.ids[i];
+            if (names[id].startsWith(normalizedQuery))
+                score += 1.0;
+            else if (names[id].contains(normalizedQuery))
+                score += 0.5;
+            hits.add(new Hit(docs[id], names[id], score));
+        }
+        hits.sort(Hit.RANKING);
+        return hits.size() > limit ? hits.subList(0, limit) : hits;
+    }
+
+    static String normalize(String text) {
+        if (text == null)
+            return "";
+        String stripped = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(stripped.length());
+        boolean space = true;
+        for (int i = 0; i < stripped.length(); i++) {
+            char c = Character.toLowerCase(stripped.charAt(i));
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                sb.append(c);
+                space = false;
+            } else if (!space && Character.getType(c) != Character.NON_SPACING_MARK) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int end = sb.length();
+        if (end > 0 && sb.charAt(end - 1) == ' ')
+            sb.setLength(end - 1);
+        return sb.toString();
+    }
+
+    // Word-padded trigrams, so "ator" matches the start of "atorvastatin" more strongly
+    private static Set<Integer> trigrams(String normalized) {
+        Set<Integer> grams = new LinkedHashSet<>();
+        if (normalized.isEmpty())
+            return grams;
+        String padded = " " + normalized + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++)
+            grams.add(padded.charAt(i) << 16 | padded.charAt(i + 1) << 8 | padded.charAt(i + 2));
+        return grams;
+    }
+
+    private static String[] tokens(String normalized) {
+        return normalized.isBlank() ? new String[0] : normalized.trim().split(" ");
+    }
+
+    private static long postings(Map<Integer, int[]> postings, Set<Integer> grams) {
+        long total = 0;
+        for (int gram : grams)
+            total += postings.getOrDefault(gram, NONE).length;
+        return total;
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = tokens.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tokens[mid].compareTo(key) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private static Map<Integer, int[]> freeze(Map<Integer, IntList> postings) {
+        Map<Integer, int[]> frozen = new HashMap<>(postings.size() * 2);
+        postings.forEach((gram, ids) -> frozen.put(gram, ids.toArray()));
+        return frozen;
+    }
+
+    record Hit(DrugDefinition definition, String normalizedName, double score) {
+        // Best score first, then shorter (closer) names, then alphabetical for stable output
+        static final Comparator<Hit> RANKING = Comparator.comparingDouble(Hit::score).reversed()
+                .thenComparingInt(hit -> hit.normalizedName().length())
+                .thenComparing(Hit::normalizedName);
+    }
+
+    // Per-query accumulators for the touched documents, indexed densely through an open-addressing table
+    private static final class Candidates {
+        private final int[] keys;
+        private final int[] positions;
+        private final int mask;
+        final int[] ids;
+        final int[] nameHits;
+        final int[] manufacturerHits;
+        final double[] prefix;
+        int size;
+
+        Candidates(int capacity) {
+            int table = Integer.highestOneBit(Math.max(2, capacity)) * 4;
+            keys = new int[table];
+            positions = new int[table];
+            mask = table - 1;
+            ids = new int[capacity];
+            nameHits = new int[capacity];
+            manufacturerHits = new int[capacity];
+            prefix = new double[capacity];
+        }
+
+        // Dense position of a document, added on first sight; keys hold id + 1 so 0 marks a free slot
+        int slot(int id) {
+            int h = (id * 0x9E3779B9) >>> 7 & mask;
+            while (true) {
+                int key = keys[h];
+                if (key == id + 1)
+                    return positions[h];
+                if (key == 0) {
+                    keys[h] = id + 1;
+                    positions[h] = size;
+                    ids[size] = id;
+                    return size++;
+                }
+                h = (h + 1) & mask;
+            }
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int last() {
+            return values[size - 1];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
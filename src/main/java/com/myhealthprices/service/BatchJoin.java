@@ -0,0 +1,55 @@
+package com.myhealthprices.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Joins a stream against a keyed lookup in windows: each window of left rows costs one
+ * lookup call (typically a single {@code $in} query) instead of one query per row.
+ * Output keeps the order of the left stream.
+ */
+public final class BatchJoin {
+
+    public static final int DEFAULT_WINDOW = 500;
+
+    private BatchJoin() {
+    }
+
+    /**
+     * @param lookup  resolves a set of keys; keys it leaves out are passed to {@code combine} as null
+     * @param combine builds the output row from a left row and its match, or null when there is none
+     */
+    public static <L, K, R, O> Flux<O> join(Flux<L> left, Function<L, K> key,
+            Function<Set<K>, Mono<Map<K, R>>> lookup, BiFunction<L, R, O> combine, int window) {
+        return left.buffer(window)
+                .concatMap(rows -> {
+                    Set<K> keys = new LinkedHashSet<>();
+                    for (L row : rows) {
+                        K k = key.apply(row);
+                        if (k != null)
+                            keys.add(k);
+                    }
+                    return lookup.apply(keys)
+                            .defaultIfEmpty(Map.of())
+                            .flatMapIterable(matches -> rows.stream()
+                                    .map(row -> {
+                                        K k = key.apply(row);
+                                        return combine.apply(row, k != null ? matches.get(k) : null);
+                                    })
+                                    .filter(Objects::nonNull)
+                                    .toList());
+                });
+    }
+
+    public static <L, K, R, O> Flux<O> join(Flux<L> left, Function<L, K> key,
+            Function<Set<K>, Mono<Map<K, R>>> lookup, BiFunction<L, R, O> combine) {
+        return join(left, key, lookup, combine, DEFAULT_WINDOW);
+    }
+}
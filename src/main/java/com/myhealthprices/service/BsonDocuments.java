@@ -0,0 +1,110 @@
+package com.myhealthprices.service;
+
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugPrice;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.MedicaidDrugUtilization;
+import com.myhealthprices.model.PriceHistory;
+import org.bson.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Hand-written encoders for the bulk-write path. Field names mirror the entity
+ * mappings (including the short @Field names on raw rows) so documents written here
+ * read back through the repositories unchanged. Nulls are omitted, as Spring Data does.
+ */
+public final class BsonDocuments {
+
+    private BsonDocuments() {
+    }
+
+    public static Document of(MedicaidDrugUtilization u) {
+        Document d = new Document();
+        put(d, "_id", u.getId());
+        put(d, "ut", u.getUtilizationType());
+        put(d, "st", u.getState());
+        put(d, "ndc", u.getNdc());
+        put(d, "lc", u.getLabelerCode());
+        put(d, "pc", u.getProductCode());
+        put(d, "ps", u.getPackageSize());
+        put(d, "y", u.getYear());
+        put(d, "q", u.getQuarter());
+        put(d, "su", u.getSuppressionUsed());
+        put(d, "pn", u.getProductName());
+        put(d, "ur", u.getUnitsReimbursed());
+        put(d, "nop", u.getNumberOfPrescriptions());
+        put(d, "tar", u.getTotalAmountReimbursed());
+        put(d, "mar", u.getMedicaidAmountReimbursed());
+        put(d, "nmar", u.getNonMedicaidAmountReimbursed());
+        put(d, "pricePerUnit", u.getPricePerUnit());
+        return d;
+    }
+
+    public static Document of(DrugDefinition def) {
+        Document d = new Document();
+        put(d, "_id", def.getId());
+        put(d, "ndc", def.getNdc());
+        put(d, "name", def.getName());
+        put(d, "manufacturer", def.getManufacturer());
+        put(d, "genericName", def.getGenericName());
+        put(d, "labeler", def.getLabeler());
+        put(d, "strength", def.getStrength());
+        put(d, "dosageForm", def.getDosageForm());
+        put(d, "packageSize", def.getPackageSize());
+        put(d, "lastUpdated", def.getLastUpdated());
+        return d;
+    }
+
+    public static Document of(DrugPrice price) {
+        Document d = new Document();
+        put(d, "_id", price.getId());
+        put(d, "ndc", price.getNdc());
+        put(d, "state", price.getState());
+        put(d, "price", price.getPrice());
+        put(d, "year", price.getYear());
+        put(d, "quarter", price.getQuarter());
+        put(d, "lastUpdated", price.getLastUpdated());
+        return d;
+    }
+
+    public static Document of(DrugSummary summary) {
+        Document d = new Document();
+        put(d, "_id", summary.getId());
+        put(d, "ndc", summary.getNdc());
+        put(d, "averagePrice", summary.getAveragePrice());
+        put(d, "minPrice", summary.getMinPrice());
+        put(d, "maxPrice", summary.getMaxPrice());
+        put(d, "totalStates", summary.getTotalStates());
+        put(d, "medianPrice", summary.getMedianPrice());
+        put(d, "p10Price", summary.getP10Price());
+        put(d, "p90Price", summary.getP90Price());
+        put(d, "priceSketch", summary.getPriceSketch());
+        put(d, "lastUpdated", summary.getLastUpdated());
+        return d;
+    }
+
+    public static Document of(PriceHistory history) {
+        Document d = new Document();
+        put(d, "_id", history.getId());
+        put(d, "ndc", history.getNdc());
+        List<Document> series = new ArrayList<>(history.getSeries().size());
+        for (PriceHistory.Series s : history.getSeries()) {
+            series.add(new Document("state", s.getState())
+                    .append("periods", s.getPeriods())
+                    .append("prices", s.getPrices()));
+        }
+        d.put("series", series);
+        put(d, "lastUpdated", history.getLastUpdated());
+        return d;
+    }
+
+    private static void put(Document d, String key, Object value) {
+        if (value == null)
+            return;
+        d.put(key, value instanceof Instant instant ? Date.from(instant) : value);
+    }
+}
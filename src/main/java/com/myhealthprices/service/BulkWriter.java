@@ -0,0 +1,102 @@
+package com.myhealthprices.service;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.config.ImportProperties;
+import com.myhealthprices.importer.ImportThrottle;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Bulk-load path for import and optimize: unordered insertMany of pre-encoded documents
+ * with the import write concern, bypassing the repositories' per-entity save. Only a
+ * chunk that fails falls back to per-document inserts; duplicate keys count as already
+ * written, which makes re-sending a chunk safe.
+ */
+@Component
+@Slf4j
+public class BulkWriter {
+
+    private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+
+    private final BatchMongoTemplate mongoTemplate;
+    private final ImportProperties importProperties;
+    private final ImportThrottle throttle;
+    private final WriteConcern writeConcern;
+
+    public BulkWriter(BatchMongoTemplate mongoTemplate, ImportProperties importProperties, ImportThrottle throttle) {
+        this.mongoTemplate = mongoTemplate;
+        this.importProperties = importProperties;
+        this.throttle = throttle;
+        this.writeConcern = WriteConcern.valueOf(importProperties.getWriteConcern());
+        if (this.writeConcern == null)
+            throw new IllegalArgumentException("Unknown write concern: " + importProperties.getWriteConcern());
+    }
+
+    public <T> Mono<Long> insertAll(String collection, Flux<T> entities, Function<T, Document> encoder) {
+        return entities.map(encoder)
+                .buffer(importProperties.getWriteBatchSize())
+                .flatMap(batch -> insert(collection, batch), Math.max(1, importProperties.getWriteWorkers()))
+                .reduce(0L, Long::sum);
+    }
+
+    // Each batch first waits out the throttle's pause, if queries are slow
+    public Mono<Long> insert(String collection, List<Document> docs) {
+        if (docs.isEmpty())
+            return Mono.just(0L);
+        return throttle.pace().then(mongoTemplate.getCollection(collection))
+                .map(c -> c.withWriteConcern(writeConcern))
+                .flatMap(c -> Mono.from(c.insertMany(docs, UNORDERED))
+                        .thenReturn((long) docs.size())
+                        .onErrorResume(e -> recover(c, docs, e)));
+    }
+
+    private Mono<Long> recover(MongoCollection<Document> collection, List<Document> docs, Throwable error) {
+        if (error instanceof MongoBulkWriteException bulk) {
+            // Unordered: everything not listed in the write errors is already in
+            List<BulkWriteError> failed = bulk.getWriteErrors().stream()
+                    .filter(e -> ErrorCategory.fromErrorCode(e.getCode()) != ErrorCategory.DUPLICATE_KEY)
+                    .toList();
+            if (failed.isEmpty())
+                return Mono.just((long) docs.size() - bulk.getWriteErrors().size());
+            log.warn("Bulk insert into {}: {} of {} documents failed, retrying them individually",
+                    collection.getNamespace().getCollectionName(), failed.size(), docs.size());
+            long ok = docs.size() - bulk.getWriteErrors().size();
+            return Flux.fromIterable(failed)
+                    .concatMap(e -> insertOne(collection, docs.get(e.getIndex())))
+                    .reduce(ok, Long::sum);
+        }
+        log.warn("Bulk insert into {} failed ({}), retrying {} documents individually",
+                collection.getNamespace().getCollectionName(), error.toString(), docs.size());
+        return Flux.fromIterable(docs)
+                .concatMap(doc -> insertOne(collection, doc))
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> insertOne(MongoCollection<Document> collection, Document doc) {
+        return Mono.from(collection.insertOne(doc))
+                .thenReturn(1L)
+                .retryWhen(Retry.backoff(importProperties.getWriteRetries(), Duration.ofMillis(100))
+                        .filter(e -> !isDuplicateKey(e)))
+                .onErrorResume(BulkWriter::isDuplicateKey, e -> Mono.just(0L));
+    }
+
+    private static boolean isDuplicateKey(Throwable e) {
+        return e instanceof MongoWriteException w
+                && w.getError().getCategory() == ErrorCategory.DUPLICATE_KEY;
+    }
+}
@@ -1,26 +1,50 @@
 package com.myhealthprices.service;
 
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.config.ImportProperties;
+import com.myhealthprices.engine.ColumnarPriceEngine;
+import com.myhealthprices.engine.PriceTables;
+import com.myhealthprices.importer.ImportCheckpoint;
+import com.myhealthprices.importer.ImportMetrics;
+import com.myhealthprices.importer.ImportPipeline;
+import com.myhealthprices.importer.ImportThrottle;
+import com.myhealthprices.importer.SdudChunk;
+import com.myhealthprices.importer.SdudColumns;
+import com.myhealthprices.importer.SdudInput;
+import com.myhealthprices.importer.SdudRow;
 import com.myhealthprices.model.*;
 import com.myhealthprices.repository.*;
+import com.myhealthprices.search.NdcFilter;
+import com.myhealthprices.snapshot.DataSnapshots;
+import com.mongodb.MongoCommandException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import org.bson.Document;
 import org.springframework.data.domain.Sort;
-import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
-
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
-import java.io.FileReader;
-import java.io.Reader;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
 
 @Service
 @RequiredArgsConstructor
@@ -31,97 +55,48 @@ public class DataImportService {
     private final DrugDefinitionRepository definitionRepo;
     private final DrugPriceRepository priceRepo;
     private final DrugSummaryRepository summaryRepo;
-    private final ReactiveMongoTemplate mongoTemplate;
+    private final BatchMongoTemplate mongoTemplate;
+    private final ImportProperties importProperties;
+    private final ImportPipeline importPipeline;
+    private final ImportMetrics importMetrics;
+    private final BulkWriter bulkWriter;
+    private final DataVersions dataVersions;
+    private final LeaderboardService leaderboards;
+    private final NdcFilter ndcFilter;
+    private final DataSnapshots snapshots;
+    private final LabelerRegistry labelers;
+    private final ManufacturerService manufacturers;
+    private final ImportThrottle throttle;
+    private final Scheduler batchScheduler;
+
+    private static final int INDEX_OPTIONS_CONFLICT = 85;
 
     protected String getManufacturerName(String labeler) {
-        if (labeler == null)
-            return "Unknown";
-        return switch (labeler) {
-            case "00002", "00777" -> "Eli Lilly and Company";
-            case "00007", "00029", "00173", "7" -> "GlaxoSmithKline";
-            case "00008", "00009", "00025", "00069", "00071", "00409", "59762", "13", "25", "69" -> "Pfizer";
-            case "00310", "00186", "186", "310" -> "AstraZeneca";
-            case "00013" -> "Pharmacia & Upjohn";
-            case "00024", "00039", "00068", "00088", "00091", "00955", "24", "39", "68", "88", "91" -> "Sanofi";
-            case "00026" -> "Bayer";
-            case "00032", "00456", "32", "456", "51" -> "AbbVie";
-            case "00037", "37" -> "Meda Pharmaceuticals";
-            case "00046", "46" -> "Wyeth";
-            case "00052", "52" -> "Organon";
-            case "00054", "54" -> "Hikma Pharmaceuticals";
-            case "00056", "56" -> "DuPont";
-            case "00065", "65" -> "Alcon";
-            case "00067", "00078", "00216", "00781", "00185", "51079", "61314", "66758", "67", "78", "216", "781",
-                    "185", "1167" ->
-                "Novartis / Sandoz";
-            case "00074", "74" -> "Abbott Laboratories";
-            case "00085", "85" -> "Merck & Co.";
-            case "00093", "00172", "00555", "50111", "93", "172", "555" -> "Teva Pharmaceuticals";
-            case "00169", "169" -> "Novo Nordisk";
-            case "00187", "187" -> "Bausch Health";
-            case "00228", "00472", "00591", "52544", "228" -> "Actavis (Teva)";
-            case "00245", "00832", "245" -> "Upsher-Smith";
-            case "00378", "378" -> "Mylan (Viatris)";
-            case "00406", "11695", "406" -> "Mallinckrodt";
-            case "00527", "527" -> "Lannett Company";
-            case "00603", "603" -> "Par Pharmaceutical";
-            case "00713", "713" -> "Cosette Pharmaceuticals";
-            case "00904", "904" -> "Major Pharmaceuticals";
-            case "00990", "990" -> "ICU Medical";
-            case "10019" -> "Baxter";
-            case "16714" -> "NorthStar Rx";
-            case "31722" -> "Camber Pharmaceuticals";
-            case "42291" -> "AvKARE";
-            case "43598", "55111" -> "Dr. Reddy's Laboratories";
-            case "50242", "4" -> "Genentech (Roche)";
-            case "50458", "57894" -> "Janssen (J&J)";
-            case "51672" -> "Taro Pharmaceuticals";
-            case "55513" -> "Amgen";
-            case "57664" -> "Sun Pharmaceutical";
-            case "60219", "65162", "69238" -> "Amneal Pharmaceuticals";
-            case "60300", "63739" -> "McKesson";
-            case "60505" -> "Apotex Corp";
-            case "61755" -> "Regeneron";
-            case "62175" -> "Krka";
-            case "62332", "68001" -> "Alembic Pharmaceuticals";
-            case "63323" -> "Fresenius Kabi";
-            case "64380", "68382" -> "Zydus Pharmaceuticals";
-            case "65862" -> "Aurobindo Pharma";
-            case "68462" -> "Glenmark Pharmaceuticals";
-            case "68682" -> "Oceanside Pharmaceuticals";
-            case "69097" -> "Cipla USA";
-            case "70114" -> "Coherus BioSciences";
-            case "70518" -> "RemedyRepack";
-            case "71336" -> "Alnylam";
-            case "76282" -> "Exelan Pharmaceuticals";
-            default -> "Labeler " + labeler;
-        };
+        return labelers.manufacturer(labeler);
     }
 
     public Mono<Void> importData() {
-        Path path = Paths.get("medicaid-sdud-2024.csv");
-        if (!path.toFile().exists()) {
-            log.warn("medicaid-sdud-2024.csv not found, skipping import.");
+        return importData(ImportCheckpoint.NONE);
+    }
+
+    // Resumable form used by import jobs: staging skips recorded chunks and is skipped entirely once complete
+    public Mono<Void> importData(ImportCheckpoint checkpoint) {
+        List<Path> inputs = inputFiles();
+        if (inputs.isEmpty()) {
+            log.warn("No SDUD input found, skipping import.");
             return Mono.empty();
         }
+        if (importProperties.getEngine() == ImportProperties.Engine.COLUMNAR) {
+            // Nothing to stage: the engine reads the CSV directly
+            return checkpoint.recordStaged().then(optimizeData());
+        }
 
-        return rawRepo.deleteAll()
-                .then(definitionRepo.deleteAll())
-                .then(priceRepo.deleteAll())
-                .then(summaryRepo.deleteAll())
-                .then(Mono.fromCallable(() -> {
-                    log.info("Opening CSV for streaming...");
-                    Reader reader = new FileReader(path.toFile());
-                    return new CSVParser(reader, CSVFormat.DEFAULT.withHeader());
-                }).flatMapMany(parser -> Flux.fromIterable((Iterable<CSVRecord>) parser))
-                        .map(this::mapRowToUtilization)
-                        .filter(item -> item != null)
-                        .buffer(500) // Smaller buffer to save memory
-                        .flatMap(batch -> rawRepo.saveAll((Iterable<MedicaidDrugUtilization>) batch), 2) // Lower
-                                                                                                         // concurrency
-                        .then())
-                .doOnSuccess(x -> log.info("Raw import completed. Starting optimization..."))
-                .flatMap(x -> optimizeData())
+        // Serving collections are untouched until optimizeData publishes the new version
+        return stage(inputs, (row, c) -> true, checkpoint)
+                .then(Mono.defer(() -> {
+                    log.info("Raw import completed. Starting optimization...");
+                    return optimizeData();
+                }))
                 .then(Mono.defer(() -> {
                     log.info("Optimization complete. Deleting raw data to free space...");
                     return rawRepo.deleteAll();
@@ -132,12 +107,203 @@ public class DataImportService {
                 });
     }
 
+    /**
+     * Incremental refresh for one (year, quarter) slice. Only the slice is staged; the
+     * affected (ndc, state) prices and NDC summaries are recomputed and $merge'd into
+     * the serving collections, which stay readable throughout. The quarter is also
+     * folded into each affected NDC's price history. A price row is only replaced by
+     * data from the same or a later quarter, so back-filling an older quarter cannot
+     * overwrite newer prices.
+     */
+    public Mono<Void> importQuarter(int year, int quarter) {
+        return importQuarter(year, quarter, ImportCheckpoint.NONE);
+    }
+
+    public Mono<Void> importQuarter(int year, int quarter, ImportCheckpoint checkpoint) {
+        List<Path> inputs = inputFiles();
+        if (inputs.isEmpty()) {
+            log.warn("No SDUD input found, skipping import.");
+            return Mono.empty();
+        }
+        Instant runStart = Instant.now();
+        labelers.refresh();
+
+        return ensurePriceKeyIndex()
+                .then(stage(inputs, (row, c) -> inQuarter(row, c, year, quarter), checkpoint))
+                // Counted on the primary: a lagging secondary could report nothing staged
+                .then(mongoTemplate.count(new Query(), MedicaidDrugUtilization.class))
+                .flatMap(staged -> {
+                    log.info("Staged {} rows for {} Q{}. Merging...", staged, year, quarter);
+                    if (staged == 0)
+                        return Mono.empty();
+                    return importMetrics.timeStage("merge-definitions", mergeDrugDefinitions())
+                            .then(importMetrics.timeStage("merge-prices", mergeDrugPrices(runStart)))
+                            .then(importMetrics.timeStage("merge-summaries", mergeDrugSummaries(runStart)))
+                            .then(importMetrics.timeStage("merge-history", mergePriceHistory(runStart)));
+                })
+                .then(Mono.defer(() -> {
+                    log.info("Incremental import of {} Q{} complete. Clearing staged rows...", year, quarter);
+                    return rawRepo.deleteAll();
+                }))
+                .then(Mono.defer(() -> importMetrics.timeStage("leaderboards",
+                        leaderboards.build(dataVersions.active()))))
+                .then(Mono.defer(() -> importMetrics.timeStage("manufacturers",
+                        manufacturers.build(dataVersions.active()))))
+                .then(Mono.defer(() -> importMetrics.timeStage("ndc-filter",
+                        ndcFilter.build(dataVersions.active()))))
+                // Tagged with the revision the touch is about to bump to
+                .then(Mono.defer(() -> writeSnapshot(dataVersions.active(), dataVersions.revision() + 1)))
+                .then(Mono.defer(dataVersions::touch))
+                .onErrorResume(e -> {
+                    log.error("Incremental import of {} Q{} failed", year, quarter, e);
+                    return Mono.error(e);
+                });
+    }
+
+    // Stages rows into the raw collection; a fresh (non-resumed) run clears it first
+    private Mono<Void> stage(List<Path> inputs, BiPredicate<SdudRow, SdudColumns> filter, ImportCheckpoint checkpoint) {
+        if (checkpoint.stagingDone())
+            return Mono.empty();
+        String staging = collectionName(MedicaidDrugUtilization.class);
+        return (checkpoint.resuming() ? Mono.<Void>empty() : rawRepo.deleteAll())
+                .then(Mono.using(
+                        () -> SdudInput.open(inputs, batchScheduler),
+                        // Rows are encoded on the parse workers; writers only ship BSON
+                        input -> importPipeline.run(input, filter, this::mapRowToDocument,
+                                batch -> bulkWriter.insert(staging, batch).then(), checkpoint),
+                        this::closeQuietly))
+                .then(Mono.defer(checkpoint::recordStaged));
+    }
+
+    // Configured inputs that exist; a missing year is skipped rather than failing the whole import
+    private List<Path> inputFiles() {
+        List<Path> inputs = new ArrayList<>();
+        for (String file : importProperties.inputFiles()) {
+            Path path = Paths.get(file);
+            if (Files.exists(path))
+                inputs.add(path);
+            else
+                log.warn("{} not found, skipping it.", path);
+        }
+        return inputs;
+    }
+
+    private static boolean inQuarter(SdudRow row, SdudColumns c, int year, int quarter) {
+        try {
+            return row.integer(c.year()) == year && row.integer(c.quarter()) == quarter;
+        } catch (RuntimeException e) {
+            // Let the mapper reject it so it shows up in the rejected count
+            return true;
+        }
+    }
+
+    // $merge on (ndc, state) requires a unique index on exactly those fields
+    private Mono<Void> ensurePriceKeyIndex() {
+        return mongoTemplate.indexOps(DrugPrice.class)
+                .ensureIndex(new Index().on("ndc", Sort.Direction.ASC).on("state", Sort.Direction.ASC).unique())
+                .onErrorResume(MongoCommandException.class, e -> {
+                    // Same keys under another name (e.g. created by Spring) is fine
+                    if (e.getErrorCode() == INDEX_OPTIONS_CONFLICT)
+                        return Mono.just("existing");
+                    return Mono.error(e);
+                })
+                .then();
+    }
+
+    private Mono<Void> mergeDrugDefinitions() {
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.group("ndc")
+                        .first("pn").as("name")
+                        .first("ndc").as("ndc")
+                        .first("lc").as("labeler")
+                        .first("ps").as("packageSize"))
+                .withOptions(Aggregation.newAggregationOptions()
+                        .allowDiskUse(true)
+                        .cursorBatchSize(importProperties.getWriteBatchSize())
+                        .build());
+
+        // _id is the NDC, so existing definitions surface as duplicate keys and are kept
+        return bulkWriter.insertAll(collectionName(DrugDefinition.class),
+                mongoTemplate.aggregate(agg, "medicaid_drug_utilization", DrugDefinition.class)
+                        .map(this::withManufacturer),
+                BsonDocuments::of)
+                .then();
+    }
+
+    private Mono<Void> mergeDrugPrices(Instant runStart) {
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("ur").gt(0.0)),
+                Aggregation.project()
+                        .and("ndc").as("ndc")
+                        .and("st").as("state")
+                        .and("y").as("year")
+                        .and("q").as("quarter")
+                        .and("tar").as("totalAmt")
+                        .and("ur").as("units"),
+                Aggregation.project("ndc", "state", "year", "quarter")
+                        .and(ArithmeticOperators.Divide.valueOf("totalAmt")
+                                .divideBy("units"))
+                        .as("price"),
+                Aggregation.sort(Sort.Direction.DESC, "year", "quarter"),
+                Aggregation.group("ndc", "state")
+                        .first("ndc").as("ndc")
+                        .first("state").as("state")
+                        .first("price").as("price")
+                        .first("year").as("year")
+                        .first("quarter").as("quarter"),
+                Aggregation.stage(new Document("$project", new Document("_id", 0)
+                        .append("ndc", 1).append("state", 1).append("price", 1)
+                        .append("year", 1).append("quarter", 1)
+                        .append("lastUpdated", new Document("$literal", Date.from(runStart))))),
+                Aggregation.stage(priceMergeStage(collectionName(DrugPrice.class))))
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+        return mongoTemplate.aggregate(agg, "medicaid_drug_utilization", Document.class).then();
+    }
+
+    static Document priceMergeStage(String into) {
+        Document newer = new Document("$gte", List.of(periodOf("$$new."), periodOf("$")));
+        Document keepNewer = new Document("$replaceWith", new Document("$cond", new Document("if", newer)
+                .append("then", new Document("$mergeObjects", List.of("$$ROOT", "$$new")))
+                .append("else", "$$ROOT")));
+        return new Document("$merge", new Document("into", into)
+                .append("on", List.of("ndc", "state"))
+                .append("whenMatched", List.of(keepNewer))
+                .append("whenNotMatched", "insert"));
+    }
+
+    private static Document periodOf(String prefix) {
+        return new Document("$add", List.of(
+                new Document("$multiply", List.of(prefix + "year", 10)), prefix + "quarter"));
+    }
+
+    // Recomputes only the NDCs touched by the slice, from their full set of state prices
+    private Mono<Void> mergeDrugSummaries(Instant runStart) {
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.stage(new Document("$group", new Document("_id", "$ndc"))),
+                Aggregation.stage(new Document("$lookup", new Document("from", collectionName(DrugPrice.class))
+                        .append("localField", "_id")
+                        .append("foreignField", "ndc")
+                        .append("as", "p"))),
+                Aggregation.stage(new Document("$match", new Document("p.0", new Document("$exists", true)))),
+                Aggregation.stage(new Document("$project", new Document("ndc", "$_id")
+                        .append("averagePrice", new Document("$avg", "$p.price"))
+                        .append("minPrice", new Document("$min", "$p.price"))
+                        .append("maxPrice", new Document("$max", "$p.price"))
+                        .append("totalStates", new Document("$size", "$p"))
+                        .append("lastUpdated", new Document("$literal", Date.from(runStart))))),
+                // Merged rather than replaced, so the percentiles stay until merge-history refreshes them
+                Aggregation.stage(new Document("$merge", new Document("into", collectionName(DrugSummary.class))
+                        .append("on", "_id")
+                        .append("whenMatched", "merge")
+                        .append("whenNotMatched", "insert"))))
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+        return mongoTemplate.aggregate(agg, "medicaid_drug_utilization", Document.class).then();
+    }
+
     public Mono<Void> clearAll() {
         return Mono.when(
                 mongoTemplate.dropCollection("medicaid_drug_utilization"),
-                mongoTemplate.dropCollection("drug_definitions"),
-                mongoTemplate.dropCollection("drug_prices"),
-                mongoTemplate.dropCollection("drug_summaries")).log("Clearing all data").then();
+                dataVersions.dropAll()).log("Clearing all data").then();
     }
 
     public Flux<DrugSummary> getSummaries() {
@@ -173,35 +339,59 @@ public class DataImportService {
                                 "summaries", tuple.getT4()));
     }
 
+    // Builds a new data version in shadow collections and switches to it once verified
     public Mono<Void> optimizeData() {
-        return Mono.when(
-                generateDrugDefinitions(),
-                generateDrugPrices().then(generateDrugSummaries()));
+        return Mono.fromRunnable(labelers::refresh).then(dataVersions.nextVersion()).flatMap(version -> {
+            log.info("Building data version {}...", version);
+            Mono<Void> build = importProperties.getEngine() == ImportProperties.Engine.COLUMNAR
+                    ? importMetrics.timeStage("columnar", buildColumnar(inputFiles(), version))
+                    : Mono.when(
+                            importMetrics.timeStage("definitions", generateDrugDefinitions(version)),
+                            Mono.when(
+                                    importMetrics.timeStage("prices", generateDrugPrices(version))
+                                            .then(importMetrics.timeStage("summaries", generateDrugSummaries(version))),
+                                    importMetrics.timeStage("history", generatePriceHistory(version)))
+                                    .then(Mono.defer(() -> importMetrics.timeStage("sketches", generateSketches(version)))));
+            return build.then(Mono.defer(() -> importMetrics.timeStage("leaderboards", leaderboards.build(version))))
+                    .then(Mono.defer(() -> importMetrics.timeStage("manufacturers", manufacturers.build(version))))
+                    .then(Mono.defer(() -> importMetrics.timeStage("ndc-filter", ndcFilter.build(version))))
+                    // Publishing keeps the revision, so the snapshot is written for the current one
+                    .then(Mono.defer(() -> writeSnapshot(version, dataVersions.revision())))
+                    .then(Mono.defer(() -> importMetrics.timeStage("publish", dataVersions.publish(version))))
+                    .onErrorResume(e -> dataVersions.discard(version).then(Mono.error(e)));
+        });
     }
 
-    private Mono<Void> generateDrugDefinitions() {
+    private Mono<Void> generateDrugDefinitions(long version) {
         Aggregation agg = Aggregation.newAggregation(
                 Aggregation.group("ndc")
                         .first("pn").as("name")
                         .first("ndc").as("ndc")
                         .first("lc").as("labeler")
                         .first("ps").as("packageSize"))
-                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+                .withOptions(Aggregation.newAggregationOptions()
+                        .allowDiskUse(true)
+                        .cursorBatchSize(importProperties.getWriteBatchSize())
+                        .build());
 
-        return definitionRepo.deleteAll().then(
-                mongoTemplate.aggregate(agg, "medicaid_drug_utilization", DrugDefinition.class)
-                        .collectList()
-                        .flatMap(defs -> {
-                            defs.forEach(d -> {
-                                if (d.getLabeler() != null) {
-                                    d.setManufacturer(getManufacturerName(d.getLabeler()));
-                                }
-                            });
-                            return definitionRepo.saveAll(defs).then();
-                        }));
-    }
-
-    private Mono<Void> generateDrugPrices() {
+        // Streams cursor batches straight into bounded insert batches; demand from the
+        // writers caps how many definitions are on the heap at once
+        return bulkWriter.insertAll(DataVersions.collection("drug_definitions", version),
+                        mongoTemplate.aggregate(agg, "medicaid_drug_utilization", DrugDefinition.class)
+                                .map(this::withManufacturer),
+                        BsonDocuments::of)
+                .doOnNext(count -> log.info("Generated {} drug definitions.", count))
+                .then();
+    }
+
+    private DrugDefinition withManufacturer(DrugDefinition d) {
+        if (d.getLabeler() != null) {
+            d.setManufacturer(getManufacturerName(d.getLabeler()));
+        }
+        return d;
+    }
+
+    private Mono<Void> generateDrugPrices(long version) {
         Aggregation agg = Aggregation.newAggregation(
                 // Filter out records with invalid units for calculations
                 Aggregation.match(Criteria.where("ur").gt(0.0)),
@@ -224,12 +414,116 @@ public class DataImportService {
                         .first("price").as("price")
                         .first("year").as("year")
                         .first("quarter").as("quarter"),
-                Aggregation.out("drug_prices"))
+                Aggregation.out(DataVersions.collection("drug_prices", version)))
                 .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
         return mongoTemplate.aggregate(agg, "medicaid_drug_utilization", DrugPrice.class).then();
     }
 
-    private Mono<Void> generateDrugSummaries() {
+    // One document per NDC holding every state's quarterly prices, oldest quarter first
+    private Mono<Void> generatePriceHistory(long version) {
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("ur").gt(0.0)),
+                Aggregation.stage(quarterTotals()),
+                Aggregation.stage(new Document("$sort", new Document("_id.ndc", 1).append("_id.state", 1)
+                        .append("_id.year", 1).append("_id.quarter", 1))),
+                Aggregation.stage(new Document("$group", new Document("_id",
+                        new Document("ndc", "$_id.ndc").append("state", "$_id.state"))
+                        .append("periods", new Document("$push", new Document("$add", List.of(
+                                new Document("$multiply", List.of("$_id.year", 10)), "$_id.quarter"))))
+                        .append("prices", new Document("$push", quarterPrice())))),
+                Aggregation.stage(new Document("$sort", new Document("_id.ndc", 1).append("_id.state", 1))),
+                Aggregation.stage(new Document("$group", new Document("_id", "$_id.ndc")
+                        .append("ndc", new Document("$first", "$_id.ndc"))
+                        .append("series", new Document("$push", new Document("state", "$_id.state")
+                                .append("periods", "$periods")
+                                .append("prices", "$prices"))))),
+                Aggregation.out(DataVersions.collection("price_history", version)))
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+        return mongoTemplate.aggregate(agg, "medicaid_drug_utilization", PriceHistory.class).then();
+    }
+
+    // A quarter's price is its total amount over its total units, across all rows of the quarter
+    private static Document quarterTotals() {
+        return new Document("$group", new Document("_id", new Document("ndc", "$ndc").append("state", "$st")
+                .append("year", "$y").append("quarter", "$q"))
+                .append("amount", new Document("$sum", "$tar"))
+                .append("units", new Document("$sum", "$ur")));
+    }
+
+    private static Document quarterPrice() {
+        return new Document("$divide", List.of("$amount", "$units"));
+    }
+
+    // Folds the staged quarter into the affected NDCs' series; other quarters are left as they are
+    private Mono<Void> mergePriceHistory(Instant runStart) {
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("ur").gt(0.0)),
+                Aggregation.stage(quarterTotals()),
+                Aggregation.stage(new Document("$group", new Document("_id", "$_id.ndc")
+                        .append("points", new Document("$push", new Document("state", "$_id.state")
+                                .append("year", "$_id.year")
+                                .append("quarter", "$_id.quarter")
+                                .append("price", quarterPrice()))))))
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+        String collection = collectionName(PriceHistory.class);
+        return BatchJoin.join(mongoTemplate.aggregate(agg, "medicaid_drug_utilization", Document.class),
+                        slice -> slice.getString("_id"),
+                        ndcs -> mongoTemplate.find(Query.query(Criteria.where("_id").in(ndcs)), PriceHistory.class)
+                                .collectMap(PriceHistory::getId),
+                        (slice, existing) -> mergeHistory(slice, existing, runStart))
+                .buffer(importProperties.getWriteBatchSize())
+                .concatMap(batch -> {
+                    ReactiveBulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+                    for (PriceHistory history : batch)
+                        ops.replaceOne(Query.query(Criteria.where("_id").is(history.getId())),
+                                BsonDocuments.of(history), FindAndReplaceOptions.options().upsert());
+                    return throttle.pace()
+                            .then(ops.execute())
+                            .then(writeSketches(collectionName(DrugSummary.class), batch));
+                })
+                .then();
+    }
+
+    // Percentile sketches come from the packed history, so the raw rows are not read again
+    private Mono<Void> generateSketches(long version) {
+        return mongoTemplate.find(new Query(), PriceHistory.class, DataVersions.collection("price_history", version))
+                .buffer(importProperties.getWriteBatchSize())
+                .concatMap(batch -> writeSketches(DataVersions.collection("drug_summaries", version), batch))
+                .then();
+    }
+
+    // Rebuilt from the whole series rather than merged in, so re-importing a quarter is not counted twice
+    private Mono<Void> writeSketches(String summaries, List<PriceHistory> batch) {
+        ReactiveBulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, summaries);
+        for (PriceHistory history : batch) {
+            DrugSummary sketched = new DrugSummary().withSketch(history.sketch());
+            ops.updateOne(Query.query(Criteria.where("_id").is(history.getId())), new Update()
+                    .set("medianPrice", sketched.getMedianPrice())
+                    .set("p10Price", sketched.getP10Price())
+                    .set("p90Price", sketched.getP90Price())
+                    .set("priceSketch", sketched.getPriceSketch()));
+        }
+        return throttle.pace().then(ops.execute()).then();
+    }
+
+    static PriceHistory mergeHistory(Document slice, PriceHistory existing, Instant runStart) {
+        PriceHistory history = existing;
+        if (history == null) {
+            history = new PriceHistory();
+            history.setId(slice.getString("_id"));
+            history.setNdc(slice.getString("_id"));
+        }
+        for (Document point : slice.getList("points", Document.class)) {
+            history.record(point.getString("state"),
+                    ((Number) point.get("year")).intValue(),
+                    ((Number) point.get("quarter")).intValue(),
+                    ((Number) point.get("price")).doubleValue());
+        }
+        history.setLastUpdated(runStart);
+        return history;
+    }
+
+    private Mono<Void> generateDrugSummaries(long version) {
         Aggregation agg = Aggregation.newAggregation(
                 Aggregation.group("ndc")
                         .first("ndc").as("ndc")
@@ -237,27 +531,112 @@ public class DataImportService {
                         .min("price").as("minPrice")
                         .max("price").as("maxPrice")
                         .count().as("totalStates"),
-                Aggregation.out("drug_summaries"))
+                Aggregation.out(DataVersions.collection("drug_summaries", version)))
                 .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
-        return mongoTemplate.aggregate(agg, "drug_prices", DrugSummary.class).then();
+        return mongoTemplate.aggregate(agg, DataVersions.collection("drug_prices", version), DrugSummary.class)
+                .then();
+    }
+
+    // Mongo stays the source of truth, so a snapshot that fails to write only costs read speed
+    private Mono<Void> writeSnapshot(long version, long revision) {
+        return importMetrics.timeStage("snapshot", snapshots.write(version, revision))
+                .onErrorResume(e -> {
+                    log.warn("Failed to write data snapshot for version {}", version, e);
+                    return Mono.empty();
+                });
     }
 
-    private MedicaidDrugUtilization mapRowToUtilization(CSVRecord row) {
+    private Mono<Void> buildColumnar(List<Path> inputs, long version) {
+        int workers = Math.max(1, importProperties.getParseWorkers());
+        return Mono.using(
+                () -> SdudInput.open(inputs, batchScheduler),
+                input -> Mono.fromRunnable(() -> {
+                            importMetrics.start();
+                            log.info("Loading {} into columnar engine...", inputs);
+                        })
+                        .thenMany(Flux.defer(() -> {
+                            AtomicInteger nextIndex = new AtomicInteger();
+                            return input.read(importProperties.getChunkBytes(), nextIndex::getAndIncrement);
+                        }))
+                        // Chunks parse in parallel; merging in file order keeps $first semantics
+                        .flatMapSequential(chunk -> Mono.fromCallable(() -> loadChunk(chunk))
+                                .subscribeOn(batchScheduler), workers)
+                        .reduce(new ColumnarPriceEngine(), (engine, part) -> {
+                            long start = System.nanoTime();
+                            engine.appendAll(part);
+                            importMetrics.recordWritten(part.rowCount(), System.nanoTime() - start, part.rowCount());
+                            return engine;
+                        })
+                        .doFinally(signal -> importMetrics.finish()),
+                this::closeQuietly)
+                .map(engine -> {
+                    log.info("Loaded {} rows for {} NDCs, computing prices...", engine.rowCount(), engine.ndcCount());
+                    return engine.compute();
+                })
+                .flatMap(tables -> writeTables(tables, version))
+                .onErrorResume(e -> {
+                    log.error("Columnar build failed", e);
+                    return Mono.error(e);
+                });
+    }
+
+    private Mono<Void> writeTables(PriceTables tables, long version) {
+        return bulkWriter.insertAll(DataVersions.collection("drug_definitions", version),
+                        Flux.fromStream(() -> tables.definitions(this::getManufacturerName)), BsonDocuments::of)
+                .then(bulkWriter.insertAll(DataVersions.collection("drug_prices", version),
+                        Flux.fromStream(tables::prices), BsonDocuments::of))
+                .then(bulkWriter.insertAll(DataVersions.collection("drug_summaries", version),
+                        Flux.fromStream(tables::summaries), BsonDocuments::of))
+                .then(bulkWriter.insertAll(DataVersions.collection("price_history", version),
+                        Flux.fromStream(tables::history), BsonDocuments::of))
+                .doOnSuccess(x -> log.info("Columnar build wrote {} definitions.", tables.ndcCount()))
+                .then();
+    }
+
+    private String collectionName(Class<?> type) {
+        return mongoTemplate.getCollectionName(type);
+    }
+
+    private ColumnarPriceEngine loadChunk(SdudChunk chunk) throws IOException {
+        SdudColumns c = chunk.columns();
+        ColumnarPriceEngine part = new ColumnarPriceEngine();
+        int visited = chunk.forEachRow(row -> {
+            try {
+                part.append(row.text(c.ndc()), row.text(c.state()),
+                        row.integer(c.year()), row.integer(c.quarter()),
+                        row.text(c.productName()), row.text(c.labelerCode()), row.text(c.packageSize()),
+                        row.number(c.unitsReimbursed()), row.number(c.totalAmountReimbursed()));
+            } catch (Exception e) {
+                // Same policy as mapRowToUtilization: malformed rows are skipped
+            }
+        });
+        importMetrics.recordParsed(part.rowCount(), visited - part.rowCount());
+        return part;
+    }
+
+    Document mapRowToDocument(SdudRow row, SdudColumns columns) {
+        MedicaidDrugUtilization u = mapRowToUtilization(row, columns);
+        return u != null ? BsonDocuments.of(u) : null;
+    }
+
+    MedicaidDrugUtilization mapRowToUtilization(SdudRow row, SdudColumns c) {
         try {
             MedicaidDrugUtilization u = new MedicaidDrugUtilization();
-            u.setUtilizationType(row.get("Utilization Type"));
-            u.setState(row.get("State"));
-            u.setNdc(row.get("NDC"));
-            u.setLabelerCode(row.get("Labeler Code"));
-            u.setProductCode(row.get("Product Code"));
-            u.setPackageSize(row.get("Package Size"));
-            u.setYear(Integer.parseInt(row.get("Year")));
-            u.setQuarter(Integer.parseInt(row.get("Quarter")));
-            u.setSuppressionUsed(Boolean.parseBoolean(row.get("Suppression Used")));
-            u.setProductName(row.get("Product Name"));
-
-            u.setUnitsReimbursed(parseDouble(row.get("Units Reimbursed")));
-            u.setTotalAmountReimbursed(parseDouble(row.get("Total Amount Reimbursed")));
+            // Keyed by input file and byte offset, so re-staging a row after a resume is a duplicate key, not a second copy
+            u.setId(row.source() + ":" + row.offset());
+            u.setUtilizationType(row.text(c.utilizationType()));
+            u.setState(row.text(c.state()));
+            u.setNdc(row.text(c.ndc()));
+            u.setLabelerCode(row.text(c.labelerCode()));
+            u.setProductCode(row.text(c.productCode()));
+            u.setPackageSize(row.text(c.packageSize()));
+            u.setYear(row.integer(c.year()));
+            u.setQuarter(row.integer(c.quarter()));
+            u.setSuppressionUsed(row.bool(c.suppressionUsed()));
+            u.setProductName(row.text(c.productName()));
+
+            u.setUnitsReimbursed(row.number(c.unitsReimbursed()));
+            u.setTotalAmountReimbursed(row.number(c.totalAmountReimbursed()));
 
             if (u.getUnitsReimbursed() > 0) {
                 u.setPricePerUnit(u.getTotalAmountReimbursed() / u.getUnitsReimbursed());
@@ -270,9 +649,11 @@ public class DataImportService {
         }
     }
 
-    private Double parseDouble(String val) {
-        if (val == null || val.isEmpty())
-            return 0.0;
-        return Double.parseDouble(val);
+    private void closeQuietly(SdudInput input) {
+        try {
+            input.close();
+        } catch (IOException e) {
+            log.warn("Failed to close {}", importProperties.inputFiles(), e);
+        }
     }
 }
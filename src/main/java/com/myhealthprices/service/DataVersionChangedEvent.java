@@ -0,0 +1,9 @@
+package com.myhealthprices.service;
+
+/**
+ * Published when the serving data changes: a switch to another data version (local
+ * publish/rollback or one picked up from another instance), or an in-place incremental
+ * update of the active version, in which case both versions are equal.
+ */
+public record DataVersionChangedEvent(long previousVersion, long version) {
+}
@@ -0,0 +1,250 @@
+package com.myhealthprices.service;
+
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugPrice;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.Leaderboard;
+import com.myhealthprices.model.ManufacturerSummary;
+import com.myhealthprices.model.NdcFilterData;
+import com.myhealthprices.model.PriceHistory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Blue/green pointer for the serving collections. Rebuilds write into shadow collections
+ * ({@code drug_prices_v42}); {@link #publish} indexes and verifies them, then flips the
+ * pointer in {@code data_versions}. Entities resolve their collection through
+ * {@link #collection(String)}, so the switch is a single document update and the
+ * previous version stays on disk for {@link #rollback}. Version 0 is the unversioned
+ * collections from before the first versioned build.
+ */
+@Component
+@Slf4j
+public class DataVersions implements MeterBinder {
+
+    static final String COLLECTION = "data_versions";
+    private static final String POINTER = "active";
+    private static final String SEQUENCE = "sequence";
+    // Ordered, so publish checks and index builds run in a stable order
+    private static final Map<String, Class<?>> VERSIONED = new LinkedHashMap<>();
+
+    static {
+        VERSIONED.put("drug_definitions", DrugDefinition.class);
+        VERSIONED.put("drug_prices", DrugPrice.class);
+        VERSIONED.put("drug_summaries", DrugSummary.class);
+        VERSIONED.put("leaderboards", Leaderboard.class);
+        VERSIONED.put("ndc_filters", NdcFilterData.class);
+        VERSIONED.put("price_history", PriceHistory.class);
+        VERSIONED.put("manufacturer_summaries", ManufacturerSummary.class);
+    }
+
+    private static final Pattern VERSIONED_NAME =
+            Pattern.compile("^(drug_definitions|drug_prices|drug_summaries|leaderboards|ndc_filters|price_history|manufacturer_summaries)(?:_v(\\d+))?$");
+
+    private final BatchMongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher events;
+    private final Duration pollInterval;
+
+    private volatile long active;
+    private volatile long previous;
+    private volatile long revision;
+    private Disposable poller;
+
+    public DataVersions(BatchMongoTemplate mongoTemplate, ApplicationEventPublisher events,
+            @Value("${myhealthprices.data-version.poll-interval:30s}") Duration pollInterval) {
+        this.mongoTemplate = mongoTemplate;
+        this.events = events;
+        this.pollInterval = pollInterval;
+    }
+
+    public static String collection(String base, long version) {
+        return version == 0 ? base : base + "_v" + version;
+    }
+
+    // Referenced from the entities' @Document SpEL; evaluated on every repository call
+    public String collection(String base) {
+        return collection(base, active);
+    }
+
+    public long active() {
+        return active;
+    }
+
+    public long previous() {
+        return previous;
+    }
+
+    public long revision() {
+        return revision;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("data.version.active", this, DataVersions::active).register(registry);
+        Gauge.builder("data.version.revision", this, DataVersions::revision).register(registry);
+    }
+
+    // Other instances pick up a switch made elsewhere on the next poll
+    @EventListener(ApplicationReadyEvent.class)
+    public void startPolling() {
+        poller = Flux.interval(Duration.ZERO, pollInterval)
+                .concatMap(tick -> refresh().onErrorResume(e -> {
+                    log.warn("Failed to read active data version", e);
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stopPolling() {
+        if (poller != null)
+            poller.dispose();
+    }
+
+    public Mono<Void> refresh() {
+        return mongoTemplate.findById(POINTER, Document.class, COLLECTION)
+                .doOnNext(this::apply)
+                .then();
+    }
+
+    // Records an in-place change to the active version (incremental import) so every instance invalidates.
+    // A pointer created here gets version 0, so the next publish still finds the version it expects
+    public Mono<Void> touch() {
+        return mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(POINTER)),
+                new Update().inc("revision", 1L).setOnInsert("version", 0L).setOnInsert("previous", 0L),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                Document.class, COLLECTION)
+                .doOnNext(this::apply)
+                .then();
+    }
+
+    public Mono<Long> nextVersion() {
+        return mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(SEQUENCE)),
+                new Update().inc("value", 1L),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                Document.class, COLLECTION)
+                .map(seq -> longOf(seq, "value"));
+    }
+
+    /**
+     * Indexes the shadow collections of {@code version}, checks none of them is empty, and
+     * makes it the active version. Every older version other than the one it replaces is
+     * dropped, including one a rollback moved away from.
+     */
+    public Mono<Void> publish(long version) {
+        return Flux.fromIterable(VERSIONED.entrySet())
+                .concatMap(e -> ensureIndexes(collection(e.getKey(), version), e.getValue())
+                        .then(mongoTemplate.estimatedCount(collection(e.getKey(), version)))
+                        .filter(count -> count == 0)
+                        .flatMap(count -> Mono.error(new IllegalStateException(
+                                collection(e.getKey(), version) + " is empty, not publishing version " + version))))
+                .then(Mono.defer(() -> switchTo(version, active)))
+                .then(Mono.defer(this::retire));
+    }
+
+    public Mono<Void> rollback() {
+        return Mono.defer(() -> {
+            if (previous == active)
+                return Mono.error(new IllegalStateException("No previous data version to roll back to"));
+            return switchTo(previous, active);
+        });
+    }
+
+    // Removes a shadow build that failed before publishing
+    public Mono<Void> discard(long version) {
+        return Flux.fromIterable(VERSIONED.keySet())
+                .concatMap(base -> mongoTemplate.dropCollection(collection(base, version)))
+                .then();
+    }
+
+    // For clearAll: drops every version, including the active one, and the pointer
+    public Mono<Void> dropAll() {
+        return mongoTemplate.getCollectionNames()
+                .filter(name -> VERSIONED_NAME.matcher(name).matches() || name.equals(COLLECTION))
+                .concatMap(mongoTemplate::dropCollection)
+                .then(Mono.fromRunnable(() -> apply(new Document())));
+    }
+
+    private Mono<Void> switchTo(long version, long expected) {
+        // Conditional on the version we saw, so two concurrent publishes cannot both win.
+        // Version 0 also matches a pointer without one, e.g. written by touch() before it set it
+        Criteria seen = Criteria.where("_id").is(POINTER).and("version");
+        Query current = Query.query(expected == 0 ? seen.in(0L, null) : seen.is(expected));
+        Update update = new Update().set("version", version).set("previous", expected)
+                .set("switchedAt", Instant.now());
+        return mongoTemplate.findAndModify(current, update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, COLLECTION)
+                .onErrorMap(DuplicateKeyException.class, e -> new IllegalStateException(
+                        "Data version changed concurrently, expected " + expected, e))
+                .doOnNext(pointer -> {
+                    apply(pointer);
+                    log.info("Switched data version {} -> {}", expected, version);
+                })
+                .then();
+    }
+
+    // Newer versions are shadow builds that may still be in progress
+    private Mono<Void> retire() {
+        long keep = active;
+        long rollbackTarget = previous;
+        return mongoTemplate.getCollectionNames()
+                .filter(name -> {
+                    Matcher m = VERSIONED_NAME.matcher(name);
+                    if (!m.matches())
+                        return false;
+                    long version = m.group(2) == null ? 0 : Long.parseLong(m.group(2));
+                    return version < keep && version != rollbackTarget;
+                })
+                .concatMap(name -> mongoTemplate.dropCollection(name)
+                        .doOnSuccess(x -> log.info("Dropped retired collection {}", name)))
+                .then();
+    }
+
+    private Mono<Void> ensureIndexes(String collection, Class<?> type) {
+        IndexResolver resolver = IndexResolver.create(mongoTemplate.getConverter().getMappingContext());
+        return Flux.fromIterable(resolver.resolveIndexFor(type))
+                .concatMap(index -> mongoTemplate.indexOps(collection).ensureIndex(index))
+                .then();
+    }
+
+    private synchronized void apply(Document pointer) {
+        long was = active;
+        long wasRevision = revision;
+        active = longOf(pointer, "version");
+        previous = longOf(pointer, "previous");
+        revision = longOf(pointer, "revision");
+        if (was != active || wasRevision != revision)
+            events.publishEvent(new DataVersionChangedEvent(was, active));
+    }
+
+    private static long longOf(Document doc, String key) {
+        Number n = doc.get(key, Number.class);
+        return n == null ? 0 : n.longValue();
+    }
+}
@@ -0,0 +1,346 @@
+package com.myhealthprices.service;
+
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.config.ImportProperties;
+import com.myhealthprices.importer.ImportCheckpoint;
+import com.myhealthprices.importer.SdudChunk;
+import com.myhealthprices.model.ImportJob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Runs imports in the background as jobs recorded in {@code import_jobs}. Staging is
+ * checkpointed per chunk, so an attempt that dies (restart, cancel, failure) resumes
+ * from the chunks already written instead of re-reading the file. One job runs at a
+ * time across instances; the running instance keeps a heartbeat on the job, and a job
+ * whose heartbeat goes stale is claimed and resumed by whichever instance sees it first.
+ */
+@Service
+@Slf4j
+public class ImportJobService {
+
+    private static final int RECENT_JOBS = 20;
+
+    private final BatchMongoTemplate mongoTemplate;
+    private final DataImportService importService;
+    private final ImportProperties importProperties;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Map<String, Disposable> running = new ConcurrentHashMap<>();
+    private Disposable resumer;
+
+    public ImportJobService(BatchMongoTemplate mongoTemplate, DataImportService importService,
+            ImportProperties importProperties) {
+        this.mongoTemplate = mongoTemplate;
+        this.importService = importService;
+        this.importProperties = importProperties;
+    }
+
+    public Mono<ImportJob> submit(ImportJob.Kind kind, Integer year, Integer quarter) {
+        return Mono.defer(() -> {
+            Instant now = Instant.now();
+            ImportJob job = describeFile(new ImportJob());
+            job.setKind(kind);
+            job.setYear(year);
+            job.setQuarter(quarter);
+            job.setStatus(ImportJob.Status.RUNNING);
+            job.setPhase(ImportJob.Phase.STAGING);
+            job.setOwner(instanceId);
+            job.setHeartbeatAt(now);
+            job.setStartedAt(now);
+            job.setAttempts(1);
+            return ensureLockIndex()
+                    .then(mongoTemplate.insert(job))
+                    .onErrorMap(DuplicateKeyException.class, e -> new IllegalStateException(
+                            "Another import job is running (or interrupted and about to resume)", e))
+                    .doOnNext(saved -> start(saved, false));
+        });
+    }
+
+    public Mono<ImportJob> get(String id) {
+        return mongoTemplate.findById(id, ImportJob.class);
+    }
+
+    public Flux<ImportJob> recent() {
+        return mongoTemplate.find(new Query().with(Sort.by(Sort.Direction.DESC, "createdAt")).limit(RECENT_JOBS),
+                ImportJob.class);
+    }
+
+    // Stops the job wherever it runs: locally at once, on another instance at its next heartbeat
+    public Mono<ImportJob> cancel(String id) {
+        return mongoTemplate.findAndModify(
+                        Query.query(Criteria.where("_id").is(id).and("status").is(ImportJob.Status.RUNNING)),
+                        new Update().set("status", ImportJob.Status.CANCELLED).set("finishedAt", Instant.now()),
+                        FindAndModifyOptions.options().returnNew(true), ImportJob.class)
+                .doOnNext(job -> {
+                    Disposable local = running.get(id);
+                    if (local != null)
+                        local.dispose();
+                    log.info("Cancelled import job {}", id);
+                })
+                .switchIfEmpty(notIn(id, "running"));
+    }
+
+    // Restarts a failed or cancelled job from its checkpoint
+    public Mono<ImportJob> resume(String id) {
+        return claim(Criteria.where("_id").is(id)
+                        .and("status").in(ImportJob.Status.FAILED, ImportJob.Status.CANCELLED))
+                .switchIfEmpty(notIn(id, "failed or cancelled"));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startResuming() {
+        if (!importProperties.isResumeInterruptedJobs())
+            return;
+        resumer = Flux.interval(Duration.ZERO, heartbeatInterval())
+                .concatMap(tick -> claim(Criteria.where("status").is(ImportJob.Status.RUNNING)
+                                .and("heartbeatAt").lt(Instant.now().minus(importProperties.getJobStaleAfter())))
+                        .doOnNext(job -> log.info("Resuming interrupted import job {} (attempt {})",
+                                job.getId(), job.getAttempts()))
+                        .onErrorResume(e -> {
+                            log.warn("Failed to resume interrupted import jobs", e);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    // Running jobs stay RUNNING and are resumed once their heartbeat goes stale
+    @PreDestroy
+    public void stop() {
+        if (resumer != null)
+            resumer.dispose();
+        running.values().forEach(Disposable::dispose);
+    }
+
+    private Mono<ImportJob> claim(Criteria which) {
+        Instant now = Instant.now();
+        Update update = new Update()
+                .set("status", ImportJob.Status.RUNNING)
+                .set("owner", instanceId)
+                .set("heartbeatAt", now)
+                .set("startedAt", now)
+                .inc("attempts", 1)
+                .unset("error")
+                .unset("finishedAt");
+        // The previous state is needed to tell whether the checkpoint still holds
+        return ensureLockIndex()
+                .then(mongoTemplate.findAndModify(Query.query(which), update, ImportJob.class))
+                .onErrorMap(DuplicateKeyException.class,
+                        e -> new IllegalStateException("Another import job is running", e))
+                .flatMap(job -> {
+                    Instant previousStart = job.getStartedAt();
+                    job.setStatus(ImportJob.Status.RUNNING);
+                    job.setOwner(instanceId);
+                    job.setHeartbeatAt(now);
+                    job.setStartedAt(now);
+                    job.setAttempts(job.getAttempts() + 1);
+                    job.setError(null);
+                    job.setFinishedAt(null);
+                    return checkpointValid(job, previousStart).flatMap(valid -> {
+                        if (!valid) {
+                            log.info("Import job {}: file or staged rows changed since the last attempt, restarting",
+                                    job.getId());
+                            describeFile(job);
+                            job.setCompletedChunks(new ArrayList<>());
+                            job.setBytesStaged(0);
+                            job.setRowsStaged(0);
+                            job.setPhase(ImportJob.Phase.STAGING);
+                        }
+                        job.setBytesAtStart(job.getBytesStaged());
+                        job.setRowsAtStart(job.getRowsStaged());
+                        Update progress = new Update()
+                                .set("file", job.getFile())
+                                .set("fileSize", job.getFileSize())
+                                .set("fileModified", job.getFileModified())
+                                .set("chunkBytes", job.getChunkBytes())
+                                .set("completedChunks", job.getCompletedChunks())
+                                .set("bytesStaged", job.getBytesStaged())
+                                .set("rowsStaged", job.getRowsStaged())
+                                .set("phase", job.getPhase())
+                                .set("bytesAtStart", job.getBytesAtStart())
+                                .set("rowsAtStart", job.getRowsAtStart());
+                        return mongoTemplate.updateFirst(owned(job.getId()), progress, ImportJob.class)
+                                .thenReturn(job)
+                                .doOnNext(claimed -> start(claimed, valid));
+                    });
+                });
+    }
+
+    // Same file split the same way, and no other job has restaged the raw collection since
+    private Mono<Boolean> checkpointValid(ImportJob job, Instant previousStart) {
+        ImportJob current = describeFile(new ImportJob());
+        boolean sameFile = Objects.equals(job.getFile(), current.getFile())
+                && job.getFileSize() == current.getFileSize()
+                && Objects.equals(job.getFileModified(), current.getFileModified())
+                && job.getChunkBytes() == current.getChunkBytes();
+        if (!sameFile || previousStart == null)
+            return Mono.just(false);
+        return mongoTemplate.exists(Query.query(Criteria.where("_id").ne(job.getId())
+                        .and("startedAt").gt(previousStart)), ImportJob.class)
+                .map(newerJob -> !newerJob);
+    }
+
+    private void start(ImportJob job, boolean resuming) {
+        String id = job.getId();
+        JobCheckpoint checkpoint = new JobCheckpoint(id, resuming, new HashSet<>(job.getCompletedChunks()),
+                job.getPhase() == ImportJob.Phase.BUILDING);
+        Mono<Void> work = job.getKind() == ImportJob.Kind.QUARTER
+                ? importService.importQuarter(job.getYear(), job.getQuarter(), checkpoint)
+                : importService.importData(checkpoint);
+        log.info("Starting import job {} ({}{})", id, job.getKind(),
+                resuming ? ", resuming after " + job.getCompletedChunks().size() + " chunks" : "");
+
+        // Registered before subscribing so a job that ends at once cannot leave a stale entry
+        Disposable.Swap handle = Disposables.swap();
+        running.put(id, handle);
+        handle.update(Mono.firstWithSignal(work, lostOwnership(id))
+                .then(Mono.defer(() -> finish(id, ImportJob.Status.COMPLETED, null)))
+                .onErrorResume(e -> {
+                    if (e instanceof CancellationException) {
+                        log.info("Import job {} stopped: {}", id, e.getMessage());
+                        return Mono.empty();
+                    }
+                    log.error("Import job {} failed", id, e);
+                    return finish(id, ImportJob.Status.FAILED, e.toString());
+                })
+                .doFinally(signal -> running.remove(id, handle))
+                .subscribe());
+    }
+
+    // Errors once the job is no longer ours to run (cancelled, or claimed by another instance)
+    private Mono<Void> lostOwnership(String id) {
+        return Flux.interval(heartbeatInterval())
+                .concatMap(tick -> mongoTemplate.updateFirst(owned(id),
+                        new Update().set("heartbeatAt", Instant.now()), ImportJob.class))
+                .filter(result -> result.getMatchedCount() == 0)
+                .next()
+                .then(Mono.error(() -> new CancellationException("import job " + id + " is no longer running here")));
+    }
+
+    private Mono<Void> finish(String id, ImportJob.Status status, String error) {
+        Update update = new Update().set("status", status).set("finishedAt", Instant.now());
+        if (error != null)
+            update.set("error", error);
+        return mongoTemplate.updateFirst(owned(id), update, ImportJob.class)
+                .doOnNext(result -> {
+                    if (result.getModifiedCount() > 0)
+                        log.info("Import job {} {}", id, status);
+                })
+                .then();
+    }
+
+    private Query owned(String id) {
+        return Query.query(Criteria.where("_id").is(id)
+                .and("status").is(ImportJob.Status.RUNNING)
+                .and("owner").is(instanceId));
+    }
+
+    private Mono<Void> ensureLockIndex() {
+        return mongoTemplate.indexOps(ImportJob.class)
+                .ensureIndex(new Index().on("lock", Sort.Direction.ASC).unique().named("one_running_job")
+                        .partial(PartialIndexFilter.of(Criteria.where("status").is(ImportJob.Status.RUNNING))))
+                .then();
+    }
+
+    private <T> Mono<T> notIn(String id, String state) {
+        return get(id).flatMap(job -> Mono.error(new IllegalStateException(
+                "Import job " + id + " is " + job.getStatus() + ", not " + state)));
+    }
+
+    // Chunk numbering runs across the existing inputs, so the checkpoint covers them as a set
+    private ImportJob describeFile(ImportJob job) {
+        List<File> files = importProperties.inputFiles().stream()
+                .map(name -> Paths.get(name).toFile())
+                .filter(File::exists)
+                .toList();
+        job.setFile(files.stream().map(File::getPath).collect(Collectors.joining(",")));
+        job.setFileSize(files.stream().mapToLong(File::length).sum());
+        job.setFileModified(Instant.ofEpochMilli(files.stream().mapToLong(File::lastModified).max().orElse(0)));
+        job.setChunkBytes(importProperties.getChunkBytes());
+        return job;
+    }
+
+    private Duration heartbeatInterval() {
+        return importProperties.getJobStaleAfter().dividedBy(4);
+    }
+
+    private final class JobCheckpoint implements ImportCheckpoint {
+
+        private final String id;
+        private final boolean resuming;
+        private final Set<Integer> done;
+        private final boolean staged;
+
+        JobCheckpoint(String id, boolean resuming, Set<Integer> done, boolean staged) {
+            this.id = id;
+            this.resuming = resuming;
+            this.done = done;
+            this.staged = staged;
+        }
+
+        @Override
+        public boolean resuming() {
+            return resuming;
+        }
+
+        @Override
+        public boolean chunkDone(int index) {
+            return done.contains(index);
+        }
+
+        @Override
+        public Mono<Void> recordChunk(SdudChunk chunk, long rows) {
+            return record(new Update()
+                    .addToSet("completedChunks", chunk.index())
+                    .inc("bytesStaged", chunk.inputLength())
+                    .inc("rowsStaged", rows)
+                    .set("heartbeatAt", Instant.now()));
+        }
+
+        @Override
+        public boolean stagingDone() {
+            return staged;
+        }
+
+        @Override
+        public Mono<Void> recordStaged() {
+            return record(new Update().set("phase", ImportJob.Phase.BUILDING).set("heartbeatAt", Instant.now()));
+        }
+
+        // A job cancelled or taken over elsewhere stops at its next checkpoint
+        private Mono<Void> record(Update update) {
+            return mongoTemplate.updateFirst(owned(id), update, ImportJob.class)
+                    .flatMap(result -> result.getMatchedCount() > 0 ? Mono.<Void>empty()
+                            : Mono.error(new CancellationException("import job " + id + " is no longer running here")));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.myhealthprices.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Labeler code to manufacturer name, loaded from a {@code labeler,manufacturer} CSV.
+ * Codes are matched exactly as they appear in SDUD, so padded and unpadded forms are
+ * separate rows. Without a configured file the bundled {@code labelers.csv} is used; a
+ * configured file can be edited in place and picked up by {@link #reload} or by the next
+ * import, without a redeploy. Names only change on disk with the next build.
+ */
+@Component
+@Slf4j
+public class LabelerRegistry {
+
+    private static final String BUNDLED = "labelers.csv";
+    private static final String HEADER = "labeler,manufacturer";
+
+    private final Path file;
+
+    private volatile Map<String, String> manufacturers;
+    private volatile FileTime loadedModified;
+
+    public LabelerRegistry(@Value("${myhealthprices.labelers.file:}") String file) {
+        this.file = file.isBlank() ? null : Paths.get(file);
+        reload();
+    }
+
+    public String manufacturer(String labeler) {
+        if (labeler == null)
+            return "Unknown";
+        String name = manufacturers.get(labeler);
+        return name != null ? name : "Labeler " + labeler;
+    }
+
+    public int size() {
+        return manufacturers.size();
+    }
+
+    // A file that fails to parse leaves the previous table in place
+    public synchronized int reload() {
+        try {
+            FileTime modified = file != null ? Files.getLastModifiedTime(file) : null;
+            Map<String, String> loaded;
+            try (Reader reader = open()) {
+                loaded = parse(reader);
+            }
+            manufacturers = loaded;
+            loadedModified = modified;
+            log.info("Loaded {} labeler codes from {}", loaded.size(), file != null ? file : BUNDLED);
+            return loaded.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load labelers from " + (file != null ? file : BUNDLED), e);
+        }
+    }
+
+    // Called before each build; cheap when the file has not changed
+    public void refresh() {
+        if (file == null)
+            return;
+        try {
+            if (!Files.getLastModifiedTime(file).equals(loadedModified))
+                reload();
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Keeping the current labeler table, {} could not be read", file, e);
+        }
+    }
+
+    // Blank lines and # comments are skipped; the name is everything after the first comma
+    static Map<String, String> parse(Reader reader) throws IOException {
+        Map<String, String> loaded = new HashMap<>();
+        BufferedReader lines = new BufferedReader(reader);
+        boolean header = true;
+        int number = 0;
+        for (String line; (line = lines.readLine()) != null; ) {
+            number++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            if (header) {
+                if (!line.equalsIgnoreCase(HEADER))
+                    throw new IOException("Expected header " + HEADER + " on line " + number);
+                header = false;
+                continue;
+            }
+            int comma = line.indexOf(',');
+            String labeler = comma < 0 ? "" : line.substring(0, comma).strip();
+            String manufacturer = comma < 0 ? "" : line.substring(comma + 1).strip();
+            if (labeler.isEmpty() || manufacturer.isEmpty())
+                throw new IOException("Expected labeler,manufacturer on line " + number);
+            String previous = loaded.put(labeler, manufacturer);
+            if (previous != null && !previous.equals(manufacturer))
+                throw new IOException("Labeler " + labeler + " is listed for both " + previous + " and " + manufacturer);
+        }
+        return Map.copyOf(loaded);
+    }
+
+    private Reader open() throws IOException {
+        if (file != null)
+            return Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        InputStream in = LabelerRegistry.class.getClassLoader().getResourceAsStream(BUNDLED);
+        if (in == null)
+            throw new IOException(BUNDLED + " is missing from the classpath");
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+}
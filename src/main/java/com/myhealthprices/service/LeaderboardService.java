@@ -0,0 +1,221 @@
+package com.myhealthprices.service;
+
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.Leaderboard;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Materializes the /expensive and /cheap rankings (overall, per state, per manufacturer)
+ * into the {@code leaderboards} collection of a data version, already joined with
+ * name and manufacturer, and keeps the active version's boards in memory so serving
+ * them needs no database round trip.
+ */
+@Service
+@Slf4j
+public class LeaderboardService {
+
+    public static final String EXPENSIVE = "expensive";
+    public static final String CHEAP = "cheap";
+    public static final String STATE = "state";
+    public static final String MANUFACTURER = "manufacturer";
+
+    static final Comparator<DrugSummary> BY_AVERAGE_PRICE =
+            Comparator.comparing(DrugSummary::getAveragePrice)
+                    .thenComparing(DrugSummary::getNdc, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final BatchMongoTemplate mongoTemplate;
+    private final DataVersions dataVersions;
+    private final int size;
+
+    private volatile Snapshot current = Snapshot.EMPTY;
+
+    public LeaderboardService(BatchMongoTemplate mongoTemplate, DataVersions dataVersions,
+            @Value("${myhealthprices.leaderboard.size:10}") int size) {
+        this.mongoTemplate = mongoTemplate;
+        this.dataVersions = dataVersions;
+        this.size = size;
+    }
+
+    public Snapshot current() {
+        return current;
+    }
+
+    // Rebuilds every board of a version; boards not produced by this run are removed
+    public Mono<Void> build(long version) {
+        Instant runStart = Instant.now();
+        String target = DataVersions.collection("leaderboards", version);
+        return definitionsByNdc(version)
+                .flatMapMany(defs -> Flux.concat(summaryBoards(version, defs, runStart),
+                        stateBoards(version, defs, runStart)))
+                .flatMap(board -> mongoTemplate.save(board, target), 8)
+                .count()
+                .flatMap(count -> mongoTemplate.remove(
+                        Query.query(Criteria.where("lastUpdated").lt(runStart)), target)
+                        .doOnSuccess(x -> log.info("Built {} leaderboards for data version {}", count, version)))
+                .then();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        reload();
+    }
+
+    @EventListener
+    public void onDataVersionChanged(DataVersionChangedEvent event) {
+        reload();
+    }
+
+    private void reload() {
+        long version = dataVersions.active();
+        long revision = dataVersions.revision();
+        mongoTemplate.findAll(Leaderboard.class, DataVersions.collection("leaderboards", version))
+                .collectMap(Leaderboard::getId)
+                .subscribe(boards -> {
+                    // A newer switch may have landed while this one was loading
+                    if (version != dataVersions.active() || revision != dataVersions.revision())
+                        return;
+                    current = boards.isEmpty() ? Snapshot.EMPTY
+                            : new Snapshot("\"lb-" + version + "-" + revision + "\"", boards);
+                    log.info("Loaded {} leaderboards for data version {}", boards.size(), version);
+                }, e -> log.warn("Failed to load leaderboards for data version {}", version, e));
+    }
+
+    private Mono<Map<String, DrugDefinition>> definitionsByNdc(long version) {
+        Query query = new Query();
+        query.fields().include("ndc", "name", "manufacturer");
+        return mongoTemplate.find(query, DrugDefinition.class, DataVersions.collection("drug_definitions", version))
+                .collectMap(DrugDefinition::getNdc);
+    }
+
+    // Overall and per-manufacturer boards in one pass over the summaries
+    private Flux<Leaderboard> summaryBoards(long version, Map<String, DrugDefinition> defs, Instant runStart) {
+        Query query = Query.query(Criteria.where("averagePrice").ne(null));
+        return Flux.defer(() -> {
+            TopN<DrugSummary> expensive = new TopN<>(size, BY_AVERAGE_PRICE);
+            TopN<DrugSummary> cheap = new TopN<>(size, BY_AVERAGE_PRICE.reversed());
+            Map<String, TopN<DrugSummary>> expensiveBy = new HashMap<>();
+            Map<String, TopN<DrugSummary>> cheapBy = new HashMap<>();
+            return mongoTemplate.find(query, DrugSummary.class, DataVersions.collection("drug_summaries", version))
+                    .doOnNext(summary -> {
+                        expensive.offer(summary);
+                        cheap.offer(summary);
+                        DrugDefinition def = defs.get(summary.getNdc());
+                        if (def != null && def.getManufacturer() != null) {
+                            expensiveBy.computeIfAbsent(def.getManufacturer(),
+                                    m -> new TopN<>(size, BY_AVERAGE_PRICE)).offer(summary);
+                            cheapBy.computeIfAbsent(def.getManufacturer(),
+                                    m -> new TopN<>(size, BY_AVERAGE_PRICE.reversed())).offer(summary);
+                        }
+                    })
+                    .thenMany(Flux.defer(() -> {
+                        List<Leaderboard> boards = new ArrayList<>();
+                        boards.add(board(EXPENSIVE, null, null, summaryEntries(expensive, defs), runStart));
+                        boards.add(board(CHEAP, null, null, summaryEntries(cheap, defs), runStart));
+                        expensiveBy.forEach((m, top) ->
+                                boards.add(board(EXPENSIVE, MANUFACTURER, m, summaryEntries(top, defs), runStart)));
+                        cheapBy.forEach((m, top) ->
+                                boards.add(board(CHEAP, MANUFACTURER, m, summaryEntries(top, defs), runStart)));
+                        return Flux.fromIterable(boards);
+                    }));
+        });
+    }
+
+    // Per-state boards rank NDCs by their price in that state
+    @SuppressWarnings("unchecked")
+    private Flux<Leaderboard> stateBoards(long version, Map<String, DrugDefinition> defs, Instant runStart) {
+        // $topN keeps only n rows per state in the group instead of pushing every NDC and slicing
+        Document row = new Document("ndc", "$ndc").append("price", "$price");
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.stage(new Document("$match", new Document("price", new Document("$ne", null)))),
+                Aggregation.stage(new Document("$group", new Document("_id", "$state")
+                        .append("top", topN(new Document("price", -1).append("ndc", 1), row))
+                        .append("bottom", topN(new Document("price", 1).append("ndc", -1), row)))))
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+        return mongoTemplate.aggregate(agg, DataVersions.collection("drug_prices", version), Document.class)
+                .filter(state -> state.getString("_id") != null)
+                .flatMapIterable(state -> {
+                    String code = state.getString("_id");
+                    return List.of(
+                            board(EXPENSIVE, STATE, code, stateEntries(code, (List<Document>) state.get("top"), defs), runStart),
+                            board(CHEAP, STATE, code, stateEntries(code, (List<Document>) state.get("bottom"), defs), runStart));
+                });
+    }
+
+    private Document topN(Document sortBy, Document output) {
+        return new Document("$topN", new Document("n", size).append("sortBy", sortBy).append("output", output));
+    }
+
+    private static List<Leaderboard.Entry> summaryEntries(TopN<DrugSummary> top, Map<String, DrugDefinition> defs) {
+        return top.sorted().stream()
+                .map(summary -> Leaderboard.Entry.of(summary, defs.get(summary.getNdc())))
+                .toList();
+    }
+
+    private static List<Leaderboard.Entry> stateEntries(String state, List<Document> ranked,
+            Map<String, DrugDefinition> defs) {
+        return ranked.stream().map(doc -> {
+            Leaderboard.Entry e = entry(doc.getString("ndc"), defs);
+            e.setState(state);
+            e.setPrice(((Number) doc.get("price")).doubleValue());
+            return e;
+        }).toList();
+    }
+
+    // Same fallbacks the controller used when enriching summaries on the fly
+    private static Leaderboard.Entry entry(String ndc, Map<String, DrugDefinition> defs) {
+        DrugDefinition def = defs.get(ndc);
+        Leaderboard.Entry e = new Leaderboard.Entry();
+        e.setNdc(ndc);
+        e.setName(def != null ? def.getName() : "Medication " + ndc);
+        e.setManufacturer(def != null && def.getManufacturer() != null ? def.getManufacturer() : "Unknown");
+        return e;
+    }
+
+    private static Leaderboard board(String kind, String scope, String key, List<Leaderboard.Entry> entries,
+            Instant runStart) {
+        Leaderboard board = new Leaderboard();
+        board.setId(Leaderboard.id(kind, scope, key));
+        board.setKind(kind);
+        board.setScope(scope);
+        board.setKey(key);
+        board.setEntries(entries);
+        board.setLastUpdated(runStart);
+        return board;
+    }
+
+    public record Snapshot(String etag, Map<String, Leaderboard> boards) {
+
+        public static final Snapshot EMPTY = new Snapshot(null, Map.of());
+
+        public boolean loaded() {
+            return !boards.isEmpty();
+        }
+
+        public Leaderboard find(String kind, String state, String manufacturer) {
+            if (state != null)
+                return boards.get(Leaderboard.id(kind, STATE, state.toUpperCase()));
+            if (manufacturer != null)
+                return boards.get(Leaderboard.id(kind, MANUFACTURER, manufacturer));
+            return boards.get(Leaderboard.id(kind, null, null));
+        }
+    }
+}
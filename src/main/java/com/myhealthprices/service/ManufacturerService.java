@@ -0,0 +1,165 @@
+package com.myhealthprices.service;
+
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.Leaderboard;
+import com.myhealthprices.model.ManufacturerSummary;
+import com.myhealthprices.sketch.TDigest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Materializes {@code manufacturer_summaries} for a data version: per manufacturer, the
+ * price aggregates over its drugs and the drugs themselves ranked by average price, so
+ * manufacturer queries are one read by {@code _id} instead of a scan of the definitions.
+ * Builds run on the batch client; reads go through the query path.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ManufacturerService {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final BatchMongoTemplate batchTemplate;
+
+    // Rebuilds every manufacturer of a version; manufacturers no longer present are removed
+    public Mono<Void> build(long version) {
+        Instant runStart = Instant.now();
+        String target = DataVersions.collection("manufacturer_summaries", version);
+        Query definitions = new Query();
+        definitions.fields().include("ndc", "name", "manufacturer", "labeler");
+        Query summaries = Query.query(Criteria.where("averagePrice").ne(null));
+        summaries.fields().include("ndc", "averagePrice", "minPrice", "maxPrice", "totalStates", "priceSketch");
+        return batchTemplate.find(definitions, DrugDefinition.class, DataVersions.collection("drug_definitions", version))
+                .collectMap(DrugDefinition::getNdc)
+                .flatMapMany(defs -> {
+                    Builder builder = new Builder(defs);
+                    return batchTemplate.find(summaries, DrugSummary.class,
+                                    DataVersions.collection("drug_summaries", version))
+                            .doOnNext(builder::add)
+                            .thenMany(Flux.defer(() -> Flux.fromIterable(builder.build(runStart))));
+                })
+                .flatMap(summary -> batchTemplate.save(summary, target), 8)
+                .count()
+                .flatMap(count -> batchTemplate.remove(
+                        Query.query(Criteria.where("lastUpdated").lt(runStart)), target)
+                        .doOnSuccess(x -> log.info("Built {} manufacturer summaries for data version {}", count, version)))
+                .then();
+    }
+
+    // Aggregates only, by name
+    public Flux<ManufacturerSummary> summaries() {
+        Query query = new Query().with(Sort.by("_id"));
+        query.fields().exclude("drugs");
+        return mongoTemplate.find(query, ManufacturerSummary.class);
+    }
+
+    public Mono<ManufacturerSummary> summary(String manufacturer) {
+        Query query = Query.query(Criteria.where("_id").is(manufacturer));
+        query.fields().exclude("drugs");
+        return mongoTemplate.findOne(query, ManufacturerSummary.class);
+    }
+
+    // One page of the ranking, sliced server side; empty for an unknown manufacturer
+    public Mono<List<Leaderboard.Entry>> drugs(String manufacturer, boolean expensiveFirst, int offset, int limit) {
+        Object ranked = expensiveFirst ? new Document("$reverseArray", "$drugs") : "$drugs";
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.stage(new Document("$match", new Document("_id", manufacturer))),
+                Aggregation.stage(new Document("$project", new Document("drugs",
+                        new Document("$slice", List.of(ranked, offset, limit))))));
+        return mongoTemplate.aggregate(agg, ManufacturerSummary.class, ManufacturerSummary.class)
+                .next()
+                .map(found -> found.getDrugs() != null ? found.getDrugs() : List.of());
+    }
+
+    // Groups definitions by manufacturer and folds in the summaries as they stream past
+    static final class Builder {
+
+        private final Map<String, DrugDefinition> defs;
+        private final Map<String, Totals> byManufacturer = new TreeMap<>();
+
+        Builder(Map<String, DrugDefinition> defs) {
+            this.defs = defs;
+            for (DrugDefinition def : defs.values()) {
+                if (def.getManufacturer() == null)
+                    continue;
+                Totals totals = byManufacturer.computeIfAbsent(def.getManufacturer(), m -> new Totals());
+                totals.drugs++;
+                if (def.getLabeler() != null)
+                    totals.labelers.add(def.getLabeler());
+            }
+        }
+
+        void add(DrugSummary summary) {
+            DrugDefinition def = defs.get(summary.getNdc());
+            if (def == null || def.getManufacturer() == null || summary.getAveragePrice() == null)
+                return;
+            Totals totals = byManufacturer.get(def.getManufacturer());
+            totals.priced.add(summary);
+            totals.entries.add(Leaderboard.Entry.of(summary, def));
+            if (summary.getPriceSketch() != null)
+                totals.sketch.merge(TDigest.fromBytes(summary.getPriceSketch()));
+        }
+
+        List<ManufacturerSummary> build(Instant runStart) {
+            List<ManufacturerSummary> built = new ArrayList<>(byManufacturer.size());
+            byManufacturer.forEach((manufacturer, totals) -> built.add(totals.toSummary(manufacturer, runStart)));
+            return built;
+        }
+    }
+
+    private static final class Totals {
+
+        private final TreeSet<String> labelers = new TreeSet<>();
+        private final List<DrugSummary> priced = new ArrayList<>();
+        private final List<Leaderboard.Entry> entries = new ArrayList<>();
+        private final TDigest sketch = new TDigest();
+        private int drugs;
+
+        ManufacturerSummary toSummary(String manufacturer, Instant runStart) {
+            ManufacturerSummary s = new ManufacturerSummary();
+            s.setId(manufacturer);
+            s.setManufacturer(manufacturer);
+            s.setLabelers(List.copyOf(labelers));
+            s.setTotalDrugs(drugs);
+            s.setPricedDrugs(priced.size());
+            if (!priced.isEmpty()) {
+                s.setAveragePrice(priced.stream().mapToDouble(DrugSummary::getAveragePrice).average().orElseThrow());
+                s.setMinPrice(priced.stream().mapToDouble(p -> p.getMinPrice() != null ? p.getMinPrice() : p.getAveragePrice())
+                        .min().orElseThrow());
+                s.setMaxPrice(priced.stream().mapToDouble(p -> p.getMaxPrice() != null ? p.getMaxPrice() : p.getAveragePrice())
+                        .max().orElseThrow());
+            }
+            if (sketch.count() > 0) {
+                s.setMedianPrice(sketch.quantile(0.5));
+                s.setP10Price(sketch.quantile(0.1));
+                s.setP90Price(sketch.quantile(0.9));
+            }
+            // Cheapest first, ties by NDC, matching the cheap leaderboards
+            s.setDrugs(entries.stream()
+                    .sorted(Comparator.comparing(Leaderboard.Entry::getAveragePrice)
+                            .thenComparing(Leaderboard.Entry::getNdc, Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .toList());
+            s.setLastUpdated(runStart);
+            return s;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.myhealthprices.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Keeps the n greatest items under a comparator in O(log n) per offer
+final class TopN<T> {
+
+    private final int n;
+    private final Comparator<T> order;
+    private final PriorityQueue<T> heap;
+
+    TopN(int n, Comparator<T> order) {
+        this.n = n;
+        this.order = order;
+        this.heap = new PriorityQueue<>(n + 1, order);
+    }
+
+    void offer(T item) {
+        if (heap.size() < n) {
+            heap.add(item);
+        } else if (order.compare(item, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(item);
+        }
+    }
+
+    // Greatest first
+    List<T> sorted() {
+        List<T> items = new ArrayList<>(heap);
+        items.sort(order.reversed());
+        return items;
+    }
+}
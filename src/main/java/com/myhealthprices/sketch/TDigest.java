@@ -0,0 +1,237 @@
+package com.myhealthprices.sketch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.util.Arrays;
+
+/**
+ * Merging t-digest (Dunning): a quantile sketch that keeps at most about
+ * {@code compression} centroids, small ones near the tails and large ones in the middle,
+ * so extreme percentiles stay accurate. Digests merge without the values they were built
+ * from, and serialize to a few hundred bytes. Up to {@code compression / 2} values the
+ * centroids are the values themselves and quantiles are exact. Not thread-safe.
+ */
+public final class TDigest {
+
+    public static final int DEFAULT_COMPRESSION = 100;
+    private static final byte FORMAT = 1;
+
+    private final int compression;
+    private double[] means;
+    private long[] weights;
+    private int centroids;
+    private int buffered;
+    private long total;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    public TDigest(int compression) {
+        if (compression < 10 || compression > Short.MAX_VALUE)
+            throw new IllegalArgumentException("compression must be between 10 and " + Short.MAX_VALUE);
+        this.compression = compression;
+        // Room for the merged centroids plus a buffer of unmerged values
+        int capacity = 6 * compression;
+        this.means = new double[capacity];
+        this.weights = new long[capacity];
+    }
+
+    public TDigest add(double value) {
+        return add(value, 1);
+    }
+
+    public TDigest add(double value, long weight) {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            throw new IllegalArgumentException("Cannot add " + value);
+        if (weight <= 0)
+            return this;
+        if (centroids + buffered == means.length)
+            compress();
+        means[centroids + buffered] = value;
+        weights[centroids + buffered] = weight;
+        buffered++;
+        total += weight;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        return this;
+    }
+
+    public TDigest merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++)
+            add(other.means[i], other.weights[i]);
+        if (other.total > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        return this;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public double min() {
+        return total > 0 ? min : Double.NaN;
+    }
+
+    public double max() {
+        return total > 0 ? max : Double.NaN;
+    }
+
+    public int centroidCount() {
+        compress();
+        return centroids;
+    }
+
+    /**
+     * Estimated value at quantile {@code q} in [0, 1], interpolating between centroid
+     * centres and the exact min and max. NaN while empty.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1)
+            throw new IllegalArgumentException("q must be in [0, 1]: " + q);
+        compress();
+        if (centroids == 0)
+            return Double.NaN;
+        if (centroids == 1)
+            return means[0];
+
+        double index = q * total;
+        // Tails: between the exact extremes and the centre of the outermost centroid
+        if (index < weights[0] / 2.0)
+            return interpolate(min, means[0], weights[0] == 1 ? 0 : index / (weights[0] / 2.0));
+        double last = weights[centroids - 1] / 2.0;
+        if (index > total - last)
+            return interpolate(means[centroids - 1], max,
+                    weights[centroids - 1] == 1 ? 1 : (index - (total - last)) / last);
+
+        double cumulative = weights[0] / 2.0;
+        for (int i = 0; i < centroids - 1; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2.0;
+            if (cumulative + step > index)
+                return interpolate(means[i], means[i + 1], (index - cumulative) / step);
+            cumulative += step;
+        }
+        return means[centroids - 1];
+    }
+
+    // [FORMAT][compression:short][min][max][count:varint] then per centroid [mean:float][weight:varint]
+    public byte[] toBytes() {
+        compress();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + 6 * centroids);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeShort(compression);
+            out.writeDouble(min());
+            out.writeDouble(max());
+            writeVarint(out, centroids);
+            for (int i = 0; i < centroids; i++) {
+                out.writeFloat((float) means[i]);
+                writeVarint(out, weights[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static TDigest fromBytes(byte[] data) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            if (in.get() != FORMAT)
+                throw new IllegalArgumentException("Unknown t-digest format " + data[0]);
+            TDigest digest = new TDigest(in.getShort());
+            double min = in.getDouble();
+            double max = in.getDouble();
+            int count = (int) readVarint(in);
+            for (int i = 0; i < count; i++) {
+                double mean = in.getFloat();
+                digest.add(mean, readVarint(in));
+            }
+            if (digest.total > 0) {
+                // Means were narrowed to floats; the extremes are kept exact
+                digest.min = min;
+                digest.max = max;
+            }
+            return digest;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated t-digest", e);
+        }
+    }
+
+    // Sorts centroids and buffered values together, then merges neighbours while the
+    // merged centroid stays within one unit of the k1 scale function
+    private void compress() {
+        if (buffered == 0)
+            return;
+        int n = centroids + buffered;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        double[] sourceMeans = Arrays.copyOf(means, n);
+        long[] sourceWeights = Arrays.copyOf(weights, n);
+        Arrays.sort(order, (a, b) -> Double.compare(sourceMeans[a], sourceMeans[b]));
+
+        int out = 0;
+        double mean = sourceMeans[order[0]];
+        long weight = sourceWeights[order[0]];
+        long before = 0;
+        double limit = limit(0);
+        for (int k = 1; k < n; k++) {
+            int i = order[k];
+            if (before + weight + sourceWeights[i] <= limit * total) {
+                weight += sourceWeights[i];
+                mean += (sourceMeans[i] - mean) * sourceWeights[i] / weight;
+            } else {
+                means[out] = mean;
+                weights[out++] = weight;
+                before += weight;
+                limit = limit((double) before / total);
+                mean = sourceMeans[i];
+                weight = sourceWeights[i];
+            }
+        }
+        means[out] = mean;
+        weights[out++] = weight;
+        centroids = out;
+        buffered = 0;
+    }
+
+    // Largest quantile a centroid starting at q may reach: k1(q) + 1, mapped back to q
+    private double limit(double q) {
+        double k = compression / (2 * Math.PI) * Math.asin(2 * q - 1) + 1;
+        double angle = k * 2 * Math.PI / compression;
+        return angle >= Math.PI / 2 ? 1.0 : (Math.sin(angle) + 1) / 2;
+    }
+
+    private static double interpolate(double from, double to, double fraction) {
+        return from + fraction * (to - from);
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Malformed varint in t-digest");
+    }
+}
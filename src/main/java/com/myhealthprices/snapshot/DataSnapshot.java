@@ -0,0 +1,506 @@
+package com.myhealthprices.snapshot;
+
+import com.myhealthprices.engine.StringDictionary;
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugPrice;
+import com.myhealthprices.model.DrugSummary;
+import org.bson.types.ObjectId;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Read-only, memory-mapped image of one data version's definitions, latest prices and
+ * summaries. Each table is stored column by column in NDC order, with every string
+ * (NDCs included) dictionary-encoded into one shared string table; lookups are binary
+ * searches comparing UTF-8 bytes in place, and entities are only materialized for the
+ * rows a request returns. Files are written by {@link Writer} and never modified.
+ */
+public final class DataSnapshot {
+
+    private static final int MAGIC = 0x4D485053; // "MHPS"
+    private static final int FORMAT = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8 + 4 * 4;
+    private static final int OBJECT_ID_BYTES = 12;
+    private static final int NULL_STRING = -1;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final long NULL_TIME = Long.MIN_VALUE;
+
+    // Column layouts: widths in bytes, in file order; the first column of every table is the NDC
+    private static final int D_NDC = 0, D_ID = 1, D_NAME = 2, D_MANUFACTURER = 3, D_GENERIC_NAME = 4,
+            D_LABELER = 5, D_STRENGTH = 6, D_DOSAGE_FORM = 7, D_PACKAGE_SIZE = 8, D_LAST_UPDATED = 9;
+    private static final int[] DEFINITION_COLUMNS = { 4, 4, 4, 4, 4, 4, 4, 4, 4, 8 };
+
+    private static final int S_NDC = 0, S_ID = 1, S_AVERAGE = 2, S_MIN = 3, S_MAX = 4, S_TOTAL_STATES = 5,
+            S_LAST_UPDATED = 6, S_MEDIAN = 7, S_P10 = 8, S_P90 = 9;
+    private static final int[] SUMMARY_COLUMNS = { 4, 4, 8, 8, 8, 4, 8, 8, 8, 8 };
+
+    private static final int P_NDC = 0, P_STATE = 1, P_PRICE = 2, P_YEAR = 3, P_QUARTER = 4, P_LAST_UPDATED = 5,
+            P_ID = 6;
+    private static final int[] PRICE_COLUMNS = { 4, 4, 8, 4, 4, 8, OBJECT_ID_BYTES };
+
+    private final Path path;
+    private final long version;
+    private final long revision;
+    private final Instant createdAt;
+    private final ByteBuffer buffer;
+
+    private final int stringOffsets;
+    private final int stringBytes;
+    private final Table definitions;
+    private final Table summaries;
+    private final Table prices;
+
+    private DataSnapshot(Path path, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+            throw new IOException(path + " is not a data snapshot");
+        if (buffer.getInt(4) != FORMAT)
+            throw new IOException(path + " has snapshot format " + buffer.getInt(4) + ", expected " + FORMAT);
+        this.version = buffer.getLong(8);
+        this.revision = buffer.getLong(16);
+        this.createdAt = Instant.ofEpochMilli(buffer.getLong(24));
+        int stringCount = buffer.getInt(32);
+        int definitionCount = buffer.getInt(36);
+        int summaryCount = buffer.getInt(40);
+        int priceCount = buffer.getInt(44);
+
+        this.stringOffsets = HEADER_BYTES;
+        this.stringBytes = stringOffsets + 4 * (stringCount + 1);
+        if (stringCount < 0 || stringBytes > buffer.limit())
+            throw new IOException(path + " is truncated or corrupt");
+        int position = stringBytes + buffer.getInt(stringOffsets + 4 * stringCount);
+        this.definitions = new Table(position, definitionCount, DEFINITION_COLUMNS);
+        this.summaries = new Table(definitions.end(), summaryCount, SUMMARY_COLUMNS);
+        this.prices = new Table(summaries.end(), priceCount, PRICE_COLUMNS);
+        if (prices.end() != buffer.limit())
+            throw new IOException(path + " is truncated or corrupt");
+    }
+
+    public static DataSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(path + " is larger than 2 GB");
+            // The mapping stays valid after the channel is closed
+            return new DataSnapshot(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public long revision() {
+        return revision;
+    }
+
+    public Instant createdAt() {
+        return createdAt;
+    }
+
+    public int definitionCount() {
+        return definitions.rows();
+    }
+
+    public int summaryCount() {
+        return summaries.rows();
+    }
+
+    public int priceCount() {
+        return prices.rows();
+    }
+
+    public long sizeBytes() {
+        return buffer.limit();
+    }
+
+    public Optional<DrugDefinition> definition(String ndc) {
+        int row = definitions.find(ndc);
+        return row >= 0 ? Optional.of(definitionAt(row)) : Optional.empty();
+    }
+
+    public List<DrugDefinition> definitions() {
+        List<DrugDefinition> all = new ArrayList<>(definitions.rows());
+        for (int row = 0; row < definitions.rows(); row++)
+            all.add(definitionAt(row));
+        return all;
+    }
+
+    public Optional<DrugSummary> summary(String ndc) {
+        int row = summaries.find(ndc);
+        return row >= 0 ? Optional.of(summaryAt(row)) : Optional.empty();
+    }
+
+    // Ordered by state
+    public List<DrugPrice> prices(String ndc) {
+        byte[] key = ndc.getBytes(StandardCharsets.UTF_8);
+        int from = prices.lowerBound(key);
+        List<DrugPrice> out = new ArrayList<>();
+        for (int row = from; row < prices.rows() && prices.compareNdc(row, key) == 0; row++)
+            out.add(priceAt(row));
+        return out;
+    }
+
+    private DrugDefinition definitionAt(int row) {
+        DrugDefinition d = new DrugDefinition();
+        d.setNdc(string(definitions.intAt(D_NDC, row)));
+        d.setId(string(definitions.intAt(D_ID, row)));
+        d.setName(string(definitions.intAt(D_NAME, row)));
+        d.setManufacturer(string(definitions.intAt(D_MANUFACTURER, row)));
+        d.setGenericName(string(definitions.intAt(D_GENERIC_NAME, row)));
+        d.setLabeler(string(definitions.intAt(D_LABELER, row)));
+        d.setStrength(string(definitions.intAt(D_STRENGTH, row)));
+        d.setDosageForm(string(definitions.intAt(D_DOSAGE_FORM, row)));
+        d.setPackageSize(string(definitions.intAt(D_PACKAGE_SIZE, row)));
+        d.setLastUpdated(time(definitions.longAt(D_LAST_UPDATED, row)));
+        return d;
+    }
+
+    private DrugSummary summaryAt(int row) {
+        DrugSummary s = new DrugSummary();
+        s.setNdc(string(summaries.intAt(S_NDC, row)));
+        s.setId(string(summaries.intAt(S_ID, row)));
+        s.setAveragePrice(number(summaries.doubleAt(S_AVERAGE, row)));
+        s.setMinPrice(number(summaries.doubleAt(S_MIN, row)));
+        s.setMaxPrice(number(summaries.doubleAt(S_MAX, row)));
+        s.setTotalStates(integer(summaries.intAt(S_TOTAL_STATES, row)));
+        s.setMedianPrice(number(summaries.doubleAt(S_MEDIAN, row)));
+        s.setP10Price(number(summaries.doubleAt(S_P10, row)));
+        s.setP90Price(number(summaries.doubleAt(S_P90, row)));
+        s.setLastUpdated(time(summaries.longAt(S_LAST_UPDATED, row)));
+        return s;
+    }
+
+    private DrugPrice priceAt(int row) {
+        DrugPrice p = new DrugPrice();
+        p.setNdc(string(prices.intAt(P_NDC, row)));
+        p.setId(prices.objectIdAt(P_ID, row));
+        p.setState(string(prices.intAt(P_STATE, row)));
+        p.setPrice(number(prices.doubleAt(P_PRICE, row)));
+        p.setYear(integer(prices.intAt(P_YEAR, row)));
+        p.setQuarter(integer(prices.intAt(P_QUARTER, row)));
+        p.setLastUpdated(time(prices.longAt(P_LAST_UPDATED, row)));
+        return p;
+    }
+
+    private String string(int code) {
+        if (code == NULL_STRING)
+            return null;
+        int start = buffer.getInt(stringOffsets + 4 * code);
+        int end = buffer.getInt(stringOffsets + 4 * (code + 1));
+        byte[] bytes = new byte[end - start];
+        buffer.get(stringBytes + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Unsigned byte order, the same order the writer sorts and Mongo compares strings in
+    private int compareString(int code, byte[] key) {
+        int start = stringBytes + buffer.getInt(stringOffsets + 4 * code);
+        int length = stringBytes + buffer.getInt(stringOffsets + 4 * (code + 1)) - start;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(buffer.get(start + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0)
+                return cmp;
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private static Double number(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private static Integer integer(int value) {
+        return value == NULL_INT ? null : value;
+    }
+
+    private static Instant time(long millis) {
+        return millis == NULL_TIME ? null : Instant.ofEpochMilli(millis);
+    }
+
+    private final class Table {
+        private final int rows;
+        private final int[] columnStarts;
+        private final int[] widths;
+        private final int end;
+
+        Table(int start, int rows, int[] widths) {
+            this.rows = rows;
+            this.widths = widths;
+            this.columnStarts = new int[widths.length];
+            long position = start;
+            for (int c = 0; c < widths.length; c++) {
+                columnStarts[c] = (int) position;
+                position += (long) widths[c] * rows;
+            }
+            this.end = (int) Math.min(position, Integer.MAX_VALUE);
+        }
+
+        int rows() {
+            return rows;
+        }
+
+        int end() {
+            return end;
+        }
+
+        int intAt(int column, int row) {
+            return buffer.getInt(columnStarts[column] + 4 * row);
+        }
+
+        long longAt(int column, int row) {
+            return buffer.getLong(columnStarts[column] + 8 * row);
+        }
+
+        double doubleAt(int column, int row) {
+            return buffer.getDouble(columnStarts[column] + 8 * row);
+        }
+
+        String objectIdAt(int column, int row) {
+            byte[] id = new byte[widths[column]];
+            buffer.get(columnStarts[column] + widths[column] * row, id);
+            for (byte b : id) {
+                if (b != 0)
+                    return new ObjectId(id).toHexString();
+            }
+            return null;
+        }
+
+        int compareNdc(int row, byte[] key) {
+            return compareString(intAt(0, row), key);
+        }
+
+        int find(String ndc) {
+            byte[] key = ndc.getBytes(StandardCharsets.UTF_8);
+            int row = lowerBound(key);
+            return row < rows && compareNdc(row, key) == 0 ? row : -1;
+        }
+
+        int lowerBound(byte[] key) {
+            int lo = 0;
+            int hi = rows;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareNdc(mid, key) < 0)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * Collects one version's rows, each table in ascending NDC order (prices by NDC then
+     * state), into primitive columns and writes them out as a snapshot file. Not thread-safe.
+     */
+    public static final class Writer {
+
+        private final long version;
+        private final long revision;
+        private final StringDictionary strings = new StringDictionary();
+        private final Columns definitions = new Columns(DEFINITION_COLUMNS);
+        private final Columns summaries = new Columns(SUMMARY_COLUMNS);
+        private final Columns prices = new Columns(PRICE_COLUMNS);
+        private String lastDefinition;
+        private String lastSummary;
+        private String lastPrice;
+
+        public Writer(long version, long revision) {
+            this.version = version;
+            this.revision = revision;
+        }
+
+        public Writer add(DrugDefinition d) {
+            lastDefinition = checkOrder(lastDefinition, d.getNdc(), "definitions");
+            int row = definitions.addRow();
+            definitions.putInt(D_NDC, row, code(d.getNdc()));
+            definitions.putInt(D_ID, row, code(d.getId()));
+            definitions.putInt(D_NAME, row, code(d.getName()));
+            definitions.putInt(D_MANUFACTURER, row, code(d.getManufacturer()));
+            definitions.putInt(D_GENERIC_NAME, row, code(d.getGenericName()));
+            definitions.putInt(D_LABELER, row, code(d.getLabeler()));
+            definitions.putInt(D_STRENGTH, row, code(d.getStrength()));
+            definitions.putInt(D_DOSAGE_FORM, row, code(d.getDosageForm()));
+            definitions.putInt(D_PACKAGE_SIZE, row, code(d.getPackageSize()));
+            definitions.putLong(D_LAST_UPDATED, row, millis(d.getLastUpdated()));
+            return this;
+        }
+
+        public Writer add(DrugSummary s) {
+            lastSummary = checkOrder(lastSummary, s.getNdc(), "summaries");
+            int row = summaries.addRow();
+            summaries.putInt(S_NDC, row, code(s.getNdc()));
+            summaries.putInt(S_ID, row, code(s.getId()));
+            summaries.putDouble(S_AVERAGE, row, value(s.getAveragePrice()));
+            summaries.putDouble(S_MIN, row, value(s.getMinPrice()));
+            summaries.putDouble(S_MAX, row, value(s.getMaxPrice()));
+            summaries.putInt(S_TOTAL_STATES, row, value(s.getTotalStates()));
+            summaries.putDouble(S_MEDIAN, row, value(s.getMedianPrice()));
+            summaries.putDouble(S_P10, row, value(s.getP10Price()));
+            summaries.putDouble(S_P90, row, value(s.getP90Price()));
+            summaries.putLong(S_LAST_UPDATED, row, millis(s.getLastUpdated()));
+            return this;
+        }
+
+        public Writer add(DrugPrice p) {
+            lastPrice = checkOrder(lastPrice, p.getNdc(), "prices");
+            int row = prices.addRow();
+            prices.putInt(P_NDC, row, code(p.getNdc()));
+            prices.putInt(P_STATE, row, code(p.getState()));
+            prices.putDouble(P_PRICE, row, value(p.getPrice()));
+            prices.putInt(P_YEAR, row, value(p.getYear()));
+            prices.putInt(P_QUARTER, row, value(p.getQuarter()));
+            prices.putLong(P_LAST_UPDATED, row, millis(p.getLastUpdated()));
+            // Price ids are Mongo ObjectIds; anything else is not kept
+            if (p.getId() != null && ObjectId.isValid(p.getId()))
+                prices.putBytes(P_ID, row, new ObjectId(p.getId()).toByteArray());
+            return this;
+        }
+
+        // Written to a temporary file first, so readers never see a partial snapshot
+        public Path write(Path target) throws IOException {
+            List<byte[]> encoded = new ArrayList<>(strings.size());
+            long stringBytes = 0;
+            for (int i = 0; i < strings.size(); i++) {
+                byte[] bytes = strings.decode(i).getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                stringBytes += bytes.length;
+            }
+            long size = HEADER_BYTES + 4L * (strings.size() + 1) + stringBytes
+                    + definitions.bytes() + summaries.bytes() + prices.bytes();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Snapshot of data version " + version + " would exceed 2 GB");
+
+            Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT);
+                    out.writeLong(version);
+                    out.writeLong(revision);
+                    out.writeLong(System.currentTimeMillis());
+                    out.writeInt(strings.size());
+                    out.writeInt(definitions.rows);
+                    out.writeInt(summaries.rows);
+                    out.writeInt(prices.rows);
+                    int offset = 0;
+                    out.writeInt(offset);
+                    for (byte[] bytes : encoded) {
+                        offset += bytes.length;
+                        out.writeInt(offset);
+                    }
+                    for (byte[] bytes : encoded)
+                        out.write(bytes);
+                    definitions.writeTo(out);
+                    summaries.writeTo(out);
+                    prices.writeTo(out);
+                }
+                return Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+
+        private int code(String value) {
+            return value == null ? NULL_STRING : strings.encode(value);
+        }
+
+        private static String checkOrder(String last, String ndc, String table) {
+            if (ndc == null)
+                throw new IllegalArgumentException("Snapshot " + table + " row without an NDC");
+            if (last != null && compare(last, ndc) > 0)
+                throw new IllegalArgumentException("Snapshot " + table + " out of NDC order: " + last + " > " + ndc);
+            return ndc;
+        }
+
+        private static int compare(String a, String b) {
+            return Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static double value(Double d) {
+            return d == null ? Double.NaN : d;
+        }
+
+        private static int value(Integer i) {
+            return i == null ? NULL_INT : i;
+        }
+
+        private static long millis(Instant time) {
+            return time == null ? NULL_TIME : time.toEpochMilli();
+        }
+    }
+
+    // Growable fixed-width columns, one byte array per column
+    private static final class Columns {
+        private final int[] widths;
+        private final ByteBuffer[] data;
+        private int rows;
+
+        Columns(int[] widths) {
+            this.widths = widths;
+            this.data = new ByteBuffer[widths.length];
+            for (int c = 0; c < widths.length; c++)
+                data[c] = ByteBuffer.allocate(widths[c] * 1024);
+        }
+
+        int addRow() {
+            for (int c = 0; c < data.length; c++) {
+                if (data[c].capacity() < (rows + 1) * widths[c]) {
+                    ByteBuffer grown = ByteBuffer.allocate(data[c].capacity() * 2);
+                    grown.put(0, data[c], 0, rows * widths[c]);
+                    data[c] = grown;
+                }
+            }
+            return rows++;
+        }
+
+        void putInt(int column, int row, int value) {
+            data[column].putInt(row * 4, value);
+        }
+
+        void putLong(int column, int row, long value) {
+            data[column].putLong(row * 8, value);
+        }
+
+        void putDouble(int column, int row, double value) {
+            data[column].putDouble(row * 8, value);
+        }
+
+        void putBytes(int column, int row, byte[] value) {
+            data[column].put(row * widths[column], value);
+        }
+
+        long bytes() {
+            long total = 0;
+            for (int width : widths)
+                total += (long) width * rows;
+            return total;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            for (int c = 0; c < data.length; c++)
+                out.write(data[c].array(), 0, rows * widths[c]);
+        }
+    }
+}
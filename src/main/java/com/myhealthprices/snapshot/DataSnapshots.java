@@ -0,0 +1,218 @@
+package com.myhealthprices.snapshot;
+
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.config.SnapshotProperties;
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugPrice;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.service.DataVersionChangedEvent;
+import com.myhealthprices.service.DataVersions;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot files of the serving collections, one per data version and revision, and the
+ * one currently mapped. A snapshot is only served while it matches the active version
+ * and revision exactly; otherwise reads go to Mongo as before. The newest file on disk
+ * is mapped at startup, so reads are served from it as soon as the version pointer
+ * has been read, without querying Mongo or warming a cache.
+ */
+@Component
+@Slf4j
+public class DataSnapshots implements MeterBinder {
+
+    private static final Pattern FILE_NAME = Pattern.compile("^data-v(\\d+)-r(\\d+)\\.snapshot$");
+
+    private final BatchMongoTemplate mongoTemplate;
+    private final DataVersions dataVersions;
+    private final SnapshotProperties properties;
+    private final Scheduler batchScheduler;
+    private final Path dir;
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private volatile DataSnapshot mapped;
+
+    public DataSnapshots(BatchMongoTemplate mongoTemplate, DataVersions dataVersions,
+            SnapshotProperties properties, Scheduler batchScheduler) {
+        this.mongoTemplate = mongoTemplate;
+        this.dataVersions = dataVersions;
+        this.properties = properties;
+        this.batchScheduler = batchScheduler;
+        this.dir = Paths.get(properties.getDir());
+        if (properties.isEnabled())
+            files().findFirst().ifPresent(this::map);
+    }
+
+    // The snapshot of the active data version, if this instance has it mapped
+    public Optional<DataSnapshot> current() {
+        DataSnapshot snapshot = mapped;
+        return matches(snapshot, dataVersions.active(), dataVersions.revision())
+                ? Optional.of(snapshot)
+                : Optional.empty();
+    }
+
+    /**
+     * Writes the snapshot of {@code version} from its collections, tagged with the revision
+     * it will be served at. Mapped straight away if that is the active version and revision.
+     */
+    public Mono<Void> write(long version, long revision) {
+        if (!properties.isEnabled() || version == 0)
+            return Mono.empty();
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            DataSnapshot.Writer writer = new DataSnapshot.Writer(version, revision);
+            return sorted(DrugDefinition.class, "drug_definitions", version, "ndc").doOnNext(writer::add)
+                    .thenMany(sorted(DrugSummary.class, "drug_summaries", version, "ndc").doOnNext(writer::add))
+                    .thenMany(sorted(DrugPrice.class, "drug_prices", version, "ndc", "state").doOnNext(writer::add))
+                    .then(Mono.fromCallable(() -> {
+                        Files.createDirectories(dir);
+                        return writer.write(file(version, revision));
+                    }).subscribeOn(batchScheduler))
+                    .doOnNext(path -> {
+                        log.info("Wrote data snapshot {} in {} ms", path, (System.nanoTime() - start) / 1_000_000);
+                        if (version == dataVersions.active() && revision == dataVersions.revision())
+                            map(path);
+                        prune();
+                    })
+                    .then();
+        });
+    }
+
+    public Map<String, Object> stats() {
+        DataSnapshot snapshot = mapped;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("serving", current().isPresent());
+        if (snapshot != null) {
+            stats.put("file", snapshot.path().toString());
+            stats.put("version", snapshot.version());
+            stats.put("revision", snapshot.revision());
+            stats.put("createdAt", snapshot.createdAt());
+            stats.put("bytes", snapshot.sizeBytes());
+            stats.put("definitions", snapshot.definitionCount());
+            stats.put("summaries", snapshot.summaryCount());
+            stats.put("prices", snapshot.priceCount());
+        }
+        return stats;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("data.snapshot.serving", this, s -> s.current().isPresent() ? 1 : 0)
+                .description("Whether per-NDC reads are served from the mapped snapshot")
+                .register(registry);
+        Gauge.builder("data.snapshot.size", this, s -> s.mapped != null ? s.mapped.sizeBytes() : 0)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    // Runs before the other listeners so a search index rebuild can already read from the snapshot
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onDataVersionChanged(DataVersionChangedEvent event) {
+        long version = dataVersions.active();
+        long revision = dataVersions.revision();
+        if (!properties.isEnabled() || version == 0 || matches(mapped, version, revision))
+            return;
+        Path file = file(version, revision);
+        // A file that fails to map (e.g. an older format) is rebuilt like a missing one
+        if (Files.exists(file) && map(file))
+            return;
+        if (properties.isBuildMissing() && building.compareAndSet(false, true)) {
+            log.info("No data snapshot for version {} revision {}, building one", version, revision);
+            write(version, revision)
+                    .subscribeOn(batchScheduler)
+                    .doFinally(signal -> building.set(false))
+                    .subscribe(null, e -> log.warn("Failed to build data snapshot for version {}", version, e));
+        }
+    }
+
+    private <T> Flux<T> sorted(Class<T> type, String base, long version, String... keys) {
+        Query query = new Query().with(Sort.by(keys)).allowDiskUse(true);
+        // Rows are added to the writer on the batch scheduler rather than the driver's threads
+        return mongoTemplate.find(query, type, DataVersions.collection(base, version)).publishOn(batchScheduler);
+    }
+
+    private boolean map(Path file) {
+        try {
+            DataSnapshot snapshot = DataSnapshot.open(file);
+            mapped = snapshot;
+            log.info("Mapped data snapshot {} ({} definitions, {} prices, {} KB)", file,
+                    snapshot.definitionCount(), snapshot.priceCount(), snapshot.sizeBytes() / 1024);
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to map data snapshot {}", file, e);
+            return false;
+        }
+    }
+
+    // Oldest files beyond the configured count; the mapped one is kept regardless
+    private void prune() {
+        DataSnapshot snapshot = mapped;
+        List<Path> stale = files().skip(Math.max(1, properties.getKeep())).toList();
+        for (Path file : stale) {
+            if (snapshot != null && file.equals(snapshot.path()))
+                continue;
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete data snapshot {}", file, e);
+            }
+        }
+    }
+
+    // Snapshot files in the directory, newest version and revision first
+    private Stream<Path> files() {
+        if (!Files.isDirectory(dir))
+            return Stream.empty();
+        try (Stream<Path> listing = Files.list(dir)) {
+            return listing.filter(file -> FILE_NAME.matcher(file.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingLong((Path file) -> part(file, 1))
+                            .thenComparingLong(file -> part(file, 2))
+                            .reversed())
+                    .toList()
+                    .stream();
+        } catch (IOException e) {
+            log.warn("Failed to list data snapshots in {}", dir, e);
+            return Stream.empty();
+        }
+    }
+
+    private Path file(long version, long revision) {
+        return dir.resolve("data-v" + version + "-r" + revision + ".snapshot");
+    }
+
+    private static long part(Path file, int group) {
+        Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+        return m.matches() ? Long.parseLong(m.group(group)) : -1;
+    }
+
+    private static boolean matches(DataSnapshot snapshot, long version, long revision) {
+        return snapshot != null && version != 0 && snapshot.version() == version && snapshot.revision() == revision;
+    }
+}
@@ -0,0 +1,70 @@
+package com.myhealthprices.cache;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentRequestsShareOneLoadUntilItCompletes() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        Sinks.One<String> result = Sinks.one();
+
+        List<String> received = new ArrayList<>();
+        Disposable first = flights.execute("00002150680", () -> {
+            loads.incrementAndGet();
+            return result.asMono();
+        }).subscribe(received::add);
+        for (int i = 0; i < 4; i++) {
+            flights.execute("00002150680", () -> {
+                loads.incrementAndGet();
+                return Mono.just("other");
+            }).subscribe(received::add);
+        }
+        // The request that started the load going away does not cancel it for the others
+        first.dispose();
+        assertEquals(1, flights.inFlight());
+
+        result.tryEmitValue("prices");
+        assertEquals(List.of("prices", "prices", "prices", "prices"), received);
+        assertEquals(1, loads.get());
+        assertEquals(1, flights.leaders());
+        assertEquals(4, flights.coalesced());
+        assertEquals(0, flights.inFlight());
+
+        // Nothing is kept after completion
+        assertEquals("fresh", flights.execute("00002150680", () -> Mono.just("fresh")).block());
+        assertEquals(2, flights.leaders());
+    }
+
+    @Test
+    public void testEmptyResultsErrorsAndKeysAreKeptApart() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        Sinks.One<String> failing = Sinks.one();
+        Mono<String> a = flights.execute("a", failing::asMono);
+        Mono<String> b = flights.execute("a", () -> Mono.just("unused"));
+        List<Throwable> errors = new ArrayList<>();
+        a.subscribe(null, errors::add);
+        b.subscribe(null, errors::add);
+        assertEquals("other", flights.execute("b", () -> Mono.just("other")).block());
+
+        failing.tryEmitError(new IllegalStateException("mongo down"));
+        assertEquals(2, errors.size());
+        assertTrue(errors.stream().allMatch(e -> e instanceof IllegalStateException));
+        assertTrue(flights.execute("a", Mono::empty).blockOptional().isEmpty());
+        assertThrows(IllegalStateException.class,
+                () -> flights.execute("c", () -> { throw new IllegalStateException("bad query"); }).block());
+        assertEquals(0, flights.inFlight());
+    }
+}
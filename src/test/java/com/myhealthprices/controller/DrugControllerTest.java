@@ -1,22 +1,42 @@
 package com.myhealthprices.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.myhealthprices.cache.DrugCache;
+import com.myhealthprices.config.CodecConfig;
+import com.myhealthprices.config.DrugCacheProperties;
 import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugPrice;
 import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.Leaderboard;
+import com.myhealthprices.model.PriceHistory;
+import com.myhealthprices.search.DrugSearchIndex;
+import com.myhealthprices.search.NdcFilter;
+import com.myhealthprices.service.LeaderboardService;
+import com.myhealthprices.snapshot.DataSnapshots;
 import com.myhealthprices.repository.DrugDefinitionRepository;
 import com.myhealthprices.repository.DrugPriceRepository;
 import com.myhealthprices.repository.DrugSummaryRepository;
+import com.myhealthprices.repository.PriceHistoryRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
 
 public class DrugControllerTest {
@@ -32,12 +52,32 @@ public class DrugControllerTest {
     @Mock
     private DrugSummaryRepository summaryRepo;
 
-    @InjectMocks
+    @Mock
+    private LeaderboardService leaderboards;
+
+    @Mock
+    private DrugSearchIndex searchIndex;
+
+    @Mock
+    private NdcFilter ndcFilter;
+
+    @Mock
+    private PriceHistoryRepository historyRepo;
+
+    @Mock
+    private DataSnapshots snapshots;
+
     private DrugController drugController;
 
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
+        DrugCache drugCache = new DrugCache(definitionRepo, priceRepo, summaryRepo, historyRepo, snapshots,
+                new DrugCacheProperties());
+        when(leaderboards.current()).thenReturn(LeaderboardService.Snapshot.EMPTY);
+        when(ndcFilter.mightExist(anyString())).thenReturn(true);
+        drugController = new DrugController(definitionRepo, summaryRepo, drugCache, leaderboards, searchIndex,
+                ndcFilter);
         webTestClient = WebTestClient.bindToController(drugController).build();
     }
 
@@ -74,6 +114,21 @@ public class DrugControllerTest {
                 .contains(def);
     }
 
+    @Test
+    public void testSearchFallbackMatchesRegexCharactersLiterally() {
+        DrugDefinition def = new DrugDefinition();
+        def.setName("VITAMIN B-12 (CYANO)");
+
+        when(definitionRepo.findByNameRegex("(?i).*B-12 \\(CYANO.*")).thenReturn(Flux.just(def));
+
+        webTestClient.get()
+                .uri(uri -> uri.path("/api/v2/drugs/search").queryParam("q", "{q}").build("B-12 (CYANO"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(DrugDefinition.class)
+                .hasSize(1);
+    }
+
     @Test
     public void testSearchByLongNameTruncationEdgeCase() {
         // Mock results: no result for full name "acetaminophen" (13 chars)
@@ -106,7 +161,7 @@ public class DrugControllerTest {
         def.setManufacturer("Alnylam");
 
         when(summaryRepo.findTop10ByOrderByAveragePriceDesc()).thenReturn(Flux.just(summary));
-        when(definitionRepo.findByNdc("71336100101")).thenReturn(Mono.just(def));
+        when(definitionRepo.findByNdcIn(List.of("71336100101"))).thenReturn(Flux.just(def));
 
         webTestClient.get()
                 .uri("/api/v2/drugs/expensive")
@@ -134,6 +189,7 @@ public class DrugControllerTest {
         summary.setNdc("00002150680");
         summary.setAveragePrice(100.0);
 
+        when(definitionRepo.findByNdc("00002150680")).thenReturn(Mono.empty());
         when(definitionRepo.findByNdcContaining("00002150680")).thenReturn(Flux.just(def));
         when(summaryRepo.findByNdc("00002150680")).thenReturn(Mono.just(summary));
 
@@ -145,4 +201,157 @@ public class DrugControllerTest {
                 .jsonPath("$.definition.name").isEqualTo("MOUNJARO")
                 .jsonPath("$.summary.averagePrice").isEqualTo(100.0);
     }
+
+    @Test
+    public void testPricesNegotiateCborAndSmile() throws Exception {
+        DrugPrice ca = new DrugPrice();
+        ca.setNdc("00169413013");
+        ca.setState("CA");
+        ca.setPrice(950.0);
+        when(priceRepo.findByNdc("00169413013")).thenReturn(Flux.just(ca));
+        CodecCustomizer codecs = new CodecConfig().binaryCodecs(Jackson2ObjectMapperBuilder.json());
+        WebTestClient client = WebTestClient.bindToController(drugController)
+                .httpMessageCodecs(codecs::customize)
+                .build();
+
+        for (ObjectMapper mapper : List.of(new ObjectMapper(new CBORFactory()), new ObjectMapper(new SmileFactory()))) {
+            MediaType type = mapper.getFactory() instanceof CBORFactory
+                    ? MediaType.APPLICATION_CBOR
+                    : CodecConfig.SMILE;
+            byte[] body = client.get()
+                    .uri("/api/v2/drugs/00169413013/prices")
+                    .accept(type)
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectHeader().contentTypeCompatibleWith(type)
+                    .expectBody(byte[].class)
+                    .returnResult()
+                    .getResponseBody();
+            List<Map<String, Object>> prices = mapper.readValue(body, new TypeReference<>() {
+            });
+            assertEquals("CA", prices.get(0).get("state"));
+            assertEquals(950.0, prices.get(0).get("price"));
+        }
+    }
+
+    @Test
+    public void testPricesAreServedFromCacheAndFilteredByState() {
+        DrugPrice ca = new DrugPrice();
+        ca.setNdc("00169413013");
+        ca.setState("CA");
+        ca.setPrice(950.0);
+        DrugPrice tx = new DrugPrice();
+        tx.setNdc("00169413013");
+        tx.setState("TX");
+        tx.setPrice(910.0);
+        AtomicInteger queries = new AtomicInteger();
+        when(priceRepo.findByNdc("00169413013"))
+                .thenReturn(Flux.defer(() -> {
+                    queries.incrementAndGet();
+                    return Flux.just(ca, tx);
+                }));
+
+        webTestClient.get()
+                .uri("/api/v2/drugs/00169413013/prices")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(DrugPrice.class)
+                .hasSize(2);
+        webTestClient.get()
+                .uri("/api/v2/drugs/00169413013/prices?states=TX")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(DrugPrice.class)
+                .hasSize(1)
+                .contains(tx);
+
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void testHistoryIsOneCachedReadFilteredByState() {
+        PriceHistory history = new PriceHistory();
+        history.setId("00169413013");
+        history.setNdc("00169413013");
+        history.record("TX", 2024, 1, 900.0)
+                .record("CA", 2023, 4, 940.0)
+                .record("CA", 2024, 1, 950.0);
+        AtomicInteger queries = new AtomicInteger();
+        when(historyRepo.findById("00169413013"))
+                .thenReturn(Mono.defer(() -> {
+                    queries.incrementAndGet();
+                    return Mono.just(history);
+                }));
+        when(historyRepo.findById("00002150680")).thenReturn(Mono.empty());
+
+        webTestClient.get()
+                .uri("/api/v2/drugs/00169413013/history")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.series.length()").isEqualTo(2)
+                .jsonPath("$.series[0].state").isEqualTo("CA")
+                .jsonPath("$.series[0].periods[1]").isEqualTo(20241)
+                .jsonPath("$.series[0].prices[1]").isEqualTo(950.0);
+        webTestClient.get()
+                .uri("/api/v2/drugs/00169413013/history?states=TX")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.series.length()").isEqualTo(1)
+                .jsonPath("$.series[0].state").isEqualTo("TX");
+        webTestClient.get()
+                .uri("/api/v2/drugs/00002150680/history")
+                .exchange()
+                .expectStatus().isNotFound();
+
+        assertEquals(1, queries.get());
+        assertEquals(2, history.getSeries().size());
+    }
+
+    @Test
+    public void testLeaderboardServedFromMemoryWithEtag() {
+        Leaderboard.Entry entry = new Leaderboard.Entry();
+        entry.setNdc("71336100101");
+        entry.setName("GIVLAARI");
+        entry.setManufacturer("Alnylam");
+        entry.setAveragePrice(42426.46);
+        Leaderboard board = new Leaderboard();
+        board.setId(Leaderboard.id(LeaderboardService.EXPENSIVE, LeaderboardService.STATE, "CA"));
+        board.setEntries(List.of(entry));
+        when(leaderboards.current()).thenReturn(
+                new LeaderboardService.Snapshot("\"lb-3-0\"", Map.of(board.getId(), board)));
+
+        webTestClient.get()
+                .uri("/api/v2/drugs/expensive?state=ca")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"lb-3-0\"")
+                .expectBody()
+                .jsonPath("$[0].name").isEqualTo("GIVLAARI")
+                .jsonPath("$[0].state").doesNotExist();
+        webTestClient.get()
+                .uri("/api/v2/drugs/expensive?state=CA")
+                .header("If-None-Match", "\"lb-3-0\"")
+                .exchange()
+                .expectStatus().isNotModified();
+
+        org.mockito.Mockito.verifyNoInteractions(summaryRepo, definitionRepo);
+    }
+
+    @Test
+    public void testUnknownNdcIsRejectedWithoutQueries() {
+        when(ndcFilter.mightExist("99999999999")).thenReturn(false);
+
+        webTestClient.get()
+                .uri("/api/v2/drugs/99999999999/summary")
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.get()
+                .uri("/api/v2/drugs/99999999999/prices")
+                .exchange()
+                .expectStatus().isNotFound();
+
+        org.mockito.Mockito.verifyNoInteractions(summaryRepo, definitionRepo, priceRepo);
+    }
 }
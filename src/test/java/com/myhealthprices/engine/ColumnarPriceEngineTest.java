@@ -0,0 +1,93 @@
+package com.myhealthprices.engine;
+
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugPrice;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.PriceHistory;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ColumnarPriceEngineTest {
+
+    @Test
+    public void testLatestQuarterPricePerState() {
+        ColumnarPriceEngine engine = new ColumnarPriceEngine();
+        engine.append("00002150680", "CA", 2024, 1, "MOUNJARO", "00002", "80", 10, 100);
+        engine.append("00002150680", "CA", 2024, 3, "MOUNJARO", "00002", "80", 10, 300);
+        engine.append("00002150680", "CA", 2024, 2, "MOUNJARO", "00002", "80", 10, 200);
+        engine.append("00002150680", "TX", 2023, 4, "MOUNJARO", "00002", "80", 4, 100);
+        // Zero units never produce a price, even in a later quarter
+        engine.append("00002150680", "TX", 2024, 1, "MOUNJARO", "00002", "80", 0, 100);
+
+        Map<String, DrugPrice> prices = engine.compute().prices()
+                .collect(Collectors.toMap(DrugPrice::getState, p -> p));
+
+        assertEquals(2, prices.size());
+        assertEquals(30.0, prices.get("CA").getPrice());
+        assertEquals(2024, prices.get("CA").getYear());
+        assertEquals(3, prices.get("CA").getQuarter());
+        assertEquals(25.0, prices.get("TX").getPrice());
+        assertEquals(2023, prices.get("TX").getYear());
+        assertEquals(4, prices.get("TX").getQuarter());
+    }
+
+    @Test
+    public void testHistoryKeepsEveryQuarterPerState() {
+        ColumnarPriceEngine engine = new ColumnarPriceEngine();
+        engine.append("00002150680", "TX", 2024, 1, "MOUNJARO", "00002", "80", 4, 100);
+        engine.append("00002150680", "CA", 2024, 2, "MOUNJARO", "00002", "80", 10, 200);
+        engine.append("00002150680", "CA", 2023, 4, "MOUNJARO", "00002", "80", 10, 100);
+        // Rows of one quarter are pooled by amount and units
+        engine.append("00002150680", "CA", 2024, 2, "MOUNJARO", "00002", "80", 30, 400);
+        engine.append("00002150680", "TX", 2024, 2, "MOUNJARO", "00002", "80", 0, 100);
+        engine.append("99999000001", "CA", 2024, 1, "NOPRICE", "99999", "1", 0, 0);
+
+        List<PriceHistory> history = engine.compute().history().toList();
+
+        assertEquals(1, history.size());
+        PriceHistory h = history.get(0);
+        assertEquals("00002150680", h.getId());
+        assertEquals(List.of("CA", "TX"), h.getSeries().stream().map(PriceHistory.Series::getState).toList());
+        assertEquals(List.of(20234, 20242), h.getSeries().get(0).getPeriods());
+        assertEquals(List.of(10.0, 15.0), h.getSeries().get(0).getPrices());
+        assertEquals(List.of(20241), h.getSeries().get(1).getPeriods());
+        assertEquals(List.of(25.0), h.getSeries().get(1).getPrices());
+    }
+
+    @Test
+    public void testSummariesAndDefinitions() {
+        ColumnarPriceEngine engine = new ColumnarPriceEngine();
+        engine.append("71336100101", "CA", 2024, 1, "GIVLAARI", "71336", "1", 1, 40000);
+        engine.append("71336100101", "NY", 2024, 1, "GIVLAARI-X", "71336", "1", 1, 44000);
+        engine.append("71336100101", "TX", 2024, 1, "GIVLAARI", "71336", "1", 2, 84000);
+        engine.append("99999000001", "CA", 2024, 1, "NOPRICE", "99999", "1", 0, 0);
+
+        PriceTables tables = engine.compute();
+
+        List<DrugSummary> summaries = tables.summaries().toList();
+        assertEquals(1, summaries.size());
+        DrugSummary summary = summaries.get(0);
+        assertEquals("71336100101", summary.getNdc());
+        assertEquals(42000.0, summary.getAveragePrice());
+        assertEquals(40000.0, summary.getMinPrice());
+        assertEquals(44000.0, summary.getMaxPrice());
+        assertEquals(3, summary.getTotalStates());
+        assertEquals(42000.0, summary.getMedianPrice());
+        assertEquals(40000.0, summary.getP10Price());
+        assertEquals(44000.0, summary.getP90Price());
+
+        Map<String, DrugDefinition> defs = tables.definitions(labeler -> "Labeler " + labeler)
+                .collect(Collectors.toMap(DrugDefinition::getNdc, d -> d));
+        assertEquals(2, defs.size());
+        assertEquals("GIVLAARI", defs.get("71336100101").getName());
+        assertEquals("Labeler 71336", defs.get("71336100101").getManufacturer());
+        assertEquals("NOPRICE", defs.get("99999000001").getName());
+        assertNull(defs.get("99999000001").getStrength());
+    }
+}
@@ -0,0 +1,132 @@
+package com.myhealthprices.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myhealthprices.config.ExportProperties;
+import com.myhealthprices.service.DataVersions;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DataExportTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Mock
+    private DataVersions dataVersions;
+
+    private DataExport dataExport;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        ExportProperties properties = new ExportProperties();
+        properties.setRowsPerBuffer(2);
+        dataExport = new DataExport(mongoTemplate, dataVersions, new ObjectMapper(), properties);
+        when(dataVersions.active()).thenReturn(4L);
+        when(mongoTemplate.collectionExists("drug_prices_v4")).thenReturn(Mono.just(true));
+        when(mongoTemplate.collectionExists("drug_prices_v3")).thenReturn(Mono.just(false));
+    }
+
+    @Test
+    public void testCsvPageEndsWithCursorPinnedToItsVersion() {
+        List<Document> rows = List.of(
+                price("00002150680", "CA", 9.5),
+                price("00002150680", "TX", 8.0),
+                new Document("ndc", "00002150681").append("state", "NY").append("price", 7.25)
+                        .append("lastUpdated", Date.from(Instant.parse("2024-06-01T00:00:00Z"))));
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        when(mongoTemplate.find(queries.capture(), eq(Document.class), eq("drug_prices_v4")))
+                .thenReturn(Flux.just(rows.get(2), price("00002150682", "CA", 1.0)))
+                .thenReturn(Flux.fromIterable(rows));
+
+        DataExport.Export export = dataExport.export(ExportDataset.PRICES, ExportFormat.CSV, Set.of("CA", "TX", "NY"),
+                "00002", null, 3).block();
+
+        assertEquals(4, export.version());
+        assertEquals("""
+                ndc,state,price,year,quarter,lastUpdated
+                00002150680,CA,9.5,2024,1,
+                00002150680,TX,8.0,2024,1,
+                00002150681,NY,7.25,,,2024-06-01T00:00:00Z
+                """, text(export.body()));
+        ExportCursor next = ExportCursor.decode(export.nextCursor(), ExportDataset.PRICES);
+        assertEquals(new ExportCursor(ExportDataset.PRICES, 4, 0, "00002150681", "NY"), next);
+        Document filter = queries.getAllValues().get(1).getQueryObject();
+        assertEquals(3, queries.getAllValues().get(1).getLimit());
+        assertEquals(List.of("ndc", "state"), List.copyOf(queries.getAllValues().get(1).getSortObject().keySet()));
+        assertEquals(2, filter.getList("$and", Document.class).size());
+    }
+
+    @Test
+    public void testResumesFromCursorAndRejectsStaleOrForeignOnes() {
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("drug_prices_v4")))
+                .thenReturn(Flux.just(price("00002150680", "TX", 8.0)));
+        String cursor = new ExportCursor(ExportDataset.PRICES, 4, 0, "00002150680", "CA").encode();
+
+        DataExport.Export export = dataExport.export(ExportDataset.PRICES, ExportFormat.NDJSON, Set.of(), null,
+                cursor, null).block();
+
+        assertNull(export.nextCursor());
+        assertEquals("{\"ndc\":\"00002150680\",\"state\":\"TX\",\"price\":8.0,\"year\":2024,\"quarter\":1}\n",
+                text(export.body()));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(Document.class), eq("drug_prices_v4"));
+        assertEquals(2, query.getValue().getQueryObject().getList("$and", Document.class).get(0)
+                .getList("$or", Document.class).size());
+
+        String stale = new ExportCursor(ExportDataset.PRICES, 3, 0, "00002150680", "CA").encode();
+        assertThrows(IllegalStateException.class, () -> dataExport.export(ExportDataset.PRICES, ExportFormat.CSV,
+                Set.of(), null, stale, null).block());
+        assertThrows(IllegalArgumentException.class, () -> dataExport.export(ExportDataset.SUMMARIES,
+                ExportFormat.CSV, Set.of(), null, cursor, null).block());
+        assertThrows(IllegalArgumentException.class, () -> dataExport.export(ExportDataset.SUMMARIES,
+                ExportFormat.CSV, Set.of("CA"), null, null, null).block());
+        assertThrows(IllegalArgumentException.class, () -> dataExport.export(ExportDataset.PRICES,
+                ExportFormat.CSV, Set.of(), ".*", null, null).block());
+    }
+
+    @Test
+    public void testCursorFromBeforeAnInPlaceImportIsRejected() {
+        String cursor = new ExportCursor(ExportDataset.PRICES, 4, 0, "00002150680", "CA").encode();
+        // A quarterly import merged into version 4 after the first page
+        when(dataVersions.revision()).thenReturn(1L);
+
+        assertThrows(IllegalStateException.class, () -> dataExport.export(ExportDataset.PRICES, ExportFormat.CSV,
+                Set.of(), null, cursor, null).block());
+    }
+
+    private static Document price(String ndc, String state, double price) {
+        return new Document("ndc", ndc).append("state", state).append("price", price)
+                .append("year", 2024).append("quarter", 1);
+    }
+
+    private static String text(Flux<DataBuffer> body) {
+        return body.map(buffer -> buffer.toString(StandardCharsets.UTF_8))
+                .collectList()
+                .map(parts -> String.join("", parts))
+                .block();
+    }
+}
@@ -0,0 +1,225 @@
+package com.myhealthprices.importer;
+
+import com.myhealthprices.config.ImportProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ImportPipelineTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testEveryValidRowIsWrittenOnceAndRejectsAreCounted() throws Exception {
+        StringBuilder csv = new StringBuilder("Utilization Type,State,NDC,Labeler Code,Product Code,Package Size,"
+                + "Year,Quarter,Suppression Used,Product Name,Units Reimbursed,Total Amount Reimbursed\n");
+        for (int i = 0; i < 5000; i++) {
+            csv.append("FFSU,CA,").append(i).append(",00002,1506,80,").append(i % 100 == 0 ? "bad" : "2024")
+                    .append(",1,false,DRUG,1,1\n");
+        }
+        Path file = dir.resolve("rows.csv");
+        Files.writeString(file, csv);
+
+        ImportProperties props = new ImportProperties();
+        props.setChunkBytes(4096);
+        props.setParseWorkers(3);
+        props.setWriteWorkers(2);
+        props.setBatchSize(100);
+        props.setMinBatchSize(50);
+        props.setMaxBatchSize(1000);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ImportMetrics metrics = new ImportMetrics(registry);
+        ImportPipeline pipeline = new ImportPipeline(props, metrics);
+
+        Set<Integer> written = ConcurrentHashMap.newKeySet();
+        try (SdudFileReader reader = SdudFileReader.open(file)) {
+            pipeline.<Integer>run(reader,
+                    (row, columns) -> {
+                        try {
+                            row.integer(columns.year());
+                            return row.integer(columns.ndc());
+                        } catch (NumberFormatException e) {
+                            return null;
+                        }
+                    },
+                    batch -> Mono.fromRunnable(() -> batch.forEach(n -> assertTrue(written.add(n)))))
+                    .block(Duration.ofSeconds(30));
+        }
+
+        ImportMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(4950, written.size());
+        assertEquals(4950, snapshot.rowsParsed());
+        assertEquals(4950, snapshot.rowsWritten());
+        assertEquals(50, snapshot.rowsRejected());
+        assertEquals(0, snapshot.queueDepth());
+        assertFalse(snapshot.running());
+        // Writes were instant, so the batch size grew past its starting point
+        assertTrue(snapshot.batchSize() > 100);
+
+        assertEquals(4950, registry.get("sdud.import.rows").tag("outcome", "written").counter().count());
+        assertEquals(snapshot.batchesWritten(), registry.get("sdud.import.write").timer().count());
+        assertTrue(registry.get("sdud.import.parse").timer().count() > 1);
+    }
+
+    @Test
+    public void testResumeSkipsCheckpointedChunksAndRecordsTheRest() throws Exception {
+        StringBuilder csv = new StringBuilder("Utilization Type,State,NDC,Labeler Code,Product Code,Package Size,"
+                + "Year,Quarter,Suppression Used,Product Name,Units Reimbursed,Total Amount Reimbursed\n");
+        Map<Integer, Long> offsets = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            offsets.put(i, (long) csv.length());
+            csv.append("FFSU,CA,").append(i).append(",00002,1506,80,2024,").append(i < 1000 ? 1 : 2)
+                    .append(",false,DRUG,1,1\n");
+        }
+        Path file = dir.resolve("rows.csv");
+        Files.writeString(file, csv);
+
+        ImportProperties props = new ImportProperties();
+        props.setChunkBytes(2048);
+        props.setBatchSize(64);
+        props.setMinBatchSize(16);
+        ImportPipeline pipeline = new ImportPipeline(props, new ImportMetrics(new SimpleMeterRegistry()));
+
+        Map<Integer, Long> recorded = new ConcurrentHashMap<>();
+        Set<Integer> written = ConcurrentHashMap.newKeySet();
+        try (SdudFileReader reader = SdudFileReader.open(file)) {
+            List<SdudChunk> chunks = reader.chunks(props.getChunkBytes());
+            ImportCheckpoint checkpoint = new ImportCheckpoint() {
+                @Override
+                public boolean resuming() {
+                    return true;
+                }
+
+                // Every other chunk was written by an earlier attempt
+                @Override
+                public boolean chunkDone(int index) {
+                    return index % 2 == 0;
+                }
+
+                @Override
+                public Mono<Void> recordChunk(SdudChunk chunk, long rows) {
+                    // Recorded only after all of the chunk's rows were written
+                    return Mono.fromRunnable(() -> assertNull(recorded.put(chunk.index(), rows)));
+                }
+
+                @Override
+                public boolean stagingDone() {
+                    return false;
+                }
+
+                @Override
+                public Mono<Void> recordStaged() {
+                    return Mono.empty();
+                }
+            };
+            // Quarter 2 only, so some chunks have nothing to write and must still be recorded
+            pipeline.<Integer>run(reader, (row, c) -> row.integer(c.quarter()) == 2,
+                    (row, c) -> row.integer(c.ndc()),
+                    batch -> Mono.fromRunnable(() -> batch.forEach(written::add)), checkpoint)
+                    .block(Duration.ofSeconds(30));
+
+            for (SdudChunk chunk : chunks) {
+                if (chunk.index() % 2 == 0) {
+                    assertFalse(recorded.containsKey(chunk.index()));
+                    continue;
+                }
+                long expected = 0;
+                for (int ndc : written) {
+                    if (offsets.get(ndc) >= chunk.start() && offsets.get(ndc) < chunk.end())
+                        expected++;
+                }
+                assertEquals(expected, recorded.get(chunk.index()), "chunk " + chunk.index());
+            }
+            assertTrue(recorded.values().stream().anyMatch(rows -> rows == 0));
+            assertEquals(written.size(), recorded.values().stream().mapToLong(Long::longValue).sum());
+        }
+    }
+
+    @Test
+    public void testStalledWriterStopsChunksBeingPulled() throws Exception {
+        StringBuilder csv = new StringBuilder("Utilization Type,State,NDC,Labeler Code,Product Code,Package Size,"
+                + "Year,Quarter,Suppression Used,Product Name,Units Reimbursed,Total Amount Reimbursed\n");
+        for (int i = 0; i < 5000; i++) {
+            csv.append("FFSU,CA,").append(i).append(",00002,1506,80,2024,1,false,DRUG,1,1\n");
+        }
+        Path file = dir.resolve("rows.csv");
+        Files.writeString(file, csv);
+
+        ImportProperties props = new ImportProperties();
+        props.setChunkBytes(4096);
+        props.setParseWorkers(2);
+        props.setWriteWorkers(1);
+        props.setBatchSize(50);
+        props.setMinBatchSize(50);
+        ImportPipeline pipeline = new ImportPipeline(props, new ImportMetrics(new SimpleMeterRegistry()));
+
+        AtomicInteger pulled = new AtomicInteger();
+        CountDownLatch writing = new CountDownLatch(1);
+        try (SdudFileReader reader = SdudFileReader.open(file)) {
+            assertTrue(reader.chunks(props.getChunkBytes()).size() > 40);
+            SdudSource counted = new SdudSource() {
+                @Override
+                public Flux<SdudChunk> read(int targetBytes, IntSupplier nextIndex, IntPredicate done) {
+                    return reader.read(targetBytes, nextIndex, done).doOnNext(chunk -> pulled.incrementAndGet());
+                }
+
+                @Override
+                public long inputSize() {
+                    return reader.inputSize();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            // The first write never completes
+            Disposable run = pipeline.<Integer>run(counted, (row, c) -> row.integer(c.ndc()),
+                            batch -> Mono.<Void>never().doOnSubscribe(x -> writing.countDown()))
+                    .subscribe();
+            try {
+                assertTrue(writing.await(10, TimeUnit.SECONDS));
+                Thread.sleep(500);
+                // The parse workers' chunks plus the one being re-batched and one queued behind it
+                assertTrue(pulled.get() <= props.getParseWorkers() + 2, "pulled " + pulled.get() + " chunks");
+            } finally {
+                run.dispose();
+            }
+        }
+    }
+
+    @Test
+    public void testBatchSizeHalvesWhenWritesAreSlow() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, 100, 5000, Duration.ofMillis(100));
+        sizer.record(1000, Duration.ofMillis(300).toNanos());
+        assertEquals(500, sizer.current());
+        sizer.record(500, Duration.ofMillis(300).toNanos());
+        sizer.record(250, Duration.ofMillis(300).toNanos());
+        sizer.record(125, Duration.ofMillis(300).toNanos());
+        assertEquals(100, sizer.current());
+        sizer.record(100, Duration.ofMillis(10).toNanos());
+        assertEquals(150, sizer.current());
+    }
+}
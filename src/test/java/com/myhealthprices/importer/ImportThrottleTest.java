@@ -0,0 +1,69 @@
+package com.myhealthprices.importer;
+
+import com.myhealthprices.config.WorkloadProperties;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ImportThrottleTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ImportThrottle throttle = new ImportThrottle(registry, new WorkloadProperties(), Schedulers.immediate());
+
+    private Timer route(String uri) {
+        return Timer.builder("http.server.requests").tag("uri", uri).publishPercentiles(0.99).register(registry);
+    }
+
+    @Test
+    public void testPauseGrowsWhileQueriesAreSlowAndIsCapped() {
+        Timer prices = route("/api/v2/drugs/{ndc}/prices");
+        for (int i = 0; i < 100; i++)
+            prices.record(Duration.ofMillis(600));
+
+        throttle.adjust();
+        assertEquals(Duration.ofMillis(125), throttle.delay());
+        throttle.adjust();
+        assertEquals(Duration.ofMillis(250), throttle.delay());
+        for (int i = 0; i < 10; i++)
+            throttle.adjust();
+        assertEquals(Duration.ofSeconds(2), throttle.delay());
+        assertEquals(2000.0, registry.get("import.throttle.delay").gauge().value());
+    }
+
+    @Test
+    public void testPauseShrinksToNothingOnceQueriesRecover() {
+        Timer prices = route("/api/v2/drugs/{ndc}/prices");
+        for (int i = 0; i < 100; i++)
+            prices.record(Duration.ofMillis(600));
+        throttle.adjust();
+        throttle.adjust();
+        assertEquals(Duration.ofMillis(250), throttle.delay());
+
+        registry.clear();
+        Timer recovered = route("/api/v2/drugs/{ndc}/prices");
+        for (int i = 0; i < 100; i++)
+            recovered.record(Duration.ofMillis(20));
+        throttle.adjust();
+        assertEquals(Duration.ofMillis(125), throttle.delay());
+        throttle.adjust();
+        assertEquals(Duration.ZERO, throttle.delay());
+        StepVerifier.create(throttle.pace()).verifyComplete();
+    }
+
+    @Test
+    public void testOtherRoutesAreIgnored() {
+        Timer admin = route("/api/v2/admin/import");
+        for (int i = 0; i < 100; i++)
+            admin.record(Duration.ofSeconds(5));
+
+        throttle.adjust();
+        assertEquals(0, throttle.queryP99Nanos());
+        assertEquals(Duration.ZERO, throttle.delay());
+    }
+}
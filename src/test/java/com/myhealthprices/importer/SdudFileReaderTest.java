@@ -0,0 +1,122 @@
+package com.myhealthprices.importer;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SdudFileReaderTest {
+
+    private static final String HEADER = "Utilization Type,State,NDC,Labeler Code,Product Code,Package Size,Year,"
+            + "Quarter,Suppression Used,Product Name,Units Reimbursed,Number of Prescriptions,"
+            + "Total Amount Reimbursed,Medicaid Amount Reimbursed,Non Medicaid Amount Reimbursed";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testParsesFieldsLikeCommonsCsv() throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        lines.add("FFSU,CA,00002150680,00002,1506,80,2024,1,false,MOUNJARO,12.5,3,4567.89,4000.1,567.79");
+        lines.add("MCOU,TX,00002150680,00002,1506,80,2024,2,true,\"MOUNJARO, \"\"PEN\"\"\",0.001,,1e3,,");
+        lines.add("FFSU,NY,00069015001,00069,0150,01,2023,4,false,LIPITOR,,,,,");
+        Path file = write(String.join("\r\n", lines) + "\r\n");
+
+        List<CSVRecord> expected;
+        try (CSVParser parser = new CSVParser(new FileReader(file.toFile()),
+                CSVFormat.DEFAULT.builder().setHeader().build())) {
+            expected = parser.getRecords();
+        }
+
+        List<String[]> actual = new ArrayList<>();
+        try (SdudFileReader reader = SdudFileReader.open(file)) {
+            SdudColumns c = reader.columns();
+            for (SdudChunk chunk : reader.chunks(16)) {
+                chunk.forEachRow(row -> actual.add(new String[] {
+                        row.text(c.state()), row.text(c.productName()),
+                        String.valueOf(row.integer(c.quarter())), String.valueOf(row.bool(c.suppressionUsed())),
+                        String.valueOf(row.number(c.unitsReimbursed())),
+                        String.valueOf(row.number(c.totalAmountReimbursed())) }));
+            }
+        }
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            CSVRecord r = expected.get(i);
+            String[] a = actual.get(i);
+            assertEquals(r.get("State"), a[0]);
+            assertEquals(r.get("Product Name"), a[1]);
+            assertEquals(r.get("Quarter"), a[2]);
+            assertEquals(String.valueOf(Boolean.parseBoolean(r.get("Suppression Used"))), a[3]);
+            assertEquals(String.valueOf(parseDouble(r.get("Units Reimbursed"))), a[4]);
+            assertEquals(String.valueOf(parseDouble(r.get("Total Amount Reimbursed"))), a[5]);
+        }
+    }
+
+    @Test
+    public void testChunksAreLineAlignedAndCoverEveryRow() throws Exception {
+        StringBuilder csv = new StringBuilder(HEADER).append('\n');
+        for (int i = 0; i < 1000; i++) {
+            csv.append("FFSU,CA,").append(String.format("%011d", i)).append(",00002,1506,80,2024,1,false,DRUG")
+                    .append(i).append(',').append(i).append(".25,1,").append(i * 2).append(".5,0,0\n");
+        }
+        Path file = write(csv.toString());
+
+        try (SdudFileReader reader = SdudFileReader.open(file)) {
+            List<SdudChunk> chunks = reader.chunks(1000);
+            assertTrue(chunks.size() > 1);
+            assertEquals(reader.size(), chunks.get(chunks.size() - 1).end());
+
+            SdudColumns c = reader.columns();
+            double[] units = new double[1000];
+            int total = 0;
+            for (SdudChunk chunk : chunks) {
+                total += chunk.forEachRow(row -> units[Integer.parseInt(row.text(c.ndc()))] = row.number(c.unitsReimbursed()));
+            }
+            assertEquals(1000, total);
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i + 0.25, units[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedNumbersThrowAndMissingColumnsAreRejected() throws Exception {
+        Path file = write(HEADER + "\nFFSU,CA,00002150680,00002,1506,80,2024,Q1,false,X,abc,0,1,0,0\nFFSU,CA\n");
+
+        try (SdudFileReader reader = SdudFileReader.open(file)) {
+            SdudColumns c = reader.columns();
+            List<Boolean> failures = new ArrayList<>();
+            reader.chunks(1 << 20).get(0).forEachRow(row -> {
+                assertThrows(RuntimeException.class, () -> row.integer(c.quarter()));
+                assertThrows(RuntimeException.class, () -> row.number(c.unitsReimbursed()));
+                failures.add(true);
+            });
+            assertEquals(2, failures.size());
+        }
+        assertThrows(IllegalArgumentException.class, () -> SdudFileReader.open(write("State,NDC\nCA,1\n")));
+    }
+
+    private Path write(String content) throws Exception {
+        Path file = Files.createTempFile(dir, "sdud", ".csv");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static double parseDouble(String val) {
+        return val == null || val.isEmpty() ? 0.0 : Double.parseDouble(val);
+    }
+}
@@ -0,0 +1,183 @@
+package com.myhealthprices.importer;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SdudInputTest {
+
+    private static final String HEADER = "Utilization Type,State,NDC,Labeler Code,Product Code,Package Size,Year,"
+            + "Quarter,Suppression Used,Product Name,Units Reimbursed,Number of Prescriptions,"
+            + "Total Amount Reimbursed,Medicaid Amount Reimbursed,Non Medicaid Amount Reimbursed";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testCompressedFilesReadLikeThePlainFile() throws Exception {
+        String csv = csv(0, 2000, 1);
+        Path plain = write("plain.csv", csv.getBytes(StandardCharsets.UTF_8));
+        Path gzip = write("sdud.csv.gz", gzip(csv));
+        Path zstd = write("sdud.csv.zst", zstd(csv));
+
+        List<String> expected = rows(List.of(plain), 4096);
+        assertEquals(2000, expected.size());
+        assertEquals(expected, rows(List.of(gzip), 4096));
+        assertEquals(expected, rows(List.of(zstd), 4096));
+
+        // Progress is reported against the compressed size on disk
+        try (SdudInput input = SdudInput.open(List.of(zstd), Schedulers.boundedElastic())) {
+            List<SdudChunk> chunks = input.read(4096, counter()).collectList().block();
+            assertTrue(chunks.size() > 1);
+            assertEquals(Files.size(zstd), chunks.stream().mapToLong(SdudChunk::inputLength).sum());
+            assertEquals(Files.size(zstd), input.inputSize());
+        }
+    }
+
+    @Test
+    public void testStreamChunksAreDeterministicAndLineAligned() throws Exception {
+        // One line longer than the chunk target has to be read whole
+        String csv = csv(0, 500, 1) + "FFSU,CA,99999999999,00002,1506,80,2024,1,false," + "X".repeat(3000)
+                + ",1,1,1,0,0\n" + csv(500, 500, 1).substring(HEADER.length() + 1);
+        Path gzip = write("sdud.csv.gz", gzip(csv));
+
+        List<long[]> first = boundaries(gzip);
+        List<long[]> second = boundaries(gzip);
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i)[0], second.get(i)[0]);
+            assertEquals(first.get(i)[1], second.get(i)[1]);
+            if (i > 0)
+                assertEquals(first.get(i - 1)[1], first.get(i)[0]);
+        }
+        assertEquals(csv.length(), first.get(first.size() - 1)[1]);
+        assertEquals(1001, rows(List.of(gzip), 1024).size());
+    }
+
+    @Test
+    public void testFilesAreReadInOrderWithOneChunkNumbering() throws Exception {
+        Path y2023 = write("sdud-2023.csv", csv(0, 300, 2023).getBytes(StandardCharsets.UTF_8));
+        Path y2024 = write("sdud-2024.csv.gz", gzip(csv(0, 300, 2024)));
+
+        try (SdudInput input = SdudInput.open(List.of(y2023, y2024), Schedulers.boundedElastic())) {
+            List<SdudChunk> chunks = input.read(2048, counter()).collectList().block();
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                SdudChunk chunk = chunks.get(i);
+                assertEquals(i, chunk.index());
+                SdudColumns c = chunk.columns();
+                chunk.forEachRow(row -> {
+                    assertEquals(2023 + row.source(), row.integer(c.year()));
+                    keys.add(row.source() + ":" + row.offset());
+                });
+            }
+            assertEquals(600, keys.size());
+            assertEquals(600, keys.stream().distinct().count());
+            assertEquals(0, chunks.get(0).source());
+            assertEquals(1, chunks.get(chunks.size() - 1).source());
+
+            // Decompressed chunks are released once parsed
+            SdudChunk last = chunks.get(chunks.size() - 1);
+            assertThrows(IllegalStateException.class, () -> last.forEachRow(row -> { }));
+        }
+    }
+
+    @Test
+    public void testDoneChunksAreSkippedWithoutShiftingTheRest() throws Exception {
+        String csv = csv(0, 500, 2024) + "FFSU,CA,99999999999,00002,1506,80,2024,1,false," + "X".repeat(3000)
+                + ",1,1,1,0,0\n" + csv(500, 500, 2024).substring(HEADER.length() + 1);
+        Path plain = write("sdud-2023.csv", csv(0, 300, 2023).getBytes(StandardCharsets.UTF_8));
+        Path gzip = write("sdud-2024.csv.gz", gzip(csv));
+
+        List<String> all = chunks(List.of(plain, gzip), index -> false);
+        List<String> resumed = chunks(List.of(plain, gzip), index -> index % 3 != 2);
+
+        List<String> expected = all.stream().filter(chunk -> Integer.parseInt(chunk.split("\\|")[0]) % 3 == 2)
+                .toList();
+        assertTrue(expected.size() > 5);
+        assertEquals(expected, resumed);
+    }
+
+    // index|source|start|end|inputLength|rows of each chunk read
+    private List<String> chunks(List<Path> files, IntPredicate done) throws IOException {
+        List<String> chunks = new ArrayList<>();
+        try (SdudInput input = SdudInput.open(files, Schedulers.boundedElastic())) {
+            for (SdudChunk chunk : input.read(1024, counter(), done).toIterable()) {
+                chunks.add(chunk.index() + "|" + chunk.source() + "|" + chunk.start() + "|" + chunk.end() + "|"
+                        + chunk.inputLength() + "|" + chunk.forEachRow(row -> { }));
+            }
+        }
+        return chunks;
+    }
+
+    private List<String> rows(List<Path> files, int chunkBytes) throws IOException {
+        List<String> rows = new ArrayList<>();
+        try (SdudInput input = SdudInput.open(files, Schedulers.boundedElastic())) {
+            for (SdudChunk chunk : input.read(chunkBytes, counter()).toIterable()) {
+                SdudColumns c = chunk.columns();
+                chunk.forEachRow(row -> rows.add(row.offset() + "|" + row.text(c.ndc()) + "|"
+                        + row.number(c.unitsReimbursed())));
+            }
+        }
+        return rows;
+    }
+
+    private List<long[]> boundaries(Path file) throws IOException {
+        try (SdudInput input = SdudInput.open(List.of(file), Schedulers.boundedElastic())) {
+            return input.read(1024, counter()).map(chunk -> new long[] { chunk.start(), chunk.end() })
+                    .collectList().block();
+        }
+    }
+
+    private static IntSupplier counter() {
+        int[] next = new int[1];
+        return () -> next[0]++;
+    }
+
+    private static String csv(int from, int rows, int year) {
+        StringBuilder csv = new StringBuilder(HEADER).append('\n');
+        for (int i = from; i < from + rows; i++) {
+            csv.append("FFSU,CA,").append(String.format("%011d", i)).append(",00002,1506,80,").append(year)
+                    .append(",1,false,DRUG").append(i).append(',').append(i).append(".25,1,").append(i * 2)
+                    .append(".5,0,0\n");
+        }
+        return csv.toString();
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zstd(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ZstdOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private Path write(String name, byte[] content) throws IOException {
+        return Files.write(dir.resolve(name), content);
+    }
+}
@@ -0,0 +1,107 @@
+package com.myhealthprices.importer;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.FileReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Throughput comparison between the commons-csv import path and {@link SdudFileReader}.
+ * Opt-in, since it needs a real SDUD file:
+ *
+ * mvn test -Dtest=SdudReaderThroughputTest -Dsdud.file=medicaid-sdud-2024-full.csv
+ */
+@EnabledIfSystemProperty(named = "sdud.file", matches = ".+")
+public class SdudReaderThroughputTest {
+
+    @Test
+    public void compareWithCommonsCsv() throws Exception {
+        Path file = Paths.get(System.getProperty("sdud.file"));
+        double megabytes = Files.size(file) / (1024.0 * 1024.0);
+
+        long start = System.nanoTime();
+        long commonsRows = 0;
+        double commonsTotal = 0;
+        try (CSVParser parser = new CSVParser(new FileReader(file.toFile()),
+                CSVFormat.DEFAULT.builder().setHeader().build())) {
+            for (CSVRecord row : parser) {
+                row.get("NDC");
+                row.get("State");
+                Integer.parseInt(row.get("Year"));
+                Integer.parseInt(row.get("Quarter"));
+                row.get("Product Name");
+                commonsTotal += parse(row.get("Units Reimbursed")) + parse(row.get("Total Amount Reimbursed"));
+                commonsRows++;
+            }
+        }
+        report("commons-csv", commonsRows, megabytes, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        long mappedRows = 0;
+        double mappedTotal = 0;
+        try (SdudFileReader reader = SdudFileReader.open(file)) {
+            SdudColumns c = reader.columns();
+            DoubleAdder sum = new DoubleAdder();
+            for (SdudChunk chunk : reader.chunks(8 * 1024 * 1024)) {
+                mappedRows += chunk.forEachRow(row -> {
+                    row.text(c.ndc());
+                    row.text(c.state());
+                    row.integer(c.year());
+                    row.integer(c.quarter());
+                    row.text(c.productName());
+                    sum.add(row.number(c.unitsReimbursed()) + row.number(c.totalAmountReimbursed()));
+                });
+            }
+            mappedTotal = sum.sum();
+        }
+        report("mapped, 1 thread", mappedRows, megabytes, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        LongAdder parallelRows = new LongAdder();
+        try (SdudFileReader reader = SdudFileReader.open(file)) {
+            SdudColumns c = reader.columns();
+            List<SdudChunk> chunks = reader.chunks(8 * 1024 * 1024);
+            chunks.parallelStream().forEach(chunk -> {
+                try {
+                    parallelRows.add(chunk.forEachRow(row -> {
+                        row.text(c.ndc());
+                        row.text(c.state());
+                        row.integer(c.year());
+                        row.integer(c.quarter());
+                        row.text(c.productName());
+                        row.number(c.unitsReimbursed());
+                        row.number(c.totalAmountReimbursed());
+                    }));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        report("mapped, parallel chunks", parallelRows.sum(), megabytes, System.nanoTime() - start);
+
+        assertEquals(commonsRows, mappedRows);
+        assertEquals(commonsRows, parallelRows.sum());
+        assertEquals(commonsTotal, mappedTotal, Math.abs(commonsTotal) * 1e-9);
+    }
+
+    private static void report(String name, long rows, double megabytes, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-24s %,12d rows %8.2f s %12.0f rows/s %8.1f MB/s%n",
+                name, rows, seconds, rows / seconds, megabytes / seconds);
+    }
+
+    private static double parse(String val) {
+        return val == null || val.isEmpty() ? 0.0 : Double.parseDouble(val);
+    }
+}
@@ -0,0 +1,28 @@
+package com.myhealthprices.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testNoFalseNegativesAndBoundedFalsePositives() {
+        BloomFilter bloom = BloomFilter.create(100_000, 0.01);
+        for (long ndc = 0; ndc < 100_000; ndc++)
+            bloom.put(2_000_000_000L + ndc * 7);
+
+        BloomFilter copy = BloomFilter.fromBytes(bloom.toBytes(), bloom.hashes(), bloom.inserted());
+        for (long ndc = 0; ndc < 100_000; ndc++)
+            assertTrue(copy.mightContain(2_000_000_000L + ndc * 7));
+
+        int falsePositives = 0;
+        for (long ndc = 0; ndc < 100_000; ndc++) {
+            if (copy.mightContain(90_000_000_000L + ndc))
+                falsePositives++;
+        }
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+        assertEquals(0.01, copy.expectedFpp(), 0.002);
+    }
+}
@@ -0,0 +1,55 @@
+package com.myhealthprices.search;
+
+import com.myhealthprices.model.DrugDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NdcIndexTest {
+
+    private final NdcIndex index = NdcIndex.build(List.of(
+            def("00002150680", "MOUNJARO"),
+            def("00002150661", "MOUNJARO"),
+            def("00002077101", "HUMALOG"),
+            def("00169413013", "OZEMPIC"),
+            def("12345678901", "SOMETHING"),
+            def("bad", "IGNORED")));
+
+    @Test
+    public void testExactLookupDoesNotMatchOtherProducts() {
+        assertEquals("OZEMPIC", index.exact("00169413013").orElseThrow().getName());
+        assertTrue(index.exact("0016941301").isEmpty());
+        assertTrue(index.exact("00002150699").isEmpty());
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void testTenDigitAndHyphenatedFormsNormalize() {
+        // 4-4-2 -> 5-4-2
+        assertEquals("OZEMPIC", index.exact("0169-4130-13").orElseThrow().getName());
+        assertEquals("OZEMPIC", index.exact("0169413013").orElseThrow().getName());
+        // 5-3-2 -> 5-4-2
+        assertEquals("HUMALOG", index.exact("00002-771-01").orElseThrow().getName());
+        assertEquals(List.of("00169413013", "01694013013", "01694130103"),
+                NdcIndex.normalize("0169413013"));
+    }
+
+    @Test
+    public void testLabelerAndProductPrefix() {
+        assertEquals(3, index.prefix("00002", 10).size());
+        assertEquals(List.of("00002150661", "00002150680"),
+                index.prefix("000021506", 10).stream().map(DrugDefinition::getNdc).toList());
+        assertEquals(1, index.prefix("00002", 1).size());
+        assertTrue(index.prefix("99", 10).isEmpty());
+    }
+
+    private static DrugDefinition def(String ndc, String name) {
+        DrugDefinition d = new DrugDefinition();
+        d.setNdc(ndc);
+        d.setName(name);
+        return d;
+    }
+}
@@ -0,0 +1,55 @@
+package com.myhealthprices.search;
+
+import com.myhealthprices.model.DrugDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SearchSegmentTest {
+
+    private final SearchSegment segment = SearchSegment.build(List.of(
+            def("00071015523", "ATORVASTATIN CALCIUM", "Pfizer"),
+            def("00002150680", "MOUNJARO", "Eli Lilly and Company"),
+            def("00169413013", "OZEMPIC", "Novo Nordisk"),
+            def("00378395077", "ATENOLOL", "Mylan (Viatris)"),
+            def("00093505698", "ACETAMINOPHEN-CODEINE", "Teva Pharmaceuticals")));
+
+    @Test
+    public void testPrefixAutocompleteRanksNameStartFirst() {
+        List<String> names = names(segment.search(SearchSegment.normalize("ato"), 10));
+        assertEquals("ATORVASTATIN CALCIUM", names.get(0));
+        assertEquals(1, names.size());
+
+        assertEquals(List.of("ATENOLOL", "ATORVASTATIN CALCIUM"),
+                names(segment.search(SearchSegment.normalize("at"), 10)));
+    }
+
+    @Test
+    public void testToleratesTypos() {
+        assertEquals("ATORVASTATIN CALCIUM", names(segment.search(SearchSegment.normalize("atorvastatn"), 10)).get(0));
+        assertEquals("OZEMPIC", names(segment.search(SearchSegment.normalize("ozempik"), 10)).get(0));
+    }
+
+    @Test
+    public void testMatchesManufacturerAndPunctuationInsensitive() {
+        assertEquals(List.of("OZEMPIC"), names(segment.search(SearchSegment.normalize("novo nordisk"), 10)));
+        assertEquals("ACETAMINOPHEN-CODEINE",
+                names(segment.search(SearchSegment.normalize("Acetaminophen codeine"), 10)).get(0));
+        assertTrue(segment.search(SearchSegment.normalize("(.*"), 10).isEmpty());
+    }
+
+    private static List<String> names(List<SearchSegment.Hit> hits) {
+        return hits.stream().map(hit -> hit.definition().getName()).toList();
+    }
+
+    private static DrugDefinition def(String ndc, String name, String manufacturer) {
+        DrugDefinition d = new DrugDefinition();
+        d.setNdc(ndc);
+        d.setName(name);
+        d.setManufacturer(manufacturer);
+        return d;
+    }
+}
@@ -0,0 +1,37 @@
+package com.myhealthprices.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BatchJoinTest {
+
+    @Test
+    public void testOneLookupPerWindowInLeftOrder() {
+        AtomicInteger lookups = new AtomicInteger();
+        Function<Set<Integer>, Mono<Map<Integer, String>>> lookup = keys -> Mono.fromSupplier(() -> {
+            lookups.incrementAndGet();
+            // Odd keys have no match
+            return keys.stream().filter(k -> k % 2 == 0)
+                    .collect(Collectors.toMap(k -> k, k -> "even" + k));
+        });
+
+        List<String> joined = BatchJoin.join(Flux.range(0, 10).map(i -> 9 - i), i -> i, lookup,
+                (i, match) -> match != null ? match : "odd" + i, 4)
+                .collectList()
+                .block();
+
+        assertEquals(List.of("odd9", "even8", "odd7", "even6", "odd5", "even4", "odd3", "even2", "odd1", "even0"),
+                joined);
+        assertEquals(3, lookups.get());
+    }
+}
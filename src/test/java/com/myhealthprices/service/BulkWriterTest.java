@@ -0,0 +1,89 @@
+package com.myhealthprices.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.MongoSocketWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.config.ImportProperties;
+import com.myhealthprices.config.WorkloadProperties;
+import com.myhealthprices.importer.ImportThrottle;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BulkWriterTest {
+
+    @Mock
+    private BatchMongoTemplate mongoTemplate;
+    @Mock
+    private MongoCollection<Document> collection;
+
+    private BulkWriter bulkWriter;
+    private List<Document> docs;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.getCollection("drug_prices")).thenReturn(Mono.just(collection));
+        when(collection.withWriteConcern(any(WriteConcern.class))).thenReturn(collection);
+        when(collection.getNamespace()).thenReturn(new MongoNamespace("db", "drug_prices"));
+        when(collection.insertOne(any(Document.class)))
+                .thenReturn(Mono.just(InsertOneResult.acknowledged(new BsonObjectId())));
+        ImportProperties props = new ImportProperties();
+        props.setWriteRetries(0);
+        bulkWriter = new BulkWriter(mongoTemplate, props,
+                new ImportThrottle(new SimpleMeterRegistry(), new WorkloadProperties(), Schedulers.immediate()));
+        docs = IntStream.range(0, 4).mapToObj(i -> new Document("ndc", String.valueOf(i))).toList();
+    }
+
+    @Test
+    public void testOnlyFailedDocumentsAreRetried() {
+        MongoBulkWriteException error = new MongoBulkWriteException(
+                BulkWriteResult.acknowledged(2, 0, 0, 0, Collections.emptyList(), Collections.emptyList()),
+                List.of(new BulkWriteError(11000, "dup", new BsonDocument(), 1),
+                        new BulkWriteError(91, "shutdown", new BsonDocument(), 3)),
+                null, new ServerAddress(), Set.of());
+        when(collection.insertMany(anyList(), any(InsertManyOptions.class))).thenReturn(Mono.error(error));
+
+        assertEquals(3L, bulkWriter.insert("drug_prices", docs).block());
+        // The duplicate is already stored; only the document that hit a real error is re-sent
+        verify(collection, times(1)).insertOne(docs.get(3));
+        verify(collection, never()).insertOne(docs.get(1));
+    }
+
+    @Test
+    public void testWholeChunkFallsBackToSingleInsertsOnTransportError() {
+        when(collection.insertMany(anyList(), any(InsertManyOptions.class)))
+                .thenReturn(Mono.error(new MongoSocketWriteException("reset", new ServerAddress(), null)));
+
+        assertEquals(4L, bulkWriter.insert("drug_prices", docs).block());
+        verify(collection, times(4)).insertOne(any(Document.class));
+    }
+}
@@ -1,16 +1,52 @@
 package com.myhealthprices.service;
 
+import com.mongodb.WriteConcern;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.result.InsertManyResult;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.config.ImportProperties;
+import com.myhealthprices.config.WorkloadProperties;
+import com.myhealthprices.importer.ImportMetrics;
+import com.myhealthprices.importer.ImportPipeline;
+import com.myhealthprices.importer.ImportThrottle;
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugPrice;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.PriceHistory;
 import com.myhealthprices.repository.DrugDefinitionRepository;
 import com.myhealthprices.repository.DrugPriceRepository;
 import com.myhealthprices.repository.DrugSummaryRepository;
 import com.myhealthprices.repository.MedicaidDrugUtilizationRepository;
+import com.myhealthprices.search.NdcFilter;
+import com.myhealthprices.snapshot.DataSnapshots;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
 
 public class DataImportServiceTest {
 
@@ -23,14 +59,36 @@ public class DataImportServiceTest {
     @Mock
     private DrugSummaryRepository summaryRepo;
     @Mock
-    private ReactiveMongoTemplate mongoTemplate;
+    private BatchMongoTemplate mongoTemplate;
+
+    @Mock
+    private DataVersions dataVersions;
+    @Mock
+    private LeaderboardService leaderboards;
+    @Mock
+    private NdcFilter ndcFilter;
+    @Mock
+    private DataSnapshots snapshots;
+    @Mock
+    private ManufacturerService manufacturers;
 
+    @Mock
+    private MongoCollection<Document> definitionCollection;
+
+    private ImportProperties importProperties;
     private DataImportService dataImportService;
 
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
-        dataImportService = new DataImportService(rawRepo, definitionRepo, priceRepo, summaryRepo, mongoTemplate);
+        importProperties = new ImportProperties();
+        ImportMetrics importMetrics = new ImportMetrics(new SimpleMeterRegistry());
+        ImportThrottle throttle = new ImportThrottle(new SimpleMeterRegistry(), new WorkloadProperties(),
+                Schedulers.immediate());
+        dataImportService = new DataImportService(rawRepo, definitionRepo, priceRepo, summaryRepo, mongoTemplate,
+                importProperties, new ImportPipeline(importProperties, importMetrics), importMetrics,
+                new BulkWriter(mongoTemplate, importProperties, throttle), dataVersions, leaderboards, ndcFilter,
+                snapshots, new LabelerRegistry(""), manufacturers, throttle, Schedulers.immediate());
     }
 
     @Test
@@ -47,4 +105,99 @@ public class DataImportServiceTest {
         assertEquals("Labeler 99999", dataImportService.getManufacturerName("99999"));
         assertEquals("Unknown", dataImportService.getManufacturerName(null));
     }
+
+    @Test
+    public void testDefinitionsStreamInBoundedBatchesWithManufacturer() {
+        importProperties.setWriteBatchSize(100);
+        AtomicInteger emitted = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Document> sample = new ArrayList<>();
+
+        Flux<DrugDefinition> defs = Flux.range(0, 2500).map(i -> {
+            DrugDefinition d = new DrugDefinition();
+            d.setNdc(String.format("%011d", i));
+            d.setLabeler(i % 2 == 0 ? "00002" : null);
+            maxInFlight.accumulateAndGet(emitted.incrementAndGet() - written.get(), Math::max);
+            return d;
+        });
+        when(dataVersions.nextVersion()).thenReturn(Mono.just(7L));
+        when(leaderboards.build(7L)).thenReturn(Mono.empty());
+        when(manufacturers.build(7L)).thenReturn(Mono.empty());
+        when(ndcFilter.build(7L)).thenReturn(Mono.empty());
+        when(snapshots.write(eq(7L), anyLong())).thenReturn(Mono.empty());
+        when(dataVersions.publish(7L)).thenReturn(Mono.empty());
+        when(mongoTemplate.getCollection("drug_definitions_v7")).thenReturn(Mono.just(definitionCollection));
+        when(definitionCollection.withWriteConcern(any(WriteConcern.class))).thenReturn(definitionCollection);
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("medicaid_drug_utilization"), eq(DrugDefinition.class)))
+                .thenReturn(defs);
+        when(mongoTemplate.aggregate(any(Aggregation.class), anyString(), eq(DrugPrice.class)))
+                .thenReturn(Flux.empty());
+        when(mongoTemplate.aggregate(any(Aggregation.class), anyString(), eq(DrugSummary.class)))
+                .thenReturn(Flux.empty());
+        when(mongoTemplate.aggregate(any(Aggregation.class), anyString(), eq(PriceHistory.class)))
+                .thenReturn(Flux.empty());
+        when(mongoTemplate.find(any(Query.class), eq(PriceHistory.class), eq("price_history_v7")))
+                .thenReturn(Flux.empty());
+        when(definitionCollection.insertMany(anyList(), any(InsertManyOptions.class))).thenAnswer(inv -> {
+            List<Document> batch = inv.getArgument(0);
+            if (sample.isEmpty())
+                sample.addAll(batch);
+            return Mono.fromCallable(() -> {
+                written.addAndGet(batch.size());
+                return InsertManyResult.acknowledged(Map.of());
+            });
+        });
+
+        dataImportService.optimizeData().block();
+
+        assertEquals(2500, written.get());
+        assertTrue(maxInFlight.get() <= 500, "in flight: " + maxInFlight.get());
+        assertEquals("Eli Lilly and Company", sample.get(0).getString("manufacturer"));
+        assertNull(sample.get(1).get("manufacturer"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPriceMergeKeepsNewerQuarter() {
+        Document merge = DataImportService.priceMergeStage("drug_prices").get("$merge", Document.class);
+        assertEquals("drug_prices", merge.get("into"));
+        assertEquals(List.of("ndc", "state"), merge.get("on"));
+        assertEquals("insert", merge.get("whenNotMatched"));
+
+        Document replace = ((List<Document>) merge.get("whenMatched")).get(0).get("$replaceWith", Document.class);
+        Document cond = replace.get("$cond", Document.class);
+        List<Document> compared = (List<Document>) cond.get("if", Document.class).get("$gte");
+        assertEquals("$$new.quarter", ((List<?>) compared.get(0).get("$add")).get(1));
+        assertEquals("$quarter", ((List<?>) compared.get(1).get("$add")).get(1));
+        assertEquals("$$ROOT", cond.get("else"));
+    }
+
+    @Test
+    public void testHistoryMergeFoldsQuarterIntoExistingSeries() {
+        PriceHistory existing = new PriceHistory();
+        existing.setId("00002150680");
+        existing.setNdc("00002150680");
+        existing.record("CA", 2023, 4, 10.0).record("CA", 2024, 2, 12.0);
+        Document slice = new Document("_id", "00002150680").append("points", List.of(
+                new Document("state", "CA").append("year", 2024).append("quarter", 1).append("price", 11.0),
+                new Document("state", "AK").append("year", 2024).append("quarter", 1).append("price", 9.0)));
+        Instant runStart = Instant.parse("2024-09-01T00:00:00Z");
+
+        PriceHistory merged = DataImportService.mergeHistory(slice, existing, runStart);
+
+        assertEquals(List.of("AK", "CA"), merged.getSeries().stream().map(PriceHistory.Series::getState).toList());
+        assertEquals(List.of(20234, 20241, 20242), merged.getSeries().get(1).getPeriods());
+        assertEquals(List.of(10.0, 11.0, 12.0), merged.getSeries().get(1).getPrices());
+        assertEquals(runStart, merged.getLastUpdated());
+
+        // Re-importing a quarter replaces its price instead of adding a point
+        slice.put("points", List.of(new Document("state", "CA").append("year", 2024).append("quarter", 2)
+                .append("price", 13.0)));
+        PriceHistory created = DataImportService.mergeHistory(slice, null, runStart);
+        assertEquals("00002150680", created.getNdc());
+        assertEquals(List.of(13.0), created.getSeries().get(0).getPrices());
+        DataImportService.mergeHistory(slice, merged, runStart);
+        assertEquals(List.of(10.0, 11.0, 13.0), merged.getSeries().get(1).getPrices());
+    }
 }
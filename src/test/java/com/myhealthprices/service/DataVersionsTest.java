@@ -0,0 +1,202 @@
+package com.myhealthprices.service;
+
+import com.myhealthprices.config.BatchMongoTemplate;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DataVersionsTest {
+
+    @Mock
+    private BatchMongoTemplate mongoTemplate;
+    @Mock
+    private MongoConverter converter;
+    @Mock
+    private ReactiveIndexOperations indexOps;
+    @Mock
+    private ApplicationEventPublisher events;
+
+    private DataVersions dataVersions;
+    // The data_versions pointer as Mongo would hold it
+    private Document pointer;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        dataVersions = new DataVersions(mongoTemplate, events, Duration.ofSeconds(30));
+        // Entities resolve their collection through @dataVersions, as in the application context
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBean("dataVersions", DataVersions.class, () -> dataVersions);
+        context.refresh();
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setApplicationContext(context);
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+        when(converter.getMappingContext()).thenAnswer(inv -> mappingContext);
+        when(mongoTemplate.indexOps(anyString())).thenReturn(indexOps);
+        when(indexOps.ensureIndex(any(IndexDefinition.class))).thenReturn(Mono.just("index"));
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Document.class), eq(DataVersions.COLLECTION)))
+                .thenAnswer(inv -> upsertPointer(inv.getArgument(0), inv.getArgument(1)));
+        when(mongoTemplate.getCollectionNames()).thenReturn(Flux.empty());
+        when(mongoTemplate.dropCollection(anyString())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    public void testVersionZeroIsTheUnversionedCollection() {
+        assertEquals("drug_prices", DataVersions.collection("drug_prices", 0));
+        assertEquals("drug_prices_v42", DataVersions.collection("drug_prices", 42));
+        assertEquals("drug_prices", dataVersions.collection("drug_prices"));
+    }
+
+    @Test
+    public void testEmptyShadowCollectionIsNotPublished() {
+        when(mongoTemplate.estimatedCount("drug_definitions_v3")).thenReturn(Mono.just(10L));
+        when(mongoTemplate.estimatedCount("drug_prices_v3")).thenReturn(Mono.just(0L));
+        when(mongoTemplate.estimatedCount("drug_summaries_v3")).thenReturn(Mono.just(10L));
+        when(mongoTemplate.estimatedCount("leaderboards_v3")).thenReturn(Mono.just(10L));
+
+        assertThrows(IllegalStateException.class, () -> dataVersions.publish(3).block());
+        assertEquals(0, dataVersions.active());
+        verify(events, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    public void testRollbackWithoutPreviousVersionFails() {
+        assertThrows(IllegalStateException.class, () -> dataVersions.rollback().block());
+    }
+
+    @Test
+    public void testPublishAfterTouchOnUnversionedData() {
+        when(mongoTemplate.estimatedCount(anyString())).thenReturn(Mono.just(10L));
+
+        dataVersions.touch().block();
+        assertEquals(0L, pointer.get("version"));
+        dataVersions.publish(5).block();
+
+        assertEquals(5, dataVersions.active());
+        assertEquals(0, dataVersions.previous());
+        assertEquals(1, dataVersions.revision());
+    }
+
+    @Test
+    public void testFirstPublishOverPointerWithoutVersion() {
+        when(mongoTemplate.estimatedCount(anyString())).thenReturn(Mono.just(10L));
+        pointer = new Document("_id", "active").append("revision", 1L);
+
+        dataVersions.publish(5).block();
+
+        assertEquals(5, dataVersions.active());
+        assertEquals(1, dataVersions.revision());
+    }
+
+    @Test
+    public void testPublishSwitchesAndRetiresOlderVersions() {
+        when(mongoTemplate.estimatedCount(anyString())).thenReturn(Mono.just(10L));
+        dataVersions.publish(2).block();
+        dataVersions.publish(3).block();
+
+        when(mongoTemplate.getCollectionNames()).thenReturn(Flux.just("drug_prices", "drug_prices_v2",
+                "drug_prices_v3", "drug_prices_v4", "drug_prices_v5", "import_jobs"));
+        dataVersions.publish(4).block();
+
+        assertEquals(4, dataVersions.active());
+        assertEquals(3, dataVersions.previous());
+        assertEquals("drug_prices_v4", dataVersions.collection("drug_prices"));
+        verify(mongoTemplate).dropCollection("drug_prices");
+        verify(mongoTemplate).dropCollection("drug_prices_v2");
+        verify(mongoTemplate, never()).dropCollection("drug_prices_v3");
+        verify(mongoTemplate, never()).dropCollection("drug_prices_v4");
+        // A shadow build newer than the published version may still be running
+        verify(mongoTemplate, never()).dropCollection("drug_prices_v5");
+        verify(mongoTemplate, never()).dropCollection("import_jobs");
+    }
+
+    @Test
+    public void testPublishAfterRollbackRetiresTheRolledBackVersion() {
+        when(mongoTemplate.estimatedCount(anyString())).thenReturn(Mono.just(10L));
+        dataVersions.publish(2).block();
+        dataVersions.publish(3).block();
+        dataVersions.rollback().block();
+        assertEquals(2, dataVersions.active());
+        assertEquals(3, dataVersions.previous());
+
+        when(mongoTemplate.getCollectionNames()).thenReturn(Flux.just("drug_prices_v2", "drug_prices_v3",
+                "leaderboards_v3", "drug_prices_v4"));
+        dataVersions.publish(4).block();
+
+        assertEquals(4, dataVersions.active());
+        assertEquals(2, dataVersions.previous());
+        verify(mongoTemplate).dropCollection("drug_prices_v3");
+        verify(mongoTemplate).dropCollection("leaderboards_v3");
+        verify(mongoTemplate, never()).dropCollection("drug_prices_v2");
+        verify(mongoTemplate, never()).dropCollection("drug_prices_v4");
+    }
+
+    @Test
+    public void testConcurrentSwitchIsRejected() {
+        when(mongoTemplate.estimatedCount(anyString())).thenReturn(Mono.just(10L));
+        dataVersions.publish(2).block();
+        // Another instance publishes 3 before this one has seen it
+        pointer.put("version", 3L);
+
+        assertThrows(IllegalStateException.class, () -> dataVersions.publish(4).block());
+        assertEquals(3L, pointer.get("version"));
+    }
+
+    // Applies an upsert the way Mongo does: a filter that misses the existing pointer tries to insert a second one
+    private Mono<Document> upsertPointer(Query query, UpdateDefinition update) {
+        Document filter = query.getQueryObject();
+        Document changes = ((Update) update).getUpdateObject();
+        boolean matches = pointer != null && filter.entrySet().stream()
+                .allMatch(e -> matches(pointer.get(e.getKey()), e.getValue()));
+        if (pointer != null && !matches)
+            return Mono.error(new DuplicateKeyException("E11000 duplicate key _id: " + filter.get("_id")));
+        Document doc = matches ? pointer : new Document("_id", filter.get("_id"));
+        if (!matches)
+            doc.putAll(changes.get("$setOnInsert", new Document()));
+        doc.putAll(changes.get("$set", new Document()));
+        for (Map.Entry<String, Object> inc : changes.get("$inc", new Document()).entrySet()) {
+            Number current = doc.get(inc.getKey(), 0L);
+            doc.put(inc.getKey(), current.longValue() + ((Number) inc.getValue()).longValue());
+        }
+        pointer = doc;
+        return Mono.just(new Document(doc));
+    }
+
+    private static boolean matches(Object value, Object condition) {
+        if (condition instanceof Document operator && operator.containsKey("$in"))
+            return operator.getList("$in", Object.class).contains(value);
+        return Objects.equals(value, condition);
+    }
+}
@@ -0,0 +1,226 @@
+package com.myhealthprices.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.config.ImportProperties;
+import com.myhealthprices.importer.ImportCheckpoint;
+import com.myhealthprices.model.ImportJob;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ImportJobServiceTest {
+
+    @Mock
+    private BatchMongoTemplate mongoTemplate;
+    @Mock
+    private DataImportService importService;
+    @Mock
+    private ReactiveIndexOperations indexOps;
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private ImportProperties importProperties;
+    private ImportJobService jobs;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        file = Files.writeString(dir.resolve("sdud.csv"), "header\nrow\n");
+        importProperties = new ImportProperties();
+        importProperties.setFile(file.toString());
+        jobs = new ImportJobService(mongoTemplate, importService, importProperties);
+
+        when(mongoTemplate.indexOps(ImportJob.class)).thenReturn(indexOps);
+        when(indexOps.ensureIndex(any(IndexDefinition.class))).thenReturn(Mono.just("one_running_job"));
+        when(mongoTemplate.findById(any(), eq(ImportJob.class))).thenReturn(Mono.empty());
+        when(mongoTemplate.exists(any(Query.class), eq(ImportJob.class))).thenReturn(Mono.just(false));
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(ImportJob.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        when(importService.importData(any(ImportCheckpoint.class))).thenReturn(Mono.empty());
+    }
+
+    @AfterEach
+    public void teardown() {
+        jobs.stop();
+    }
+
+    @Test
+    public void testSecondJobIsRejectedWhileOneIsRunning() {
+        when(mongoTemplate.insert(any(ImportJob.class)))
+                .thenAnswer(inv -> {
+                    ImportJob job = inv.getArgument(0);
+                    job.setId("job-1");
+                    return Mono.just(job);
+                })
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key one_running_job")));
+
+        ImportJob first = jobs.submit(ImportJob.Kind.FULL, null, null).block();
+        assertEquals(ImportJob.Status.RUNNING, first.getStatus());
+        assertEquals(ImportJob.LOCK, first.getLock());
+        assertEquals(file.toString(), first.getFile());
+        ImportCheckpoint checkpoint = startedCheckpoint();
+        assertFalse(checkpoint.resuming());
+
+        assertThrows(IllegalStateException.class, () -> jobs.submit(ImportJob.Kind.FULL, null, null).block());
+        verify(importService).importData(any(ImportCheckpoint.class));
+    }
+
+    @Test
+    public void testResumeContinuesFromTheCheckpoint() throws Exception {
+        ArgumentCaptor<Query> claimed = ArgumentCaptor.forClass(Query.class);
+        when(mongoTemplate.findAndModify(claimed.capture(), any(UpdateDefinition.class), eq(ImportJob.class)))
+                .thenReturn(Mono.just(interrupted(ImportJob.Status.FAILED)));
+
+        ImportJob job = jobs.resume("job-1").block();
+
+        assertEquals(ImportJob.Status.RUNNING, job.getStatus());
+        assertEquals(2, job.getAttempts());
+        assertEquals(300, job.getBytesAtStart());
+        assertEquals(List.of(ImportJob.Status.FAILED, ImportJob.Status.CANCELLED),
+                claimed.getValue().getQueryObject().get("status", Document.class).get("$in"));
+        ImportCheckpoint checkpoint = startedCheckpoint();
+        assertTrue(checkpoint.resuming());
+        assertTrue(checkpoint.chunkDone(2));
+        assertFalse(checkpoint.chunkDone(3));
+    }
+
+    @Test
+    public void testResumeRestartsWhenInputFilesChanged() throws Exception {
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), eq(ImportJob.class)))
+                .thenReturn(Mono.just(interrupted(ImportJob.Status.CANCELLED)));
+        // The file grew since the checkpoint was taken
+        Files.writeString(file, "header\nrow\nrow\n");
+
+        ImportJob job = jobs.resume("job-1").block();
+
+        assertEquals(Files.size(file), job.getFileSize());
+        assertTrue(job.getCompletedChunks().isEmpty());
+        ImportCheckpoint checkpoint = startedCheckpoint();
+        assertFalse(checkpoint.resuming());
+        assertFalse(checkpoint.chunkDone(0));
+        Document progress = progressUpdate().get("$set", Document.class);
+        assertEquals(List.of(), progress.get("completedChunks"));
+        assertEquals(0L, progress.get("bytesStaged"));
+    }
+
+    @Test
+    public void testResumeRestartsWhenAnotherJobRanSince() throws Exception {
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), eq(ImportJob.class)))
+                .thenReturn(Mono.just(interrupted(ImportJob.Status.FAILED)));
+        // A newer job restaged the raw collection
+        when(mongoTemplate.exists(any(Query.class), eq(ImportJob.class))).thenReturn(Mono.just(true));
+
+        jobs.resume("job-1").block();
+
+        assertFalse(startedCheckpoint().resuming());
+    }
+
+    @Test
+    public void testResumeIsRejectedWhileAnotherJobIsRunning() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), eq(ImportJob.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key one_running_job")));
+
+        assertThrows(IllegalStateException.class, () -> jobs.resume("job-1").block());
+        verify(importService, never()).importData(any(ImportCheckpoint.class));
+    }
+
+    @Test
+    public void testResumeOfRunningJobIsRejected() throws Exception {
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), eq(ImportJob.class)))
+                .thenReturn(Mono.empty());
+        when(mongoTemplate.findById("job-1", ImportJob.class))
+                .thenReturn(Mono.just(interrupted(ImportJob.Status.RUNNING)));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> jobs.resume("job-1").block());
+        assertTrue(e.getMessage().contains("RUNNING"));
+        verify(importService, never()).importData(any(ImportCheckpoint.class));
+    }
+
+    @Test
+    public void testStaleRunningJobIsClaimed() throws Exception {
+        importProperties.setJobStaleAfter(Duration.ofSeconds(4));
+        ImportJob stale = interrupted(ImportJob.Status.RUNNING);
+        stale.setOwner("dead-instance");
+        ArgumentCaptor<Query> claimed = ArgumentCaptor.forClass(Query.class);
+        when(mongoTemplate.findAndModify(claimed.capture(), any(UpdateDefinition.class), eq(ImportJob.class)))
+                .thenReturn(Mono.just(stale))
+                .thenReturn(Mono.empty());
+
+        jobs.startResuming();
+
+        ArgumentCaptor<ImportCheckpoint> checkpoint = ArgumentCaptor.forClass(ImportCheckpoint.class);
+        verify(importService, timeout(2000)).importData(checkpoint.capture());
+        assertTrue(checkpoint.getValue().resuming());
+        Document query = claimed.getAllValues().get(0).getQueryObject();
+        assertEquals(ImportJob.Status.RUNNING, query.get("status"));
+        assertTrue(query.get("heartbeatAt", Document.class).containsKey("$lt"));
+    }
+
+    // A job that staged three chunks of the current file before it stopped
+    private ImportJob interrupted(ImportJob.Status status) throws Exception {
+        ImportJob job = new ImportJob();
+        job.setId("job-1");
+        job.setKind(ImportJob.Kind.FULL);
+        job.setStatus(status);
+        job.setPhase(ImportJob.Phase.STAGING);
+        job.setAttempts(1);
+        job.setFile(file.toString());
+        job.setFileSize(Files.size(file));
+        job.setFileModified(Instant.ofEpochMilli(file.toFile().lastModified()));
+        job.setChunkBytes(importProperties.getChunkBytes());
+        job.setCompletedChunks(new ArrayList<>(List.of(0, 1, 2)));
+        job.setBytesStaged(300);
+        job.setRowsStaged(30);
+        job.setStartedAt(Instant.now().minus(Duration.ofHours(1)));
+        job.setHeartbeatAt(Instant.now().minus(Duration.ofHours(1)));
+        return job;
+    }
+
+    private ImportCheckpoint startedCheckpoint() {
+        ArgumentCaptor<ImportCheckpoint> checkpoint = ArgumentCaptor.forClass(ImportCheckpoint.class);
+        verify(importService).importData(checkpoint.capture());
+        return checkpoint.getValue();
+    }
+
+    // The claim's write of the (possibly reset) checkpoint, before the job's own updates
+    private Document progressUpdate() {
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, atLeastOnce())
+                .updateFirst(any(Query.class), updates.capture(), eq(ImportJob.class));
+        return ((Update) updates.getAllValues().get(0)).getUpdateObject();
+    }
+}
@@ -0,0 +1,57 @@
+package com.myhealthprices.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LabelerRegistryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testFileIsReloadedWhenItChanges() throws Exception {
+        Path file = Files.writeString(dir.resolve("labelers.csv"), """
+                # test table
+                labeler,manufacturer
+                00002, Eli Lilly and Company
+                99999,Acme Generics
+                """);
+        LabelerRegistry labelers = new LabelerRegistry(file.toString());
+        assertEquals(2, labelers.size());
+        assertEquals("Eli Lilly and Company", labelers.manufacturer("00002"));
+        assertEquals("Acme Generics", labelers.manufacturer("99999"));
+        assertEquals("Labeler 00069", labelers.manufacturer("00069"));
+
+        Files.writeString(file, "labeler,manufacturer\n99999,Acme Pharma\n00069,Pfizer\n");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(60)));
+        labelers.refresh();
+        assertEquals("Acme Pharma", labelers.manufacturer("99999"));
+        assertEquals("Pfizer", labelers.manufacturer("00069"));
+        assertEquals("Labeler 00002", labelers.manufacturer("00002"));
+
+        // A broken edit is rejected and the last good table keeps serving
+        Files.writeString(file, "labeler,manufacturer\n99999,Acme Pharma\n99999,Someone Else\n");
+        assertThrows(UncheckedIOException.class, labelers::reload);
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(120)));
+        labelers.refresh();
+        assertEquals("Acme Pharma", labelers.manufacturer("99999"));
+    }
+
+    @Test
+    public void testBundledTableMatchesCodesExactly() {
+        LabelerRegistry labelers = new LabelerRegistry("");
+        assertEquals("Pharmacia & Upjohn", labelers.manufacturer("00013"));
+        assertEquals("Pfizer", labelers.manufacturer("13"));
+        assertEquals("Novartis / Sandoz", labelers.manufacturer("1167"));
+        assertEquals("Unknown", labelers.manufacturer(null));
+    }
+}
@@ -0,0 +1,190 @@
+package com.myhealthprices.service;
+
+import com.mongodb.client.result.DeleteResult;
+import com.myhealthprices.config.BatchMongoTemplate;
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.Leaderboard;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LeaderboardServiceTest {
+
+    @Mock
+    private BatchMongoTemplate mongoTemplate;
+    @Mock
+    private DataVersions dataVersions;
+
+    private LeaderboardService leaderboards;
+    private final List<Leaderboard> saved = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        leaderboards = new LeaderboardService(mongoTemplate, dataVersions, 2);
+
+        when(mongoTemplate.find(any(Query.class), eq(DrugDefinition.class), eq("drug_definitions_v3")))
+                .thenReturn(Flux.just(definition("N1", "Alpha", "Pfizer"), definition("N2", "Beta", "Pfizer"),
+                        definition("N3", "Gamma", "Merck")));
+        // N4 has no definition
+        when(mongoTemplate.find(any(Query.class), eq(DrugSummary.class), eq("drug_summaries_v3")))
+                .thenReturn(Flux.just(summary("N1", 5.0), summary("N2", 20.0), summary("N3", 10.0),
+                        summary("N4", 1.0)));
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("drug_prices_v3"), eq(Document.class)))
+                .thenReturn(Flux.just(
+                        new Document("_id", "CA")
+                                .append("top", List.of(price("N2", 30.0), price("N1", 8.0)))
+                                .append("bottom", List.of(price("N3", 2.0), price("N1", 8.0))),
+                        new Document("_id", null)
+                                .append("top", List.of(price("N3", 4.0)))
+                                .append("bottom", List.of(price("N3", 4.0)))));
+        when(mongoTemplate.save(any(Leaderboard.class), eq("leaderboards_v3")))
+                .thenAnswer(inv -> {
+                    saved.add(inv.getArgument(0));
+                    return Mono.just(inv.getArgument(0));
+                });
+        when(mongoTemplate.remove(any(Query.class), eq("leaderboards_v3")))
+                .thenReturn(Mono.just(DeleteResult.acknowledged(0)));
+    }
+
+    @Test
+    public void testBuildSplitsCheapAndExpensive() {
+        leaderboards.build(3).block();
+        Map<String, Leaderboard> boards = byId();
+
+        assertEquals(List.of("N2", "N3"), ndcs(boards.get("expensive")));
+        assertEquals(List.of("N4", "N1"), ndcs(boards.get("cheap")));
+        Leaderboard.Entry unknown = boards.get("cheap").getEntries().get(0);
+        assertEquals("Medication N4", unknown.getName());
+        assertEquals("Unknown", unknown.getManufacturer());
+        assertEquals("Beta", boards.get("expensive").getEntries().get(0).getName());
+        verify(mongoTemplate).remove(any(Query.class), eq("leaderboards_v3"));
+    }
+
+    @Test
+    public void testBuildRanksEachManufacturerSeparately() {
+        leaderboards.build(3).block();
+        Map<String, Leaderboard> boards = byId();
+
+        assertEquals(List.of("N2", "N1"), ndcs(boards.get("expensive:manufacturer:Pfizer")));
+        assertEquals(List.of("N1", "N2"), ndcs(boards.get("cheap:manufacturer:Pfizer")));
+        assertEquals(List.of("N3"), ndcs(boards.get("expensive:manufacturer:Merck")));
+        assertEquals(List.of("N3"), ndcs(boards.get("cheap:manufacturer:Merck")));
+        // Overall, Pfizer, Merck and CA, each cheap and expensive; N4 has no manufacturer board
+        assertEquals(8, boards.size());
+    }
+
+    @Test
+    public void testBuildKeepsTopRowsPerState() {
+        ArgumentCaptor<Aggregation> agg = ArgumentCaptor.forClass(Aggregation.class);
+        when(mongoTemplate.aggregate(agg.capture(), eq("drug_prices_v3"), eq(Document.class)))
+                .thenReturn(Flux.just(new Document("_id", "CA")
+                        .append("top", List.of(price("N2", 30.0), price("N1", 8.0)))
+                        .append("bottom", List.of(price("N3", 2.0), price("N1", 8.0)))));
+
+        leaderboards.build(3).block();
+        Map<String, Leaderboard> boards = byId();
+
+        Leaderboard expensive = boards.get("expensive:state:CA");
+        assertEquals(List.of("N2", "N1"), ndcs(expensive));
+        assertEquals("CA", expensive.getEntries().get(0).getState());
+        assertEquals(30.0, expensive.getEntries().get(0).getPrice());
+        assertEquals("Beta", expensive.getEntries().get(0).getName());
+        assertEquals(List.of("N3", "N1"), ndcs(boards.get("cheap:state:CA")));
+        Document group = agg.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).get(1).get("$group", Document.class);
+        Document top = group.get("top", Document.class).get("$topN", Document.class);
+        assertEquals(2, top.get("n"));
+        assertEquals(new Document("price", -1).append("ndc", 1), top.get("sortBy"));
+        assertEquals(new Document("price", 1).append("ndc", -1),
+                group.get("bottom", Document.class).get("$topN", Document.class).get("sortBy"));
+    }
+
+    @Test
+    public void testEtagChangesWithVersionAndRevision() {
+        Leaderboard board = new Leaderboard();
+        board.setId("expensive");
+        board.setKind("expensive");
+        when(mongoTemplate.findAll(Leaderboard.class, "leaderboards_v3")).thenReturn(Flux.just(board));
+        when(mongoTemplate.findAll(Leaderboard.class, "leaderboards_v4")).thenReturn(Flux.just(board));
+        assertFalse(leaderboards.current().loaded());
+
+        when(dataVersions.active()).thenReturn(3L);
+        when(dataVersions.revision()).thenReturn(1L);
+        leaderboards.onReady();
+        LeaderboardService.Snapshot first = leaderboards.current();
+        assertTrue(first.loaded());
+        assertEquals(board, first.find("expensive", null, null));
+
+        when(dataVersions.revision()).thenReturn(2L);
+        leaderboards.onDataVersionChanged(new DataVersionChangedEvent(3, 3));
+        String inPlace = leaderboards.current().etag();
+        assertNotEquals(first.etag(), inPlace);
+
+        when(dataVersions.active()).thenReturn(4L);
+        leaderboards.onDataVersionChanged(new DataVersionChangedEvent(3, 4));
+        assertNotEquals(inPlace, leaderboards.current().etag());
+        assertNotEquals(first.etag(), leaderboards.current().etag());
+    }
+
+    @Test
+    public void testEmptyVersionLeavesNoEtag() {
+        when(dataVersions.active()).thenReturn(5L);
+        when(mongoTemplate.findAll(Leaderboard.class, "leaderboards_v5")).thenReturn(Flux.empty());
+
+        leaderboards.onReady();
+
+        assertFalse(leaderboards.current().loaded());
+        assertNull(leaderboards.current().etag());
+    }
+
+    private Map<String, Leaderboard> byId() {
+        return saved.stream().collect(Collectors.toMap(Leaderboard::getId, Function.identity()));
+    }
+
+    private static List<String> ndcs(Leaderboard board) {
+        return board.getEntries().stream().map(Leaderboard.Entry::getNdc).toList();
+    }
+
+    private static DrugDefinition definition(String ndc, String name, String manufacturer) {
+        DrugDefinition def = new DrugDefinition();
+        def.setNdc(ndc);
+        def.setName(name);
+        def.setManufacturer(manufacturer);
+        return def;
+    }
+
+    private static DrugSummary summary(String ndc, double averagePrice) {
+        DrugSummary summary = new DrugSummary();
+        summary.setNdc(ndc);
+        summary.setAveragePrice(averagePrice);
+        return summary;
+    }
+
+    private static Document price(String ndc, double price) {
+        return new Document("ndc", ndc).append("price", price);
+    }
+}
@@ -0,0 +1,77 @@
+package com.myhealthprices.service;
+
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugSummary;
+import com.myhealthprices.model.Leaderboard;
+import com.myhealthprices.model.ManufacturerSummary;
+import com.myhealthprices.sketch.TDigest;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ManufacturerServiceTest {
+
+    @Test
+    public void testGroupsDrugsByManufacturerAndRanksThemByPrice() {
+        Map<String, DrugDefinition> defs = Map.of(
+                "00069015001", def("00069015001", "LIPITOR", "Pfizer", "00069"),
+                "00069015002", def("00069015002", "NORVASC", "Pfizer", "00069"),
+                "59762001001", def("59762001001", "ATORVASTATIN", "Pfizer", "59762"),
+                "00002150680", def("00002150680", "MOUNJARO", "Eli Lilly and Company", "00002"),
+                "12345678901", def("12345678901", "UNLABELED", null, null));
+        Instant runStart = Instant.parse("2024-09-01T00:00:00Z");
+        ManufacturerService.Builder builder = new ManufacturerService.Builder(defs);
+        builder.add(summary("00069015001", 5.0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+        builder.add(summary("59762001001", 1.0, 1));
+        builder.add(summary("12345678901", 2.0, 2));
+        builder.add(summary("99999999999", 2.0, 2));
+
+        List<ManufacturerSummary> built = builder.build(runStart);
+
+        assertEquals(List.of("Eli Lilly and Company", "Pfizer"), built.stream().map(ManufacturerSummary::getId).toList());
+        ManufacturerSummary lilly = built.get(0);
+        assertEquals(1, lilly.getTotalDrugs());
+        assertEquals(0, lilly.getPricedDrugs());
+        assertNull(lilly.getAveragePrice());
+        assertEquals(List.of(), lilly.getDrugs());
+
+        ManufacturerSummary pfizer = built.get(1);
+        assertEquals(List.of("00069", "59762"), pfizer.getLabelers());
+        assertEquals(3, pfizer.getTotalDrugs());
+        assertEquals(2, pfizer.getPricedDrugs());
+        assertEquals(3.0, pfizer.getAveragePrice());
+        assertEquals(0.5, pfizer.getMinPrice());
+        assertEquals(10.0, pfizer.getMaxPrice());
+        // Ten quarterly prices merged from two sketches: 1 twice, then 2..9
+        assertEquals(4.5, pfizer.getMedianPrice(), 0.5);
+        assertEquals(List.of("ATORVASTATIN", "LIPITOR"),
+                pfizer.getDrugs().stream().map(Leaderboard.Entry::getName).toList());
+        assertEquals(runStart, pfizer.getLastUpdated());
+    }
+
+    private static DrugDefinition def(String ndc, String name, String manufacturer, String labeler) {
+        DrugDefinition d = new DrugDefinition();
+        d.setNdc(ndc);
+        d.setName(name);
+        d.setManufacturer(manufacturer);
+        d.setLabeler(labeler);
+        return d;
+    }
+
+    private static DrugSummary summary(String ndc, double average, double... quarterlyPrices) {
+        DrugSummary s = new DrugSummary();
+        s.setNdc(ndc);
+        s.setAveragePrice(average);
+        s.setMinPrice(average / 2);
+        s.setMaxPrice(average * 2);
+        TDigest sketch = new TDigest();
+        for (double price : quarterlyPrices)
+            sketch.add(price);
+        return s.withSketch(sketch);
+    }
+}
@@ -0,0 +1,60 @@
+package com.myhealthprices.service;
+
+import com.myhealthprices.model.DrugSummary;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TopNTest {
+
+    @Test
+    public void testKeepsTheGreatestGreatestFirst() {
+        TopN<DrugSummary> expensive = new TopN<>(3, LeaderboardService.BY_AVERAGE_PRICE);
+        TopN<DrugSummary> cheap = new TopN<>(3, LeaderboardService.BY_AVERAGE_PRICE.reversed());
+        for (DrugSummary summary : List.of(summary("A", 4.0), summary("B", 9.0), summary("C", 1.0),
+                summary("D", 7.0), summary("E", 2.0), summary("F", 12.0))) {
+            expensive.offer(summary);
+            cheap.offer(summary);
+        }
+
+        assertEquals(List.of("F", "B", "D"), ndcs(expensive));
+        assertEquals(List.of("C", "E", "A"), ndcs(cheap));
+    }
+
+    @Test
+    public void testFewerItemsThanSize() {
+        TopN<DrugSummary> top = new TopN<>(5, LeaderboardService.BY_AVERAGE_PRICE);
+        top.offer(summary("A", 1.0));
+        top.offer(summary("B", 3.0));
+
+        assertEquals(List.of("B", "A"), ndcs(top));
+        assertEquals(List.of(), ndcs(new TopN<>(5, LeaderboardService.BY_AVERAGE_PRICE)));
+    }
+
+    @Test
+    public void testEqualPricesAreRankedByNdc() {
+        TopN<DrugSummary> expensive = new TopN<>(2, LeaderboardService.BY_AVERAGE_PRICE);
+        TopN<DrugSummary> cheap = new TopN<>(2, LeaderboardService.BY_AVERAGE_PRICE.reversed());
+        // Offered out of order, so the result cannot depend on arrival
+        for (String ndc : List.of("2", "4", "1", "3")) {
+            expensive.offer(summary(ndc, 5.0));
+            cheap.offer(summary(ndc, 5.0));
+        }
+
+        assertEquals(List.of("4", "3"), ndcs(expensive));
+        assertEquals(List.of("1", "2"), ndcs(cheap));
+    }
+
+    private static DrugSummary summary(String ndc, double averagePrice) {
+        DrugSummary summary = new DrugSummary();
+        summary.setNdc(ndc);
+        summary.setAveragePrice(averagePrice);
+        return summary;
+    }
+
+    private static List<String> ndcs(TopN<DrugSummary> top) {
+        return top.sorted().stream().map(DrugSummary::getNdc).toList();
+    }
+}
@@ -0,0 +1,59 @@
+package com.myhealthprices.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TDigestTest {
+
+    @Test
+    public void testSmallInputsAreExact() {
+        TDigest digest = new TDigest();
+        for (double price : new double[] { 4, 1, 3, 2, 1000 })
+            digest.add(price);
+
+        assertEquals(5, digest.centroidCount());
+        assertEquals(3.0, digest.quantile(0.5));
+        assertEquals(1.0, digest.quantile(0));
+        assertEquals(1000.0, digest.quantile(1));
+        assertTrue(Double.isNaN(new TDigest().quantile(0.5)));
+        assertThrows(IllegalArgumentException.class, () -> digest.quantile(1.5));
+    }
+
+    @Test
+    public void testSkewedPricesStayAccurateAfterMergeAndRoundTrip() {
+        // Log-normal, like per-unit prices: most cheap, a long expensive tail
+        Random random = new Random(42);
+        double[] values = new double[100_000];
+        TDigest[] quarters = new TDigest[8];
+        for (int q = 0; q < quarters.length; q++)
+            quarters[q] = new TDigest();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(random.nextGaussian() * 1.5 + 2);
+            quarters[i % quarters.length].add(values[i]);
+        }
+        TDigest merged = new TDigest();
+        for (TDigest quarter : quarters)
+            merged.merge(TDigest.fromBytes(quarter.toBytes()));
+        Arrays.sort(values);
+
+        assertEquals(values.length, merged.count());
+        assertEquals(values[0], merged.min());
+        assertEquals(values[values.length - 1], merged.max());
+        assertTrue(merged.centroidCount() <= 100, "centroids: " + merged.centroidCount());
+        assertTrue(merged.toBytes().length < 1024, "bytes: " + merged.toBytes().length);
+        // Error is bounded in rank, not in value: the tail is steep
+        for (double q : new double[] { 0.001, 0.01, 0.1, 0.5, 0.9, 0.99, 0.999 }) {
+            int rank = Arrays.binarySearch(values, merged.quantile(q));
+            double actual = (rank < 0 ? -rank - 1 : rank) / (double) values.length;
+            assertEquals(q, actual, 0.005, "q=" + q);
+        }
+        assertEquals(values[values.length / 2], merged.quantile(0.5), values[values.length / 2] * 0.01);
+        assertThrows(IllegalArgumentException.class, () -> TDigest.fromBytes(new byte[] { 1, 0 }));
+    }
+}
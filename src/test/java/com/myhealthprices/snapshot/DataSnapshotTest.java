@@ -0,0 +1,119 @@
+package com.myhealthprices.snapshot;
+
+import com.myhealthprices.model.DrugDefinition;
+import com.myhealthprices.model.DrugPrice;
+import com.myhealthprices.model.DrugSummary;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRoundTripsEveryTableByNdc() throws Exception {
+        Instant updated = Instant.parse("2024-06-01T00:00:00Z");
+        DataSnapshot.Writer writer = new DataSnapshot.Writer(42, 3);
+        String[] ndcs = { "00002150680", "00069015001", "12345678901" };
+        for (String ndc : ndcs) {
+            DrugDefinition d = new DrugDefinition();
+            d.setId(ndc);
+            d.setNdc(ndc);
+            d.setName("DRUG " + ndc);
+            d.setManufacturer("Pfizer");
+            d.setLabeler(ndc.substring(0, 5));
+            d.setLastUpdated(updated);
+            writer.add(d);
+        }
+        DrugSummary summary = new DrugSummary();
+        summary.setId("00069015001");
+        summary.setNdc("00069015001");
+        summary.setAveragePrice(2.5);
+        summary.setMinPrice(1.0);
+        summary.setMaxPrice(4.0);
+        summary.setTotalStates(2);
+        summary.setMedianPrice(2.0);
+        summary.setLastUpdated(null);
+        writer.add(summary);
+        String id = new ObjectId().toHexString();
+        writer.add(price("00002150680", "CA", 9.5, id))
+                .add(price("00069015001", "CA", 1.0, null))
+                .add(price("00069015001", "TX", 4.0, null))
+                .add(price("12345678901", "NY", 3.0, null));
+
+        DataSnapshot snapshot = DataSnapshot.open(writer.write(dir.resolve("data-v42-r3.snapshot")));
+
+        assertEquals(42, snapshot.version());
+        assertEquals(3, snapshot.revision());
+        assertEquals(3, snapshot.definitionCount());
+        assertEquals(Files.size(snapshot.path()), snapshot.sizeBytes());
+
+        DrugDefinition def = snapshot.definition("00069015001").orElseThrow();
+        assertEquals("DRUG 00069015001", def.getName());
+        assertEquals("Pfizer", def.getManufacturer());
+        assertEquals("00069", def.getLabeler());
+        assertNull(def.getGenericName());
+        assertEquals(updated, def.getLastUpdated());
+        assertTrue(snapshot.definition("00069015002").isEmpty());
+        assertTrue(snapshot.definition("0006901500").isEmpty());
+        assertEquals(List.of(ndcs), snapshot.definitions().stream().map(DrugDefinition::getNdc).toList());
+
+        DrugSummary s = snapshot.summary("00069015001").orElseThrow();
+        assertEquals(2.5, s.getAveragePrice());
+        assertEquals(2, s.getTotalStates());
+        assertEquals(2.0, s.getMedianPrice());
+        assertNull(s.getP90Price());
+        assertNull(s.getLastUpdated());
+        assertTrue(snapshot.summary("00002150680").isEmpty());
+
+        List<DrugPrice> prices = snapshot.prices("00069015001");
+        assertEquals(List.of("CA", "TX"), prices.stream().map(DrugPrice::getState).toList());
+        assertEquals(4.0, prices.get(1).getPrice());
+        assertEquals(2024, prices.get(1).getYear());
+        assertNull(prices.get(1).getId());
+        assertEquals(id, snapshot.prices("00002150680").get(0).getId());
+        assertEquals(1, snapshot.prices("12345678901").size());
+        assertTrue(snapshot.prices("00000000000").isEmpty());
+        assertTrue(snapshot.prices("99999999999").isEmpty());
+    }
+
+    @Test
+    public void testRejectsUnsortedRowsAndForeignFiles() throws Exception {
+        DataSnapshot.Writer writer = new DataSnapshot.Writer(1, 0).add(price("00069015001", "CA", 1.0, null));
+        assertThrows(IllegalArgumentException.class, () -> writer.add(price("00002150680", "CA", 1.0, null)));
+
+        Path empty = new DataSnapshot.Writer(1, 0).write(dir.resolve("data-v1-r0.snapshot"));
+        assertTrue(DataSnapshot.open(empty).definition("00002150680").isEmpty());
+
+        Path garbage = Files.writeString(dir.resolve("data-v2-r0.snapshot"), "not a snapshot at all, really");
+        assertThrows(IOException.class, () -> DataSnapshot.open(garbage));
+        byte[] truncated = Files.readAllBytes(empty);
+        Path cut = Files.write(dir.resolve("data-v3-r0.snapshot"), Arrays.copyOf(truncated, truncated.length - 1));
+        assertThrows(IOException.class, () -> DataSnapshot.open(cut));
+    }
+
+    private static DrugPrice price(String ndc, String state, double value, String id) {
+        DrugPrice p = new DrugPrice();
+        p.setId(id);
+        p.setNdc(ndc);
+        p.setState(state);
+        p.setPrice(value);
+        p.setYear(2024);
+        p.setQuarter(1);
+        return p;
+    }
+}